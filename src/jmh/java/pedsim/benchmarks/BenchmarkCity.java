@@ -0,0 +1,140 @@
+package pedsim.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import pedsim.agents.Agent;
+import pedsim.agents.AgentProperties;
+import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.engine.PedSimCity;
+import pedsim.parameters.Pars;
+import pedsim.routeMemorability.RouteProperties;
+import pedsim.routePlanner.RoadDistancePathFinder;
+import pedsim.utilities.SplitMixRandom;
+import sim.graph.GraphUtils;
+import sim.graph.NodeGraph;
+import sim.graph.NodesLookup;
+import sim.routing.Route;
+
+/**
+ * The BenchmarkCity class loads the bundled city once per JVM, that is once per benchmark fork,
+ * and provides the agents and the seeded origin-destination sets the benchmarks run on. The agents
+ * belong to a job context that is never started, so that no agent is released or stepped.
+ */
+public class BenchmarkCity {
+
+  /**
+   * The distance bands the origin-destination pairs are stratified by, in metres.
+   */
+  public enum DistanceBand {
+    SHORT(250.0, 750.0), MEDIUM(750.0, 1500.0), LONG(1500.0, 3000.0);
+
+    final double lowerLimit;
+    final double upperLimit;
+
+    DistanceBand(double lowerLimit, double upperLimit) {
+      this.lowerLimit = lowerLimit;
+      this.upperLimit = upperLimit;
+    }
+  }
+
+  public static final long SEED = 42L;
+  private static PedSimCity state;
+
+  private BenchmarkCity() {}
+
+  /**
+   * Imports the city and prepares the shared city model, unless already done in this JVM.
+   *
+   * @return The job context the benchmark agents belong to.
+   * @throws Exception If the city cannot be imported.
+   */
+  public static synchronized PedSimCity load() throws Exception {
+    if (state == null) {
+      Pars.asyncPlanning = false;
+      PedSimCity.prepareCity();
+      state = new PedSimCity(SEED, 0);
+    }
+    return state;
+  }
+
+  /**
+   * Creates an agent with its cognitive map. Agents with the same ID are identical across forks.
+   *
+   * @param agentID The agent identifier, from which its random streams are derived.
+   * @return The agent.
+   */
+  public static Agent newAgent(int agentID) {
+    return new Agent(state, agentID);
+  }
+
+  /**
+   * Resets the route choice properties of the agent, before a benchmark sets those it needs.
+   *
+   * @param agent The agent.
+   * @return The agent's properties.
+   */
+  public static AgentProperties resetProperties(Agent agent) {
+    AgentProperties properties = agent.getProperties();
+    properties.reset();
+    return properties;
+  }
+
+  /**
+   * Draws origin-destination pairs in the agent's known network, whose destinations lie within
+   * the given distance band from their origins. The pairs depend only on the agent, the band and
+   * the seed.
+   *
+   * @param agent The agent.
+   * @param band The distance band.
+   * @param size The number of pairs.
+   * @param seed The seed.
+   * @return The pairs, as {origin, destination} arrays.
+   */
+  public static List<NodeGraph[]> originDestinationPairs(Agent agent, DistanceBand band, int size,
+      long seed) {
+
+    List<NodeGraph> knownNodes = GraphUtils.getNodesFromNodeIDs(
+        agent.getCognitiveMap().getAgentKnownNodes(), PedSimCity.nodesMap);
+    knownNodes.sort(Comparator.comparingInt(NodeGraph::getID));
+    SplitMixRandom random = new SplitMixRandom(seed ^ band.ordinal());
+    List<NodeGraph[]> pairs = new ArrayList<>(size);
+    int attempts = 0;
+    while (pairs.size() < size) {
+      if (++attempts > size * 100) {
+        throw new IllegalStateException("Not enough " + band + " pairs in the known network");
+      }
+      NodeGraph origin = knownNodes.get(random.nextInt(knownNodes.size()));
+      List<NodeGraph> candidates = NodesLookup.getNodesBetweenDistanceInterval(
+          CommunityCognitiveMap.getCommunityNetwork(), origin, band.lowerLimit, band.upperLimit);
+      candidates.retainAll(knownNodes);
+      if (candidates.isEmpty()) {
+        continue;
+      }
+      candidates.sort(Comparator.comparingInt(NodeGraph::getID));
+      pairs.add(new NodeGraph[] {origin, candidates.get(random.nextInt(candidates.size()))});
+    }
+    return pairs;
+  }
+
+  /**
+   * Plans the road distance routes of seeded origin-destination pairs in the given distance band,
+   * with their properties (including the visibility space), as routes walked by the agent.
+   *
+   * @param agent The agent.
+   * @param band The distance band.
+   * @param size The number of routes.
+   * @param seed The seed.
+   * @return The routes.
+   */
+  public static List<Route> walkedRoutes(Agent agent, DistanceBand band, int size, long seed) {
+    List<Route> routes = new ArrayList<>(size);
+    for (NodeGraph[] pair : originDestinationPairs(agent, band, size, seed)) {
+      resetProperties(agent).minimisingDistance = true;
+      Route route = new RoadDistancePathFinder().roadDistance(pair[0], pair[1], agent);
+      new RouteProperties(route, agent).computeRouteProperties();
+      routes.add(route);
+    }
+    return routes;
+  }
+}
@@ -0,0 +1,24 @@
+package pedsim.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks whose names match the given regular expression (all of them by default),
+ * with the gc profiler for allocation rates, and writes the results as JSON to
+ * {@code jmh-result.json}. Other JMH options can be passed through {@code org.openjdk.jmh.Main}.
+ */
+public class BenchmarkRunner {
+
+  private BenchmarkRunner() {}
+
+  public static void main(String[] args) throws Exception {
+    String include = args.length > 0 ? args[0] : "pedsim\\..*Benchmark\\..*";
+    Options options = new OptionsBuilder().include(include).addProfiler(GCProfiler.class)
+        .resultFormat(ResultFormatType.JSON).result("jmh-result.json").build();
+    new Runner(options).run();
+  }
+}
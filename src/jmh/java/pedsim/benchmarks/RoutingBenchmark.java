@@ -0,0 +1,138 @@
+package pedsim.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.planargraph.DirectedEdge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pedsim.agents.Agent;
+import pedsim.agents.AgentProperties;
+import pedsim.benchmarks.BenchmarkCity.DistanceBand;
+import pedsim.dijkstra.DijkstraAngularChange;
+import pedsim.dijkstra.DijkstraGlobalLandmarks;
+import pedsim.dijkstra.DijkstraRoadDistance;
+import pedsim.routePlanner.AngularChangePathFinder;
+import pedsim.routePlanner.BarrierBasedNavigation;
+import pedsim.routePlanner.RegionBasedNavigation;
+import pedsim.routePlanner.RoadDistancePathFinder;
+import sim.graph.NodeGraph;
+import sim.routing.Route;
+
+/**
+ * Benchmarks of the routing stack: the three Dijkstra variants, the sequence path finders and the
+ * sub-goal sequencing of region- and barrier-based navigation. Each invocation plans one route for
+ * the next pair of a fixed, seeded set of origin-destination pairs in the given distance band,
+ * within the known network of the same agent. Throughput and sampled latencies (p99) are reported;
+ * the allocation rate is reported with the gc profiler, added by {@link BenchmarkRunner}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoutingBenchmark {
+
+  private static final int PAIRS = 64;
+
+  @Param({"SHORT", "MEDIUM", "LONG"})
+  public DistanceBand band;
+
+  private Agent agent;
+  private List<NodeGraph[]> pairs;
+  // dual nodes of the pairs, for the angular change Dijkstra
+  private List<NodeGraph[]> dualPairs;
+  // barrier sub-goals of the pairs, for the sequence path finders
+  private List<List<NodeGraph>> sequences;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    BenchmarkCity.load();
+    agent = BenchmarkCity.newAgent(0);
+    pairs = BenchmarkCity.originDestinationPairs(agent, band, PAIRS, BenchmarkCity.SEED);
+    dualPairs = new ArrayList<>(PAIRS);
+    sequences = new ArrayList<>(PAIRS);
+    BenchmarkCity.resetProperties(agent).barrierBasedNavigation = true;
+    for (NodeGraph[] pair : pairs) {
+      NodeGraph dualOrigin = pair[0].getDualNode(pair[0], pair[1], false, null);
+      NodeGraph dualDestination = pair[1].getDualNode(pair[0], pair[1], false, null);
+      dualPairs.add(new NodeGraph[] {dualOrigin, dualDestination});
+      sequences.add(new BarrierBasedNavigation(pair[0], pair[1], agent, false).sequenceBarriers());
+    }
+  }
+
+  private int nextIndex() {
+    int index = next;
+    next = (next + 1) % PAIRS;
+    return index;
+  }
+
+  private AgentProperties properties() {
+    return BenchmarkCity.resetProperties(agent);
+  }
+
+  @Benchmark
+  public List<DirectedEdge> dijkstraRoadDistance() {
+    properties().minimisingDistance = true;
+    NodeGraph[] pair = pairs.get(nextIndex());
+    return new DijkstraRoadDistance().dijkstraAlgorithm(pair[0], pair[1], pair[1],
+        new HashSet<>(), agent);
+  }
+
+  @Benchmark
+  public List<DirectedEdge> dijkstraAngularChange() {
+    properties().minimisingAngular = true;
+    int index = nextIndex();
+    NodeGraph[] dualPair = dualPairs.get(index);
+    return new DijkstraAngularChange().dijkstraAlgorithm(dualPair[0], dualPair[1],
+        pairs.get(index)[1], new HashSet<>(), null, agent);
+  }
+
+  @Benchmark
+  public List<DirectedEdge> dijkstraGlobalLandmarks() {
+    properties().usingDistantLandmarks = true;
+    NodeGraph[] pair = pairs.get(nextIndex());
+    return new DijkstraGlobalLandmarks().dijkstraAlgorithm(pair[0], pair[1], pair[1],
+        new HashSet<>(), agent);
+  }
+
+  @Benchmark
+  public Route roadDistanceSequence() {
+    properties().localHeuristicDistance = true;
+    return new RoadDistancePathFinder().roadDistanceSequence(sequences.get(nextIndex()), agent);
+  }
+
+  @Benchmark
+  public Route angularChangeBasedSequence() {
+    properties().localHeuristicAngular = true;
+    return new AngularChangePathFinder().angularChangeBasedSequence(sequences.get(nextIndex()),
+        agent);
+  }
+
+  @Benchmark
+  public List<NodeGraph> sequenceRegions() {
+    properties().regionBasedNavigation = true;
+    NodeGraph[] pair = pairs.get(nextIndex());
+    return new RegionBasedNavigation(pair[0], pair[1], agent).sequenceRegions();
+  }
+
+  @Benchmark
+  public List<NodeGraph> sequenceBarriers() {
+    properties().barrierBasedNavigation = true;
+    NodeGraph[] pair = pairs.get(nextIndex());
+    return new BarrierBasedNavigation(pair[0], pair[1], agent, false).sequenceBarriers();
+  }
+}
@@ -0,0 +1,186 @@
+package pedsim.cognitiveMap;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Polygon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pedsim.agents.Agent;
+import pedsim.benchmarks.BenchmarkCity;
+import pedsim.benchmarks.BenchmarkCity.DistanceBand;
+import pedsim.parameters.LearningPars;
+import pedsim.routeMemorability.RouteProperties;
+import sim.routing.Route;
+
+/**
+ * Benchmarks of the learning path: the vividness grid operations, the percentile threshold and
+ * decay of an agent's memory, the readjustment of its cognitive map and known network, and the
+ * computation of route properties. The benchmark is in the package of the classes it measures, so
+ * that it can reach {@link NetworkBuilder#buildKnownNetwork()}.
+ *
+ * The routes walked are road distance routes of seeded pairs in the short distance band. The grid
+ * operations run on a standalone grid whose side, in metres, is given before the routes expand it;
+ * the learning operations run on the agent's own grid, formed by the routes as in the simulation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LearningBenchmark {
+
+  /**
+   * An agent that has walked the given number of routes.
+   */
+  @State(Scope.Thread)
+  public static class LearningState {
+
+    @Param({"4", "16", "64"})
+    public int routesWalked;
+
+    @Param({"2.5", "5.0", "10.0"})
+    public double cellSize;
+
+    Agent agent;
+    IncrementalLearning learning;
+    List<Route> routes;
+    List<Polygon> collage;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      LearningPars.cellSize = cellSize;
+      BenchmarkCity.load();
+      agent = BenchmarkCity.newAgent(0);
+      routes = BenchmarkCity.walkedRoutes(agent, DistanceBand.SHORT, routesWalked,
+          BenchmarkCity.SEED);
+      learning = agent.learning;
+      for (Route route : routes) {
+        learning.updateAgentMemory(route);
+      }
+      collage = learning.getVividnessGrid().updateCollage(learning.computePercentileThreshold());
+    }
+
+    Route nextRoute() {
+      Route route = routes.get(next);
+      next = (next + 1) % routes.size();
+      return route;
+    }
+  }
+
+  /**
+   * The agent's grid, restored before each decay.
+   */
+  @State(Scope.Thread)
+  public static class DecayState {
+
+    float[] density;
+
+    @Setup(Level.Trial)
+    public void setUp(LearningState learningState) {
+      density = learningState.learning.getVividnessGrid().getDensity().clone();
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreDensity(LearningState learningState) {
+      float[] current = learningState.learning.getVividnessGrid().getDensity();
+      System.arraycopy(density, 0, current, 0, density.length);
+    }
+  }
+
+  /**
+   * A standalone grid of the given side, holding the visibility spaces of the routes walked. As
+   * adding the same spaces again only raises the density, the grid is restored at each iteration.
+   */
+  @State(Scope.Thread)
+  public static class GridState {
+
+    @Param({"500", "1000", "2000"})
+    public double gridSize;
+
+    VividnessGrid grid;
+    float[] density;
+    double threshold;
+
+    @Setup(Level.Trial)
+    public void setUp(LearningState learningState) {
+      Coordinate home = learningState.agent.getCognitiveMap().getHomeNode().getCoordinate();
+      double half = gridSize / 2.0;
+      grid = new VividnessGrid(
+          new Envelope(home.x - half, home.x + half, home.y - half, home.y + half),
+          learningState.cellSize);
+      for (Route route : learningState.routes) {
+        grid.addVisibilitySpace(RouteProperties.getProperties(route).getVisibilitySpace(), 1.0);
+      }
+      density = grid.getDensity().clone();
+      threshold = learningState.learning.computePercentileThreshold();
+    }
+
+    @Setup(Level.Iteration)
+    public void restoreDensity() {
+      System.arraycopy(density, 0, grid.getDensity(), 0, density.length);
+    }
+  }
+
+  @Benchmark
+  public VividnessGrid addVisibilitySpace(LearningState state, GridState gridState) {
+    gridState.grid.addVisibilitySpace(
+        RouteProperties.getProperties(state.nextRoute()).getVisibilitySpace(), 1.0);
+    return gridState.grid;
+  }
+
+  @Benchmark
+  public List<Polygon> updateCollage(GridState gridState) {
+    return gridState.grid.updateCollage(gridState.threshold);
+  }
+
+  @Benchmark
+  public double vividnessBetweenSpace(LearningState state, GridState gridState) {
+    Route route = state.nextRoute();
+    return gridState.grid.vividnessBetweenSpace(route.originNode, route.destinationNode);
+  }
+
+  @Benchmark
+  public double computePercentileThreshold(LearningState state) {
+    return state.learning.computePercentileThreshold();
+  }
+
+  @Benchmark
+  public IncrementalLearning applyDecay(LearningState state, DecayState decayState) {
+    state.learning.applyDecay(state.agent.getCognitiveMap().spatialAbility);
+    return state.learning;
+  }
+
+  @Benchmark
+  public CognitiveMap readjustCognitiveMap(LearningState state) {
+    CognitiveMap cognitiveMap = state.agent.getCognitiveMap();
+    cognitiveMap.readjustCognitiveMap(state.collage);
+    return cognitiveMap;
+  }
+
+  @Benchmark
+  public NetworkBuilder buildKnownNetwork(LearningState state) {
+    NetworkBuilder networkBuilder = state.agent.getCognitiveMap().networkBuilder;
+    networkBuilder.buildKnownNetwork();
+    return networkBuilder;
+  }
+
+  @Benchmark
+  public RouteProperties computeRouteProperties(LearningState state) {
+    RouteProperties routeProperties = new RouteProperties(state.nextRoute(), state.agent);
+    routeProperties.computeRouteProperties();
+    return routeProperties;
+  }
+}
@@ -0,0 +1,263 @@
+package pedsim.engine;
+
+import java.io.BufferedWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import pedsim.parameters.ParameterManager;
+import pedsim.parameters.Pars;
+import pedsim.parameters.RouteChoicePars;
+import pedsim.parameters.TimePars;
+import pedsim.utilities.LoggerUtil;
+import sim.util.geo.CSVUtils;
+
+/**
+ * The ScalingBenchmark class is the end-to-end macro benchmark: it runs whole jobs headless, for a
+ * fixed number of simulated days and with a fixed seed, over a matrix of population sizes, learner
+ * shares and thread counts, and reports for each point the simulated seconds per wall second, the
+ * trips planned per second, the peak heap and the time spent in garbage collection. Within each
+ * population size and learner share, the speedup and efficiency are computed relative to the
+ * smallest thread count, and the scaling curves are logged. The results are written as CSV, one
+ * row per point, so that runs of different builds can be compared.
+ *
+ * The benchmark is in the engine package, so that it can run seeded jobs and reset the policy
+ * pools between points. The matrix is given as:
+ *
+ * <pre>
+ * --populations=150000,750000,1500000   # Pars.population values
+ * --learnerShares=0,0.5,1               # Pars.learnerShare values
+ * --threads=1,2,4,8                     # stepping, planning and policy threads
+ * --days=1                              # simulated days per run
+ * --warmupRuns=1                        # unmeasured runs of the first point
+ * --seed=42
+ * --output=scaling-result.csv
+ * </pre>
+ *
+ * Any other argument is applied to the parameters as in {@link PedSimCity#main(String[])}. Agents
+ * are stepped in parallel unless {@code --parallelStepping} is given; the thread counts only apply
+ * to the pools that are enabled. The peak heap is the sum of the peaks of the heap pools, an upper
+ * bound of the actual peak.
+ */
+public class ScalingBenchmark {
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  private static final List<String> MATRIX_ARGS =
+      List.of("populations", "learnerShares", "threads", "days", "warmupRuns", "seed", "output");
+
+  private ScalingBenchmark() {}
+
+  /**
+   * The measurements of one point of the matrix.
+   */
+  private static class Result {
+    int population;
+    int agents;
+    double learnerShare;
+    int threads;
+    double wallSeconds;
+    double simulatedSeconds;
+    long tripsPlanned;
+    double peakHeapMB;
+    double gcSeconds;
+    long gcCount;
+    double speedup = 1.0;
+    double efficiency = 1.0;
+
+    double simulatedSecondsPerWallSecond() {
+      return simulatedSeconds / wallSeconds;
+    }
+
+    double tripsPerSecond() {
+      return tripsPlanned / wallSeconds;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+
+    Map<String, String> params = ParameterManager.parseArgs(args);
+    List<Integer> populations = new ArrayList<>();
+    for (String value : params.getOrDefault("populations", Integer.toString(Pars.population))
+        .split(",")) {
+      populations.add(Integer.parseInt(value.trim()));
+    }
+    List<Double> learnerShares = new ArrayList<>();
+    for (String value : params.getOrDefault("learnerShares", "0.5").split(",")) {
+      learnerShares.add(Double.parseDouble(value.trim()));
+    }
+    List<Integer> threads = new ArrayList<>();
+    for (String value : params.getOrDefault("threads", defaultThreads()).split(",")) {
+      threads.add(Integer.parseInt(value.trim()));
+    }
+    threads.sort(null);
+    int days = Integer.parseInt(params.getOrDefault("days", "1"));
+    int warmupRuns = Integer.parseInt(params.getOrDefault("warmupRuns", "1"));
+    long seed = Long.parseLong(params.getOrDefault("seed", "42"));
+    Path output = Paths.get(params.getOrDefault("output", "scaling-result.csv"));
+
+    boolean steppingGiven = params.containsKey("parallelStepping");
+    params.keySet().removeAll(MATRIX_ARGS);
+    ParameterManager.applyParams(params, Pars.class, TimePars.class, RouteChoicePars.class);
+    if (!steppingGiven) {
+      Pars.parallelStepping = true;
+    }
+    TimePars.numberOfDays = days;
+    Pars.outputLabel = "scaling";
+    PedSimCity.prepareCity();
+
+    for (int run = 0; run < warmupRuns; run++) {
+      logger.info("Scaling benchmark | warm-up run " + (run + 1) + " of " + warmupRuns);
+      runPoint(populations.get(0), learnerShares.get(0), threads.get(threads.size() - 1), seed);
+    }
+    List<Result> results = new ArrayList<>();
+    for (int population : populations) {
+      for (double learnerShare : learnerShares) {
+        List<Result> curve = new ArrayList<>();
+        for (int threadCount : threads) {
+          curve.add(runPoint(population, learnerShare, threadCount, seed));
+        }
+        computeScaling(curve);
+        logCurve(curve);
+        results.addAll(curve);
+      }
+    }
+    writeResults(results, output);
+    Pars.outputLabel = null;
+    logger.info("Scaling benchmark | " + results.size() + " points written to " + output);
+  }
+
+  private static String defaultThreads() {
+    StringBuilder threads = new StringBuilder("1");
+    for (int count = 2; count <= Runtime.getRuntime().availableProcessors(); count *= 2) {
+      threads.append(',').append(count);
+    }
+    return threads.toString();
+  }
+
+  /**
+   * Runs one job for a point of the matrix and measures it.
+   *
+   * @param population The population size.
+   * @param learnerShare The share of learners.
+   * @param threads The stepping, planning and policy threads.
+   * @param seed The seed of the job.
+   * @return The measurements.
+   * @throws Exception If the job fails.
+   */
+  private static Result runPoint(int population, double learnerShare, int threads, long seed)
+      throws Exception {
+
+    Pars.population = population;
+    Pars.learnerShare = learnerShare;
+    Pars.steppingThreads = threads;
+    Pars.planningThreads = threads;
+    Pars.policyThreads = threads;
+    Pars.setSimulationParameters();
+    BatchRunner.clearParameterCaches();
+    ExecutionPolicy.shutdownPools();
+
+    System.gc();
+    List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+        heapPools.add(pool);
+      }
+    }
+    long gcMillis = gcMillis();
+    long gcCount = gcCount();
+    long start = System.nanoTime();
+
+    Engine engine = new Engine();
+    engine.executeJob(0, seed);
+
+    Result result = new Result();
+    result.wallSeconds = (System.nanoTime() - start) / 1e9;
+    result.gcSeconds = (gcMillis() - gcMillis) / 1e3;
+    result.gcCount = gcCount() - gcCount;
+    for (MemoryPoolMXBean pool : heapPools) {
+      result.peakHeapMB += pool.getPeakUsage().getUsed() / (1024.0 * 1024.0);
+    }
+    result.population = population;
+    result.agents = Pars.numAgents;
+    result.learnerShare = learnerShare;
+    result.threads = threads;
+    result.simulatedSeconds = engine.state.getCurrentSteps() * TimePars.STEP_DURATION;
+    result.tripsPlanned = engine.state.getTripsPlanned();
+    logger.info(String.format(
+        "Scaling benchmark | %d agents, %.2f learners, %d threads: %.1f s, %.0f sim s/s, "
+            + "%.1f trips/s, peak heap %.0f MB, gc %.2f s",
+        result.agents, learnerShare, threads, result.wallSeconds,
+        result.simulatedSecondsPerWallSecond(), result.tripsPerSecond(), result.peakHeapMB,
+        result.gcSeconds));
+    return result;
+  }
+
+  private static long gcMillis() {
+    long millis = 0L;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0L, collector.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private static long gcCount() {
+    long count = 0L;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0L, collector.getCollectionCount());
+    }
+    return count;
+  }
+
+  /**
+   * Computes the speedup and efficiency of the points of a curve, ordered by thread count,
+   * relative to its first point.
+   *
+   * @param curve The points of a population size and learner share.
+   */
+  private static void computeScaling(List<Result> curve) {
+    Result base = curve.get(0);
+    for (Result result : curve) {
+      result.speedup = base.wallSeconds / result.wallSeconds;
+      result.efficiency = result.speedup * base.threads / result.threads;
+    }
+  }
+
+  private static void logCurve(List<Result> curve) {
+    StringBuilder table = new StringBuilder(String.format(
+        "Scaling benchmark | %d agents, %.2f learners%n  threads  speedup  efficiency",
+        curve.get(0).agents, curve.get(0).learnerShare));
+    for (Result result : curve) {
+      table.append(String.format("%n  %7d  %7.2f  %10.2f", result.threads, result.speedup,
+          result.efficiency));
+    }
+    logger.info(table.toString());
+  }
+
+  private static void writeResults(List<Result> results, Path output) throws Exception {
+
+    try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+      CSVUtils.writeLine(writer, List.of("population", "agents", "learnerShare", "threads",
+          "wallSeconds", "simulatedSeconds", "simulatedSecondsPerWallSecond", "tripsPlanned",
+          "tripsPerSecond", "peakHeapMB", "gcSeconds", "gcCount", "speedup", "efficiency"));
+      for (Result result : results) {
+        CSVUtils.writeLine(writer, List.of(Integer.toString(result.population),
+            Integer.toString(result.agents), Double.toString(result.learnerShare),
+            Integer.toString(result.threads), String.format("%.3f", result.wallSeconds),
+            String.format("%.0f", result.simulatedSeconds),
+            String.format("%.1f", result.simulatedSecondsPerWallSecond()),
+            Long.toString(result.tripsPlanned), String.format("%.2f", result.tripsPerSecond()),
+            String.format("%.1f", result.peakHeapMB), String.format("%.3f", result.gcSeconds),
+            Long.toString(result.gcCount), String.format("%.3f", result.speedup),
+            String.format("%.3f", result.efficiency)));
+      }
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package pedsim.routePlanner;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.locationtech.jts.planargraph.DirectedEdge;
+import pedsim.agents.Agent;
+import pedsim.engine.PedSimCity;
+import pedsim.parameters.ParameterManager;
+import pedsim.parameters.Pars;
+import pedsim.parameters.RouteChoicePars;
+import pedsim.parameters.TimePars;
+import pedsim.utilities.LoggerUtil;
+import pedsim.utilities.StringEnum.Learner;
+import pedsim.utilities.StringEnum.RandomStream;
+import sim.graph.EdgeGraph;
+import sim.graph.NodeGraph;
+import sim.routing.Route;
+import sim.util.geo.CSVUtils;
+
+/**
+ * The PlanningReplay class replays the route planning workloads recorded with
+ * {@link PlanningRecorder} against a planner implementation, and reports the total planning time,
+ * against the recorded one, and how far the replayed routes differ from the recorded ones: the
+ * share of identical routes, the mean Jaccard similarity of their edge sets and the mean ratio of
+ * their lengths. Before each invocation, the agent's cognitive map is restored from the snapshot of
+ * the recorded version, and its learner flag, route choice properties, heuristic weights and
+ * routing random stream are set as recorded, so that every planner receives the identical
+ * workload. The harness is in the package of the recorder, so that it can read its records and
+ * plan without defining the heuristic again.
+ *
+ * <pre>
+ * --workload=planning_0.bin.gz,planning_1.bin.gz   # recorded workloads, replayed in turn
+ * --planner=my.package.MyPlanner                   # a Planner, RoutePlanner by default
+ * --warmupPasses=1                                 # unmeasured passes over each workload
+ * --output=replay-result.csv                       # one row per invocation
+ * </pre>
+ *
+ * Any other argument is applied to the parameters as in {@link PedSimCity#main(String[])}; the
+ * city must be the one the workloads were recorded on. The recorded times include the contention
+ * of the recording run, while the replay plans on a single thread.
+ */
+public class PlanningReplay {
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  private static final List<String> REPLAY_ARGS =
+      List.of("workload", "planner", "warmupPasses", "output");
+
+  private PlanningReplay() {}
+
+  /**
+   * A planner implementation the workload is replayed against. Implementations need a public
+   * no-argument constructor.
+   */
+  public interface Planner {
+
+    /**
+     * Plans a route with the agent's current route choice properties and heuristic weights.
+     *
+     * @param originNode The origin node.
+     * @param destinationNode The destination node.
+     * @param agent The agent.
+     * @return The planned route.
+     */
+    Route plan(NodeGraph originNode, NodeGraph destinationNode, Agent agent);
+  }
+
+  /**
+   * The planner of the simulation.
+   */
+  public static class DefaultPlanner implements Planner {
+
+    @Override
+    public Route plan(NodeGraph originNode, NodeGraph destinationNode, Agent agent) {
+      return new RoutePlanner(originNode, destinationNode, agent, false).definePath();
+    }
+  }
+
+  /**
+   * The totals of the invocations replayed.
+   */
+  private static class Statistics {
+    long invocations;
+    long failures;
+    long recordedNanos;
+    long replayNanos;
+    long identical;
+    double jaccardSum;
+    long lengthRatios;
+    double lengthRatioSum;
+
+    void log(String label) {
+      long compared = invocations - failures;
+      logger.info(String.format(
+          "Planning replay | %s: %d invocations, %d failed | recorded %.3f s, replayed %.3f s "
+              + "(%.2fx) | identical routes %.1f%%, mean Jaccard %.4f, mean length ratio %.4f",
+          label, invocations, failures, recordedNanos / 1e9, replayNanos / 1e9,
+          replayNanos > 0 ? (double) recordedNanos / replayNanos : 0.0,
+          compared > 0 ? 100.0 * identical / compared : 0.0,
+          compared > 0 ? jaccardSum / compared : 0.0,
+          lengthRatios > 0 ? lengthRatioSum / lengthRatios : 0.0));
+    }
+
+    void add(Statistics other) {
+      invocations += other.invocations;
+      failures += other.failures;
+      recordedNanos += other.recordedNanos;
+      replayNanos += other.replayNanos;
+      identical += other.identical;
+      jaccardSum += other.jaccardSum;
+      lengthRatios += other.lengthRatios;
+      lengthRatioSum += other.lengthRatioSum;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+
+    Map<String, String> params = ParameterManager.parseArgs(args);
+    if (!params.containsKey("workload")) {
+      throw new IllegalArgumentException("No --workload given");
+    }
+    List<Path> workloads = new ArrayList<>();
+    for (String value : params.get("workload").split(",")) {
+      workloads.add(Paths.get(value.trim()));
+    }
+    Planner planner = params.containsKey("planner")
+        ? (Planner) Class.forName(params.get("planner")).getDeclaredConstructor().newInstance()
+        : new DefaultPlanner();
+    int warmupPasses = Integer.parseInt(params.getOrDefault("warmupPasses", "1"));
+    Path output = Paths.get(params.getOrDefault("output", "replay-result.csv"));
+
+    params.keySet().removeAll(REPLAY_ARGS);
+    ParameterManager.applyParams(params, Pars.class, TimePars.class, RouteChoicePars.class);
+    Pars.recordPlanning = null;
+    Pars.asyncPlanning = false;
+    PedSimCity.prepareCity();
+    PedSimCity state = new PedSimCity(0L, 0);
+
+    Statistics total = new Statistics();
+    try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+      CSVUtils.writeLine(writer, List.of("workload", "agentID", "origin", "destination",
+          "recordedMs", "replayMs", "identical", "jaccard", "lengthRatio"));
+      for (Path workload : workloads) {
+        for (int pass = 0; pass < warmupPasses; pass++) {
+          logger.info("Planning replay | " + workload + ": warm-up pass " + (pass + 1) + " of "
+              + warmupPasses);
+          replay(workload, planner, state, null);
+        }
+        Statistics statistics = replay(workload, planner, state, writer);
+        statistics.log(workload.toString());
+        total.add(statistics);
+      }
+    }
+    total.log(planner.getClass().getName());
+    logger.info("Planning replay | " + total.invocations + " invocations written to " + output);
+  }
+
+  /**
+   * Replays a recorded workload.
+   *
+   * @param workload The recording file.
+   * @param planner The planner.
+   * @param state The job context the replay agents belong to.
+   * @param writer The per-invocation output, or null for a warm-up pass.
+   * @return The totals of the invocations replayed.
+   * @throws IOException If the workload cannot be read or references a missing snapshot.
+   */
+  private static Statistics replay(Path workload, Planner planner, PedSimCity state,
+      BufferedWriter writer) throws IOException {
+
+    Map<Integer, Agent> agents = new HashMap<>();
+    // the recorded version of each agent's restored cognitive map
+    Map<Integer, Integer> versions = new HashMap<>();
+    Statistics statistics = new Statistics();
+    try (DataInputStream in = PlanningRecorder.openWorkload(workload)) {
+      while (true) {
+        int type;
+        try {
+          type = in.readByte();
+        } catch (EOFException e) {
+          break;
+        }
+        int agentID = in.readInt();
+        int version = in.readInt();
+        if (type == PlanningRecorder.SNAPSHOT) {
+          Agent agent = agents.computeIfAbsent(agentID, id -> new Agent(state, id));
+          agent.getCognitiveMap().readState(in);
+          versions.put(agentID, version);
+          continue;
+        }
+        if (type != PlanningRecorder.INVOCATION) {
+          throw new IOException("Unknown record type " + type + " in " + workload);
+        }
+        Agent agent = agents.get(agentID);
+        if (agent == null || versions.get(agentID) != version) {
+          throw new IOException("No snapshot of version " + version + " of agent " + agentID
+              + " in " + workload);
+        }
+        agent.learner = in.readBoolean() ? Learner.LEARNER : Learner.NOT_LEARNER;
+        NodeGraph originNode = PedSimCity.nodesMap.get(in.readInt());
+        NodeGraph destinationNode = PedSimCity.nodesMap.get(in.readInt());
+        agent.getProperties().readState(in);
+        agent.getHeuristics().readState(in);
+        agent.getRandom(RandomStream.ROUTING).readState(in);
+        long recordedNanos = in.readLong();
+        int nrEdges = in.readInt();
+        List<Integer> recordedEdges = new ArrayList<>(nrEdges);
+        for (int e = 0; e < nrEdges; e++) {
+          recordedEdges.add(in.readInt());
+        }
+
+        statistics.invocations++;
+        long start = System.nanoTime();
+        Route route;
+        try {
+          route = planner.plan(originNode, destinationNode, agent);
+        } catch (RuntimeException e) {
+          statistics.failures++;
+          logger.warning("Planning replay | agent " + agentID + ", " + originNode.getID() + " -> "
+              + destinationNode.getID() + " failed: " + e);
+          continue;
+        }
+        long replayNanos = System.nanoTime() - start;
+        statistics.recordedNanos += recordedNanos;
+        statistics.replayNanos += replayNanos;
+
+        List<Integer> replayedEdges = new ArrayList<>(route.directedEdgesSequence.size());
+        for (DirectedEdge directedEdge : route.directedEdgesSequence) {
+          replayedEdges.add(((EdgeGraph) directedEdge.getEdge()).getID());
+        }
+        boolean identical = replayedEdges.equals(recordedEdges);
+        double jaccard = jaccard(recordedEdges, replayedEdges);
+        double recordedLength = length(recordedEdges);
+        double lengthRatio = recordedLength > 0.0 ? length(replayedEdges) / recordedLength : 1.0;
+        if (identical) {
+          statistics.identical++;
+        }
+        statistics.jaccardSum += jaccard;
+        if (recordedLength > 0.0) {
+          statistics.lengthRatios++;
+          statistics.lengthRatioSum += lengthRatio;
+        }
+        if (writer != null) {
+          CSVUtils.writeLine(writer, List.of(workload.getFileName().toString(),
+              Integer.toString(agentID), Integer.toString(originNode.getID()),
+              Integer.toString(destinationNode.getID()),
+              String.format("%.3f", recordedNanos / 1e6), String.format("%.3f", replayNanos / 1e6),
+              Boolean.toString(identical), String.format("%.4f", jaccard),
+              String.format("%.4f", lengthRatio)));
+        }
+      }
+    }
+    return statistics;
+  }
+
+  private static double jaccard(List<Integer> recordedEdges, List<Integer> replayedEdges) {
+    Set<Integer> union = new HashSet<>(recordedEdges);
+    union.addAll(replayedEdges);
+    if (union.isEmpty()) {
+      return 1.0;
+    }
+    Set<Integer> intersection = new HashSet<>(recordedEdges);
+    intersection.retainAll(new HashSet<>(replayedEdges));
+    return (double) intersection.size() / union.size();
+  }
+
+  private static double length(List<Integer> edgeIDs) {
+    double length = 0.0;
+    for (int edgeID : edgeIDs) {
+      length += PedSimCity.edgesMap.get(edgeID).getLength();
+    }
+    return length;
+  }
+}
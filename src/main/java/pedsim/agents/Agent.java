@@ -1,8 +1,17 @@
 package pedsim.agents;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.locationtech.jts.geom.Coordinate;
@@ -12,11 +21,17 @@ import org.locationtech.jts.geom.Point;
 import pedsim.cognitiveMap.CognitiveMap;
 import pedsim.cognitiveMap.IncrementalLearning;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.engine.Checkpoint;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.SimulationEvents;
+import pedsim.engine.TripTrace;
+import pedsim.engine.TripTrace.Mark;
 import pedsim.parameters.TimePars;
 import pedsim.routePlanner.RoutePlanner;
+import pedsim.utilities.SplitMixRandom;
 import pedsim.utilities.StringEnum.AgentStatus;
 import pedsim.utilities.StringEnum.Learner;
+import pedsim.utilities.StringEnum.RandomStream;
 import sim.engine.SimState;
 import sim.engine.Steppable;
 import sim.engine.Stoppable;
@@ -53,8 +68,13 @@ public class Agent implements Steppable {
   final AtomicBoolean reachedDestination = new AtomicBoolean(false);
 
   public Route route;
+  // route being planned asynchronously and status to resume once it is ready
+  private Future<Route> plannedRoute;
+  private AgentStatus statusAfterPlanning;
   NodeGraph lastDestination;
-  Random random = new Random();
+  Random random;
+  // one random stream per purpose, derived from the job seed and the agentID
+  private final Map<RandomStream, SplitMixRandom> randomStreams = new EnumMap<>(RandomStream.class);
   protected AgentMovement agentMovement;
   double metersWalkedTot;
   private double distanceNextDestination = 0.0;
@@ -62,14 +82,24 @@ public class Agent implements Steppable {
   public Learner learner;
   private Heuristics heuristics;
 
+  // side effects on shared structures buffered during the parallel stepping phase
+  private final List<Runnable> pendingEffects = new ArrayList<>();
+  private boolean deferEffects = false;
+
   /**
    * Constructor Function. Creates a new agent with the specified agent properties.
    *
    * @param state the PedSimCity simulation state.
+   * @param agentID the agent identifier, from which the agent's random streams are derived.
    */
-  public Agent(PedSimCity state) {
+  public Agent(PedSimCity state, int agentID) {
 
     this.state = state;
+    this.agentID = agentID;
+    for (RandomStream stream : RandomStream.values()) {
+      randomStreams.put(stream, state.createRandomStream(agentID, stream));
+    }
+    random = getRandom(RandomStream.AGENT);
     initialiseAgentProperties();
     cognitiveMap = new CognitiveMap(this);
     heuristics = new Heuristics(this);
@@ -102,26 +132,147 @@ public class Agent implements Steppable {
     if (isWaiting()) {
       return;
     }
-    if (isWalkingAlone() && destinationNode == null) {
+    if (isPlanning()) {
+      checkPlannedRoute();
+    } else if (isWalkingAlone() && destinationNode == null) {
       planNewTrip();
     } else if (reachedDestination.get()) {
       handleReachedDestination(stateSchedule);
-    } else if (isAtDestination() && timeAtDestination <= state.schedule.getSteps()) {
+    } else if (isAtDestination() && timeAtDestination <= stateSchedule.getCurrentSteps()) {
       goHome();
     } else if (isAtDestination()) {
       ;
+    } else if (stateSchedule.isAnalyticMovement()) {
+      agentMovement.walkUntil(stateSchedule.getCurrentSteps());
     } else {
       agentMovement.keepWalking();
     }
+    if (stateSchedule.isEventDriven()) {
+      scheduleNextWakeUp();
+    }
+  }
+
+  /**
+   * Schedules the agent's next step when agents are scheduled event by event: at the next step
+   * while the agent is planning or walking (or when it leaves its current edge, with analytic
+   * movement), at the end of its stay when at destination, and never when waiting at home (until
+   * released again).
+   */
+  public void scheduleNextWakeUp() {
+    if (isWaiting()) {
+      return;
+    }
+    double nextStep = state.getCurrentSteps() + 1.0;
+    if (reachedDestination.get()) {
+      ;
+    } else if (isAtDestination()) {
+      nextStep = Math.max(nextStep, Math.ceil(timeAtDestination));
+    } else if (isWalking() && state.isAnalyticMovement()) {
+      nextStep = Math.max(nextStep, agentMovement.getEdgeExitStep());
+    }
+    state.schedule.scheduleOnce(state.toScheduleTime(nextStep), this);
+  }
+
+  /**
+   * Runs the agent's step as the decision phase of parallel stepping: the agent-local work is
+   * carried out immediately, whereas the updates of shared structures are buffered until
+   * {@link #commit()} is called.
+   *
+   * @param state the simulation state.
+   */
+  public void decide(SimState state) {
+    deferEffects = true;
+    try {
+      step(state);
+    } finally {
+      deferEffects = false;
+    }
+  }
+
+  /**
+   * Applies, in the order in which they were generated, the updates of shared structures buffered
+   * during {@link #decide(SimState)}.
+   */
+  public void commit() {
+    for (Runnable effect : pendingEffects) {
+      effect.run();
+    }
+    pendingEffects.clear();
+  }
+
+  /**
+   * Applies an update of a shared structure, or buffers it when the agent is in the decision phase
+   * of parallel stepping.
+   *
+   * @param effect The update to apply.
+   */
+  void applyEffect(Runnable effect) {
+    if (deferEffects) {
+      pendingEffects.add(effect);
+    } else {
+      effect.run();
+    }
+  }
+
+  private void planNewTrip() {
+    TripTrace.begin(agentID);
+    try {
+      planTrip();
+    } finally {
+      TripTrace.end();
+    }
   }
 
-  private synchronized void planNewTrip() {
+  private void planTrip() {
     defineOriginDestination();
+    TripTrace.mark(Mark.TRIP, originNode.getID(), destinationNode.getID());
     if (destinationNode.getID() == originNode.getID()) {
       reachedDestination.set(true);
       return;
     }
+    state.countTripPlanned();
+    SimulationEvents.TripStart event = new SimulationEvents.TripStart();
+    if (event.shouldCommit()) {
+      event.job = state.currentJob;
+      event.agentID = agentID;
+      event.originNode = originNode.getID();
+      event.destinationNode = destinationNode.getID();
+      event.commit();
+    }
+    if (state.planningPool != null) {
+      plannedRoute = state.planningPool.submit(originNode, destinationNode, this);
+      statusAfterPlanning = status;
+      status = AgentStatus.PLANNING;
+      return;
+    }
     planRoute();
+    startWalking();
+  }
+
+  /**
+   * Takes the route planned asynchronously since the previous step, waiting for it if needed, and
+   * resumes the agent's previous status and starts walking along it. Trips thus always start one
+   * step after being planned, however long the planning takes, so that asynchronous planning does
+   * not change the results.
+   */
+  private void checkPlannedRoute() {
+    try {
+      route = plannedRoute.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Route planning interrupted for agent " + agentID, e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Route planning failed for agent " + agentID, e.getCause());
+    }
+    plannedRoute = null;
+    status = statusAfterPlanning;
+    startWalking();
+  }
+
+  /**
+   * Sets the agent up to walk along the planned route.
+   */
+  private void startWalking() {
     agentMovement = new AgentMovement(this);
     agentMovement.initialisePath(route);
   }
@@ -138,6 +289,9 @@ public class Agent implements Steppable {
     destinationNode = null;
     status = AgentStatus.WALKING;
     updateAgentLists(true, false);
+    if (state.isEventDriven()) {
+      scheduleNextWakeUp();
+    }
   }
 
   protected synchronized void defineOriginDestination() {
@@ -172,7 +326,9 @@ public class Agent implements Steppable {
     double upperLimit = distanceNextDestination;
     Graph network = CommunityCognitiveMap.getCommunityNetwork();
     List<NodeGraph> candidates = new ArrayList<>();
+    int iteration = 0;
     while (candidates.isEmpty()) {
+      TripTrace.mark(Mark.DESTINATION_WIDENING, iteration++, (int) upperLimit);
       candidates =
           NodesLookup.getNodesBetweenDistanceInterval(network, originNode, lowerLimit, upperLimit);
       candidates.retainAll(GraphUtils.getNodesFromNodeIDs(getCognitiveMap().getAgentKnownNodes(),
@@ -180,7 +336,10 @@ public class Agent implements Steppable {
       lowerLimit = lowerLimit * 0.90;
       upperLimit = upperLimit * 1.10;
     }
-    destinationNode = NodesLookup.randomNodeFromList(candidates);
+    // drawn from the agent's own stream, in nodeID order, so that the draw depends on the seed only
+    candidates.sort(Comparator.comparingInt(NodeGraph::getID));
+    destinationNode =
+        candidates.get(getRandom(RandomStream.DESTINATION).nextInt(candidates.size()));
   }
 
   private void handleReachedDestination(PedSimCity stateSchedule) {
@@ -188,6 +347,9 @@ public class Agent implements Steppable {
     reachedDestination.set(false);
     updateAgentPosition(destinationNode.getCoordinate());
 
+    if (destinationNode.getID() != originNode.getID()) {
+      commitTripEndEvent();
+    }
     if ((destinationNode.getID() != originNode.getID()) && route.getLineString().getLength() > 10
         && isLearner()) {
       learning.updateAgentMemory(route);
@@ -209,6 +371,19 @@ public class Agent implements Steppable {
     }
   }
 
+  /**
+   * Returns the agent's current position. With analytic movement, the position of a walking agent
+   * is only interpolated here, on demand, and the agent's location is updated accordingly.
+   *
+   * @return The coordinate of the agent.
+   */
+  public Coordinate getCurrentPosition() {
+    if (state.isAnalyticMovement() && isWalking() && !reachedDestination.get()) {
+      updateAgentPosition(agentMovement.getPosition(state.getCurrentSteps()));
+    }
+    return currentLocation.getGeometry().getCoordinate();
+  }
+
   /**
    * Moves the agent to the given coordinates.
    *
@@ -217,7 +392,7 @@ public class Agent implements Steppable {
   public void updateAgentPosition(Coordinate coordinate) {
     GeometryFactory geometryFactory = new GeometryFactory();
     Point newLocation = geometryFactory.createPoint(coordinate);
-    state.agents.setGeometryLocation(currentLocation, newLocation);
+    applyEffect(() -> state.agents.setGeometryLocation(currentLocation, newLocation));
     currentLocation.geometry = newLocation;
   }
 
@@ -226,7 +401,7 @@ public class Agent implements Steppable {
    */
   private void handleReachedSoloDestination() {
     status = AgentStatus.AT_DESTINATION;
-    calculateTimeAtDestination(state.schedule.getSteps());
+    calculateTimeAtDestination((long) state.getCurrentSteps());
   }
 
   /**
@@ -253,7 +428,7 @@ public class Agent implements Steppable {
    */
   protected void goHome() {
 
-    state.agentsWalking.add(this);
+    applyEffect(() -> state.agentsWalking.add(this));
     status = AgentStatus.GOING_HOME;
     planNewTrip();
   }
@@ -266,14 +441,32 @@ public class Agent implements Steppable {
    */
   public void updateAgentLists(boolean isWalking, boolean reachedHome) {
 
-    if (isWalking) {
-      state.agentsWalking.add(this);
-      state.agentsAtHome.remove(this);
-    } else {
-      if (reachedHome) {
-        state.agentsAtHome.add(this);
+    applyEffect(() -> {
+      if (isWalking) {
+        state.agentsWalking.add(this);
+        state.agentsAtHome.remove(this);
+        state.homeAgentsSampler.removeAgent(this);
+      } else {
+        if (reachedHome) {
+          state.agentsAtHome.add(this);
+          state.homeAgentsSampler.addAgent(this);
+        }
+        state.agentsWalking.remove(this);
       }
-      state.agentsWalking.remove(this);
+    });
+  }
+
+  private void commitTripEndEvent() {
+    SimulationEvents.TripEnd event = new SimulationEvents.TripEnd();
+    if (event.shouldCommit()) {
+      event.job = state.currentJob;
+      event.agentID = agentID;
+      event.originNode = originNode.getID();
+      event.destinationNode = destinationNode.getID();
+      event.routeLength = route.getLineString().getLength();
+      event.routeEdges = route.directedEdgesSequence.size();
+      event.setHeuristics(agentProperties);
+      event.commit();
     }
   }
 
@@ -344,6 +537,15 @@ public class Agent implements Steppable {
     return status.equals(AgentStatus.WAITING);
   }
 
+  /**
+   * Checks if the agent is waiting for its route to be planned.
+   *
+   * @return true if the agent's route is being planned, false otherwise.
+   */
+  private boolean isPlanning() {
+    return status.equals(AgentStatus.PLANNING);
+  }
+
   /**
    * Checks if the agent is walking alone.
    *
@@ -353,6 +555,15 @@ public class Agent implements Steppable {
     return status.equals(AgentStatus.WALKING);
   }
 
+  /**
+   * Checks if the agent is moving along a route, either on a solo walk or going home.
+   *
+   * @return true if the agent is moving along a route, false otherwise.
+   */
+  private boolean isWalking() {
+    return (isWalkingAlone() || isGoingHome()) && agentMovement != null && destinationNode != null;
+  }
+
   /**
    * Checks if the agent is going home.
    *
@@ -423,4 +634,158 @@ public class Agent implements Steppable {
   public Heuristics getHeuristics() {
     return this.heuristics;
   }
+
+  /**
+   * Returns the agent's random stream serving the given purpose.
+   *
+   * @param stream The purpose of the stream.
+   * @return The random stream.
+   */
+  public SplitMixRandom getRandom(RandomStream stream) {
+    return randomStreams.get(stream);
+  }
+
+  /**
+   * Writes the agent's persistent state to a checkpoint: meters walked, random streams, cognitive
+   * map, learning history and current trip, if any.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    out.writeDouble(metersWalkedTot);
+    out.writeDouble(metersWalkedDay);
+    for (RandomStream stream : RandomStream.values()) {
+      randomStreams.get(stream).writeState(out);
+    }
+    cognitiveMap.writeState(out);
+    learning.writeState(out);
+    writeTripState(out);
+  }
+
+  /**
+   * Restores the agent's state from a checkpoint written with {@link #writeState(DataOutput)}. The
+   * agent resumes its trip, if any, and is placed back in the agents' lists accordingly.
+   *
+   * @param in the checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  public void readState(DataInput in) throws IOException {
+    metersWalkedTot = in.readDouble();
+    metersWalkedDay = in.readDouble();
+    for (RandomStream stream : RandomStream.values()) {
+      randomStreams.get(stream).readState(in);
+    }
+    cognitiveMap.readState(in);
+    learning.readState(in);
+    readTripState(in);
+  }
+
+  /**
+   * Writes the agent's current trip: status, origin and destination, stay at destination, location,
+   * route and progress along it. A route still being planned asynchronously is waited for and
+   * stored as planned.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails or the planning of the route failed.
+   */
+  private void writeTripState(DataOutput out) throws IOException {
+    out.writeInt(status.ordinal());
+    if (isPlanning()) {
+      out.writeInt(statusAfterPlanning.ordinal());
+    }
+    out.writeDouble(distanceNextDestination);
+    out.writeDouble(timeAtDestination);
+    Checkpoint.writeNode(out, originNode);
+    Checkpoint.writeNode(out, destinationNode);
+    Checkpoint.writeNode(out, lastDestination);
+    out.writeBoolean(reachedDestination.get());
+    Coordinate location = currentLocation.getGeometry().getCoordinate();
+    out.writeDouble(location.x);
+    out.writeDouble(location.y);
+
+    Route tripRoute = isPlanning() ? awaitPlannedRoute() : route;
+    boolean hasRoute = tripRoute != null && destinationNode != null;
+    out.writeBoolean(hasRoute);
+    if (hasRoute) {
+      Checkpoint.writeDirectedEdges(out, tripRoute.directedEdgesSequence);
+    }
+    boolean walking = isWalking();
+    out.writeBoolean(walking);
+    if (walking) {
+      agentMovement.writeState(out);
+    }
+  }
+
+  /**
+   * Restores the agent's current trip written with {@link #writeTripState(DataOutput)}.
+   *
+   * @param in the checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  private void readTripState(DataInput in) throws IOException {
+    AgentStatus[] statuses = AgentStatus.values();
+    status = statuses[in.readInt()];
+    if (isPlanning()) {
+      statusAfterPlanning = statuses[in.readInt()];
+    }
+    distanceNextDestination = in.readDouble();
+    timeAtDestination = in.readDouble();
+    originNode = Checkpoint.readNode(in);
+    destinationNode = Checkpoint.readNode(in);
+    lastDestination = Checkpoint.readNode(in);
+    reachedDestination.set(in.readBoolean());
+    Coordinate location = new Coordinate(in.readDouble(), in.readDouble());
+
+    Route tripRoute = null;
+    if (in.readBoolean()) {
+      tripRoute = new Route();
+      tripRoute.resetRoute(Checkpoint.readDirectedEdges(in));
+    }
+    if (isPlanning()) {
+      plannedRoute = CompletableFuture.completedFuture(tripRoute);
+    } else if (tripRoute != null) {
+      route = tripRoute;
+    }
+    agentMovement = null;
+    if (in.readBoolean()) {
+      agentMovement = new AgentMovement(this);
+      agentMovement.readState(in);
+    }
+    updateAgentPosition(location);
+    restoreAgentLists();
+  }
+
+  /**
+   * Waits for the route being planned asynchronously.
+   *
+   * @return The planned route.
+   * @throws IOException if waiting is interrupted or the planning failed.
+   */
+  private Route awaitPlannedRoute() throws IOException {
+    try {
+      return plannedRoute.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the route of agent " + agentID, e);
+    } catch (ExecutionException e) {
+      throw new IOException("Route planning failed for agent " + agentID, e.getCause());
+    }
+  }
+
+  /**
+   * Places the restored agent in the agents' lists matching its status: at home when waiting,
+   * walking when planning or moving along a route, in neither when staying at its destination.
+   */
+  private void restoreAgentLists() {
+    if (isWaiting()) {
+      updateAgentLists(false, true);
+      return;
+    }
+    state.agentsAtHome.remove(this);
+    state.homeAgentsSampler.removeAgent(this);
+    if (!isAtDestination()) {
+      state.agentsWalking.add(this);
+    }
+  }
 }
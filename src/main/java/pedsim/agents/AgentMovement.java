@@ -1,5 +1,8 @@
 package pedsim.agents;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -10,8 +13,12 @@ import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.linearref.LengthIndexedLine;
 import org.locationtech.jts.planargraph.DirectedEdge;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.engine.Checkpoint;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.PhaseTimings;
+import pedsim.engine.PhaseTimings.Phase;
 import pedsim.parameters.Pars;
+import pedsim.utilities.StringEnum.RandomStream;
 import sim.graph.EdgeGraph;
 import sim.graph.Graph;
 import sim.graph.GraphUtils;
@@ -33,6 +40,10 @@ public class AgentMovement {
 
   // used by agent to walk along line segment
   int indexOnSequence = 0;
+  // analytic movement: step at which the agent set off and distance walked when entering the
+  // current edge
+  private double walkStartStep = 0.0;
+  private double distanceAtEdgeEntry = 0.0;
   protected LengthIndexedLine indexedSegment = null;
   protected List<DirectedEdge> directedEdgesSequence = new ArrayList<>();
   private Agent agent;
@@ -43,7 +54,7 @@ public class AgentMovement {
   Set<Integer> edgesToAvoid;
 
   PedSimCity state;
-  Random random = new Random();
+  Random random;
 
   private NodeGraph currentNode;
   private Graph network;
@@ -51,6 +62,7 @@ public class AgentMovement {
   public AgentMovement(Agent agent) {
     this.agent = agent;
     this.state = agent.getState();
+    this.random = agent.getRandom(RandomStream.MOVEMENT);
     this.network = CommunityCognitiveMap.getCommunityNetwork();
   }
 
@@ -61,6 +73,8 @@ public class AgentMovement {
 
     indexOnSequence = 0;
     this.directedEdgesSequence = route.directedEdgesSequence;
+    walkStartStep = state.getCurrentSteps();
+    distanceAtEdgeEntry = 0.0;
 
     // set up how to traverse this first link
     firstDirectedEdge = directedEdgesSequence.get(indexOnSequence);
@@ -84,17 +98,73 @@ public class AgentMovement {
       rerouteOrIncreaseSpeed();
     }
     updateCounts();
+    setIndexedSegment();
 
+    currentIndex = indexedSegment.getStartIndex();
+    endIndex = indexedSegment.getEndIndex();
+    return;
+  }
+
+  /**
+   * Sets the indexed segment of the current directed edge, from the indexed edge cache.
+   */
+  private void setIndexedSegment() {
     if (PedSimCity.indexedEdgeCache.containsKey(currentDirectedEdge)) {
       indexedSegment = PedSimCity.indexedEdgeCache.get(currentDirectedEdge);
     } else {
       addIndexedSegment(currentEdge);
       indexedSegment = PedSimCity.indexedEdgeCache.get(currentDirectedEdge);
     }
+  }
 
-    currentIndex = indexedSegment.getStartIndex();
+  /**
+   * Writes the agent's progress along its path to a checkpoint: the path, the edges walked so far,
+   * the position on the current edge and the state of the analytic movement.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  void writeState(DataOutput out) throws IOException {
+    Checkpoint.writeDirectedEdges(out, directedEdgesSequence);
+    Checkpoint.writeDirectedEdges(out, edgesWalkedSoFar);
+    Checkpoint.writeDirectedEdge(out, firstDirectedEdge);
+    out.writeInt(indexOnSequence);
+    out.writeDouble(currentIndex);
+    out.writeDouble(reach);
+    out.writeDouble(walkStartStep);
+    out.writeDouble(distanceAtEdgeEntry);
+    out.writeBoolean(originalRoute);
+    out.writeBoolean(increaseSpeedAtNight);
+  }
+
+  /**
+   * Restores the agent's progress along its path from a checkpoint written with
+   * {@link #writeState(DataOutput)}. Unless the agent has already reached its destination, it is
+   * counted again on its current edge.
+   *
+   * @param in the checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  void readState(DataInput in) throws IOException {
+    directedEdgesSequence = Checkpoint.readDirectedEdges(in);
+    edgesWalkedSoFar = Checkpoint.readDirectedEdges(in);
+    firstDirectedEdge = Checkpoint.readDirectedEdge(in);
+    currentNode = (NodeGraph) firstDirectedEdge.getFromNode();
+    indexOnSequence = in.readInt();
+    currentIndex = in.readDouble();
+    reach = in.readDouble();
+    walkStartStep = in.readDouble();
+    distanceAtEdgeEntry = in.readDouble();
+    originalRoute = in.readBoolean();
+    increaseSpeedAtNight = in.readBoolean();
+
+    currentDirectedEdge = directedEdgesSequence.get(indexOnSequence);
+    currentEdge = (EdgeGraph) currentDirectedEdge.getEdge();
+    setIndexedSegment();
     endIndex = indexedSegment.getEndIndex();
-    return;
+    if (!agent.reachedDestination.get()) {
+      state.incrementAgentCount(currentEdge);
+    }
   }
 
   /**
@@ -102,6 +172,7 @@ public class AgentMovement {
    */
   protected void keepWalking() {
 
+    long start = PhaseTimings.start();
     resetReach(); // as the segment might have changed level of crowdness
     // updateReach();
     // move along the current segment
@@ -119,6 +190,46 @@ public class AgentMovement {
       final Coordinate currentPos = indexedSegment.extractPoint(currentIndex);
       agent.updateAgentPosition(currentPos);
     }
+    PhaseTimings.stop(Phase.WALKING, start);
+  }
+
+  /**
+   * Moves the agent analytically up to the given step: all the edges the agent would have left by
+   * then are transitioned at once, without computing intermediate positions. The agent's position
+   * can be obtained on demand through {@link #getPosition(double)}.
+   *
+   * @param steps The current simulation step.
+   */
+  protected void walkUntil(double steps) {
+    while (!agent.reachedDestination.get() && getEdgeExitStep() <= steps) {
+      distanceAtEdgeEntry += endIndex - indexedSegment.getStartIndex();
+      moveToNextEdge();
+    }
+  }
+
+  /**
+   * Returns the step at which the agent leaves the current edge when moving analytically, at a
+   * constant reach per step.
+   *
+   * @return The step at which the current edge is left.
+   */
+  public double getEdgeExitStep() {
+    double distanceAtEdgeExit = distanceAtEdgeEntry + (endIndex - indexedSegment.getStartIndex());
+    return walkStartStep + Math.floor(distanceAtEdgeExit / Pars.moveRate) + 1;
+  }
+
+  /**
+   * Interpolates the agent's position along the current edge at the given step when moving
+   * analytically.
+   *
+   * @param steps The simulation step.
+   * @return The coordinate of the agent at that step.
+   */
+  public Coordinate getPosition(double steps) {
+    double distanceOnEdge = (steps - walkStartStep) * Pars.moveRate - distanceAtEdgeEntry;
+    double index =
+        Math.min(indexedSegment.getStartIndex() + Math.max(0.0, distanceOnEdge), endIndex);
+    return indexedSegment.extractPoint(index);
   }
 
   /**
@@ -128,9 +239,33 @@ public class AgentMovement {
    */
   void transitionToNextEdge(double residualMove) {
 
+    if (!moveToNextEdge()) {
+      return;
+    }
+
+    reach = residualMove;
+    currentIndex += reach;
+
+    // check to see if the progress has taken the current index beyond its goal
+    // given the direction of movement. If so, proceed to the next edge
+    if (currentIndex > endIndex) {
+      residualMove = currentIndex - endIndex;
+      transitionToNextEdge(residualMove);
+    }
+  }
+
+  /**
+   * Leaves the current edge and sets the agent up to proceed along the next edge in the
+   * {@code directedEdgesSequence}, if any.
+   *
+   * @return false if the agent has reached the end of its path, true otherwise.
+   */
+  private boolean moveToNextEdge() {
+
     // update the counter for where the index on the directedEdgesSequence is
     indexOnSequence += 1;
-    currentEdge.decrementAgentCount(); // Leave current edge
+    final EdgeGraph leftEdge = currentEdge;
+    agent.applyEffect(() -> state.decrementAgentCount(leftEdge)); // Leave current edge
 
     // check to make sure the Agent has not reached the end of the
     // directedEdgesSequence already
@@ -138,22 +273,13 @@ public class AgentMovement {
       agent.reachedDestination.set(true);
       indexOnSequence -= 1; // make sure index is correct
       updateData();
-      return;
+      return false;
     }
 
     // prepare to setup to the next edge
     DirectedEdge nextDirectedEdge = directedEdgesSequence.get(indexOnSequence);
     setupEdge(nextDirectedEdge);
-
-    reach = residualMove;
-    currentIndex += reach;
-
-    // check to see if the progress has taken the current index beyond its goal
-    // given the direction of movement. If so, proceed to the next edge
-    if (currentIndex > endIndex) {
-      residualMove = currentIndex - endIndex;
-      transitionToNextEdge(residualMove);
-    }
+    return true;
   }
 
   /**
@@ -163,9 +289,11 @@ public class AgentMovement {
    */
   private void addIndexedSegment(EdgeGraph edge) {
 
+    // the line is oriented from the node the directed edge leaves, where the agent stands
     LineString line = edge.getLine();
-    double distanceToStart = line.getStartPoint().distance(agent.getLocation().geometry);
-    double distanceToEnd = line.getEndPoint().distance(agent.getLocation().geometry);
+    Coordinate fromCoordinate = currentDirectedEdge.getFromNode().getCoordinate();
+    double distanceToStart = line.getStartPoint().getCoordinate().distance(fromCoordinate);
+    double distanceToEnd = line.getEndPoint().getCoordinate().distance(fromCoordinate);
 
     if (distanceToEnd < distanceToStart) {
       line = line.reverse();
@@ -197,7 +325,7 @@ public class AgentMovement {
    */
   private boolean isEdgeCrowded(EdgeGraph edge) {
     double volumePercentile = calculateVolumesPercentile(20);
-    return edge.getAgentCount() >= volumePercentile;
+    return state.getAgentCount(edge) >= volumePercentile;
   }
 
   /**
@@ -208,9 +336,8 @@ public class AgentMovement {
    */
   private double calculateVolumesPercentile(int percentile) {
     // Collect volumes from edges (Set to List)
-    List<Integer> volumes = PedSimCity.edges.stream().map(EdgeGraph::getAgentCount) // Map each edge
-                                                                                    // to its
-                                                                                    // agentCount
+    List<Integer> volumes = PedSimCity.edges.stream().map(state::getAgentCount) // Map each edge to
+                                                                              // its agentCount
         .filter(agentCount -> agentCount > 0) // Only keep agent counts greater than 0
         .sorted() // Sort the agent counts
         .collect(Collectors.toList()); // Collect to a List
@@ -317,7 +444,11 @@ public class AgentMovement {
    */
   private void updateCounts() {
     edgesWalkedSoFar.add(currentDirectedEdge);
-    currentEdge.incrementAgentCount();
+    final EdgeGraph enteredEdge = currentEdge;
+    agent.applyEffect(() -> {
+      state.incrementAgentCount(enteredEdge);
+      state.addMetersWalkedToday(enteredEdge.getLength());
+    });
     agent.metersWalkedTot += currentEdge.getLength();
     agent.metersWalkedDay += currentEdge.getLength();
   }
@@ -327,7 +458,8 @@ public class AgentMovement {
    */
   public void updateData() {
     agent.route.resetRoute(new ArrayList<>(edgesWalkedSoFar));
-    state.flowHandler.updateFlowsData(agent, agent.route, agent.learner, null);
+    agent.applyEffect(
+        () -> state.flowHandler.updateFlowsData(agent, agent.route, agent.learner, null));
   }
 
   /**
@@ -1,9 +1,13 @@
 package pedsim.agents;
 
-import java.util.Random;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import pedsim.parameters.PopulationPars;
+import pedsim.utilities.SplitMixRandom;
 import pedsim.utilities.StringEnum.AgentBarrierType;
 import pedsim.utilities.StringEnum.LandmarkType;
+import pedsim.utilities.StringEnum.RandomStream;
 
 public class AgentProperties {
 
@@ -38,10 +42,11 @@ public class AgentProperties {
   private static final double MIN_SEVERING_BARRIERS = 1.00;
   private static final double MAX_SEVERING_BARRIERS = 2.00;
 
-  final Random random = new Random();
+  final SplitMixRandom random;
 
   public AgentProperties(Agent agent) {
     this.agent = agent;
+    this.random = agent.getRandom(RandomStream.PROPERTIES);
   }
 
   protected void setBarriersEffect() {
@@ -100,4 +105,57 @@ public class AgentProperties {
   public boolean shouldUseLocalHeuristic() {
     return localHeuristicDistance || localHeuristicAngular;
   }
+
+  /**
+   * Writes the route choice flags, barrier effects and element types that drive the planning of a
+   * route, as recorded in a planning workload (see
+   * {@link pedsim.routePlanner.PlanningRecorder}).
+   *
+   * @param out the workload output.
+   * @throws IOException if writing fails.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    boolean[] flags = {minimisingDistance, minimisingAngular, localHeuristicDistance,
+        localHeuristicAngular, usingLocalLandmarks, usingDistantLandmarks, regionBasedNavigation,
+        barrierBasedNavigation, preferenceNaturalBarriers, aversionSeveringBarriers, usingElements,
+        elementsActivated};
+    for (boolean flag : flags) {
+      out.writeBoolean(flag);
+    }
+    out.writeDouble(naturalBarriersMean);
+    out.writeDouble(naturalBarriersSD);
+    out.writeDouble(severingBarriersMean);
+    out.writeDouble(severingBarriersSD);
+    out.writeByte(barrierType != null ? barrierType.ordinal() : -1);
+    out.writeByte(landmarkType != null ? landmarkType.ordinal() : -1);
+  }
+
+  /**
+   * Restores the properties written with {@link #writeState(DataOutput)}.
+   *
+   * @param in the workload input.
+   * @throws IOException if reading fails.
+   */
+  public void readState(DataInput in) throws IOException {
+    minimisingDistance = in.readBoolean();
+    minimisingAngular = in.readBoolean();
+    localHeuristicDistance = in.readBoolean();
+    localHeuristicAngular = in.readBoolean();
+    usingLocalLandmarks = in.readBoolean();
+    usingDistantLandmarks = in.readBoolean();
+    regionBasedNavigation = in.readBoolean();
+    barrierBasedNavigation = in.readBoolean();
+    preferenceNaturalBarriers = in.readBoolean();
+    aversionSeveringBarriers = in.readBoolean();
+    usingElements = in.readBoolean();
+    elementsActivated = in.readBoolean();
+    naturalBarriersMean = in.readDouble();
+    naturalBarriersSD = in.readDouble();
+    severingBarriersMean = in.readDouble();
+    severingBarriersSD = in.readDouble();
+    int barrierOrdinal = in.readByte();
+    barrierType = barrierOrdinal >= 0 ? AgentBarrierType.values()[barrierOrdinal] : null;
+    int landmarkOrdinal = in.readByte();
+    landmarkType = landmarkOrdinal >= 0 ? LandmarkType.values()[landmarkOrdinal] : null;
+  }
 }
@@ -8,7 +8,6 @@ import pedsim.parameters.PopulationPars;
 import pedsim.utilities.StringEnum.AgentBarrierType;
 import pedsim.utilities.StringEnum.LandmarkType;
 import pedsim.utilities.StringEnum.RouteChoiceProperty;
-import sim.util.geo.Utilities;
 
 /**
  * `EmpiricalAgentProperties` is a subclass of `AgentProperties` that represents the properties of
@@ -33,7 +32,7 @@ public class EmpiricalAgentProperties extends AgentProperties {
    */
   public void updateProbabilities(List<Double> probs, List<Pair<Double, Double>> pDistribution) {
     for (int i = 0; i < probs.size(); i++) {
-      double p = Utilities.fromDistribution(pDistribution.get(i).getValue0(),
+      double p = random.fromDistribution(pDistribution.get(i).getValue0(),
           pDistribution.get(i).getValue1(), null);
       probs.set(i, p);
     }
@@ -76,25 +75,22 @@ public class EmpiricalAgentProperties extends AgentProperties {
     // 1:1 mapping
     if (pars.size() == props.size()) {
       for (int i = 0; i < props.size(); i++) {
-        double w =
-            Utilities.fromDistribution(pars.get(i).getValue0(), pars.get(i).getValue1(), null);
+        double w = random.fromDistribution(pars.get(i).getValue0(), pars.get(i).getValue1(), null);
         outMap.put(props.get(i), w);
       }
       return;
     }
     // binary group, single param -> complement
     if (props.size() == 2 && pars.size() == 1) {
-      double p = Utilities.fromDistribution(pars.get(0).getValue0(), pars.get(0).getValue1(), null);
+      double p = random.fromDistribution(pars.get(0).getValue0(), pars.get(0).getValue1(), null);
       outMap.put(props.get(0), p);
       outMap.put(props.get(1), 1.0 - p);
       return;
     }
     // ternary (subGoals)
     if (props.size() == 3 && pars.size() == 2) {
-      double p0 =
-          Utilities.fromDistribution(pars.get(0).getValue0(), pars.get(0).getValue1(), null);
-      double p1 =
-          Utilities.fromDistribution(pars.get(1).getValue0(), pars.get(1).getValue1(), null);
+      double p0 = random.fromDistribution(pars.get(0).getValue0(), pars.get(0).getValue1(), null);
+      double p1 = random.fromDistribution(pars.get(1).getValue0(), pars.get(1).getValue1(), null);
       outMap.put(props.get(0), p0);
       outMap.put(props.get(1), p1);
       outMap.put(props.get(2), 1.0 - (p0 + p1));
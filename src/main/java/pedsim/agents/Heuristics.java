@@ -1,10 +1,14 @@
 package pedsim.agents;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
 import pedsim.cognitiveMap.ElementsSensitivity;
 import pedsim.cognitiveMap.VividnessGrid;
 import pedsim.parameters.RouteChoicePars;
+import pedsim.utilities.StringEnum.RandomStream;
 import sim.graph.NodeGraph;
 
 /**
@@ -75,7 +79,7 @@ public final class Heuristics {
   private double probabilityBarrierSubGoals;
   private double probabilityDistanceMinimisation;
 
-  final Random random = new Random();
+  final Random random;
 
   private double spatialAbility;
   private double probabilityAngularMinimisation;
@@ -88,7 +92,8 @@ public final class Heuristics {
   public Heuristics(Agent agent) {
     this.agent = agent;
     this.ap = agent.getProperties();
-    this.elementsSensitivity = new ElementsSensitivity();
+    this.random = agent.getRandom(RandomStream.HEURISTICS);
+    this.elementsSensitivity = new ElementsSensitivity(agent.getRandom(RandomStream.ELEMENTS));
     this.spatialAbility = agent.getCognitiveMap().spatialAbility;
     this.vividnessGrid = agent.getCognitiveMap().vividnessGrid;
   }
@@ -282,4 +287,31 @@ public final class Heuristics {
     // --- Region-based segmentation (independent switch) ---
     ap.regionBasedNavigation = random.nextDouble() < probabilityUsingRegions;
   }
+
+  /**
+   * Writes the effective vividness and the global landmark weights defined for the current route,
+   * as recorded in a planning workload (see {@link pedsim.routePlanner.PlanningRecorder}).
+   *
+   * @param out the workload output.
+   * @throws IOException if writing fails.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    out.writeDouble(effectiveVividness);
+    out.writeDouble(globalLandmarknessWeightDistance);
+    out.writeDouble(globalLandmarknessWeightAngular);
+  }
+
+  /**
+   * Restores the values written with {@link #writeState(DataOutput)}, in place of defining the
+   * heuristic, so that a recorded route can be planned again. The local landmark threshold follows
+   * from the restored effective vividness.
+   *
+   * @param in the workload input.
+   * @throws IOException if reading fails.
+   */
+  public void readState(DataInput in) throws IOException {
+    effectiveVividness = in.readDouble();
+    globalLandmarknessWeightDistance = in.readDouble();
+    globalLandmarknessWeightAngular = in.readDouble();
+  }
 }
@@ -1,6 +1,10 @@
 package pedsim.cognitiveMap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -8,7 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.locationtech.jts.geom.Geometry;
@@ -17,12 +21,17 @@ import org.locationtech.jts.geom.Polygon;
 
 import pedsim.agents.Agent;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.engine.Checkpoint;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.SimulationEvents;
 import pedsim.parameters.LearningPars;
 import pedsim.parameters.Pars;
 import pedsim.parameters.RouteChoicePars;
 import pedsim.routeMemorability.MemoryTrace;
+import pedsim.utilities.SplitMixRandom;
+import pedsim.utilities.StringEnum.RandomStream;
 import sim.graph.EdgeGraph;
+import sim.graph.Graph;
 import sim.graph.GraphUtils;
 import sim.graph.Islands;
 import sim.graph.NodeGraph;
@@ -36,8 +45,8 @@ import sim.routing.Astar;
 public class CognitiveMap extends CommunityCognitiveMap {
 
   // in the community network
-  private final NodeGraph homeNode;
-  private final NodeGraph workNode;
+  private NodeGraph homeNode;
+  private NodeGraph workNode;
   Geometry activityBone;
 
   // public HashMap<Pair<Polygon, List<NodeGraph>>, MemoryTrace> collage = new
@@ -56,12 +65,16 @@ public class CognitiveMap extends CommunityCognitiveMap {
   protected Set<Integer> agentKnownBarriers = new HashSet<>();
   protected Set<Integer> agentKnownLocalLandmarks = new HashSet<>();
 
+  private static final Map<Graph, List<NodeGraph>> NODES_IN_ID_ORDER = new ConcurrentHashMap<>();
+
   protected Agent agent;
   GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
   public boolean formed = false;
   // public List<Set<NodeGraph>> islands;
   public double spatialAbility;
   public VividnessGrid vividnessGrid = null;
+  // incremented whenever the known network changes, to identify its snapshots
+  private int version = 0;
 
   /**
    * Constructs an AgentCognitiveMap.
@@ -69,12 +82,52 @@ public class CognitiveMap extends CommunityCognitiveMap {
   public CognitiveMap(Agent agent) {
 
     this.agent = agent;
-    homeNode = NodesLookup.randomNodeDMA(CommunityCognitiveMap.getCommunityNetwork(), "live");
-    workNode = NodesLookup.randomNodeBetweenDistanceIntervalDMA(
-        CommunityCognitiveMap.getCommunityNetwork(), homeNode, 200, 2000, "work");
+    defineActivityNodes();
 
     spatialAbility = Math.min(1.0, Math.max(0.0,
-        LearningPars.MEAN_MEMORY_ROUTES + (ThreadLocalRandom.current().nextDouble() - 0.5) * 0.5));
+        LearningPars.MEAN_MEMORY_ROUTES
+            + (agent.getRandom(RandomStream.COGNITIVE_MAP).nextDouble() - 0.5) * 0.5));
+  }
+
+  /**
+   * Draws the agent's home node among the nodes of the community network whose DMA is "live", and
+   * its work node among the "work" nodes between 200 and 2000 m from home. When no node has the
+   * required DMA (e.g. the city has no buildings), any node of the network, or within the distance
+   * interval, is eligible. The draws come from the agent's own stream over nodes in nodeID order,
+   * so that they depend on the job seed only.
+   */
+  private void defineActivityNodes() {
+
+    Graph network = CommunityCognitiveMap.getCommunityNetwork();
+    SplitMixRandom random = agent.getRandom(RandomStream.ACTIVITY_NODES);
+    homeNode = randomNode(withDMA(getNodesInIDOrder(network), "live"), random);
+
+    List<NodeGraph> workCandidates =
+        new ArrayList<>(NodesLookup.getNodesBetweenDistanceInterval(network, homeNode, 200, 2000));
+    workCandidates.sort(Comparator.comparingInt(NodeGraph::getID));
+    if (workCandidates.isEmpty()) {
+      workCandidates = getNodesInIDOrder(network);
+    }
+    workNode = randomNode(withDMA(workCandidates, "work"), random);
+  }
+
+  // the community network's nodes sorted by nodeID, computed once as the network is shared
+  private static List<NodeGraph> getNodesInIDOrder(Graph network) {
+    return NODES_IN_ID_ORDER.computeIfAbsent(network, key -> {
+      List<NodeGraph> nodes = new ArrayList<>(key.getNodes());
+      nodes.sort(Comparator.comparingInt(NodeGraph::getID));
+      return nodes;
+    });
+  }
+
+  private static List<NodeGraph> withDMA(List<NodeGraph> nodes, String DMA) {
+    List<NodeGraph> nodesDMA =
+        nodes.stream().filter(node -> DMA.equals(node.DMA)).collect(Collectors.toList());
+    return nodesDMA.isEmpty() ? nodes : nodesDMA;
+  }
+
+  private static NodeGraph randomNode(List<NodeGraph> nodes, SplitMixRandom random) {
+    return nodes.get(random.nextInt(nodes.size()));
   }
 
   public void formCognitiveMap() {
@@ -85,6 +138,7 @@ public class CognitiveMap extends CommunityCognitiveMap {
     networkBuilder.buildKnownNetwork();
     identifyKnownUrbanElements();
     formed = true;
+    version++;
     agent.learning.buildBasicMemory();
 
   }
@@ -159,6 +213,9 @@ public class CognitiveMap extends CommunityCognitiveMap {
 
   public void readjustCognitiveMap(List<Polygon> polygons) {
 
+    SimulationEvents.CognitiveMapReadjustment event =
+        new SimulationEvents.CognitiveMapReadjustment();
+    event.begin();
     agentKnownNodes.clear();
     agentKnownEdges.clear();
     cognitiveCollage = new ArrayList<Polygon>(polygons);
@@ -175,6 +232,72 @@ public class CognitiveMap extends CommunityCognitiveMap {
     fuseBoneWithCommunityNetwork();
     identifyKnownUrbanElements();
     networkBuilder.buildKnownNetwork();
+    version++;
+    event.end();
+    if (event.shouldCommit()) {
+      event.agentID = agent.agentID;
+      event.polygons = polygons.size();
+      event.knownNodes = agentKnownNodes.size();
+      event.knownEdges = agentKnownEdges.size();
+      event.commit();
+    }
+  }
+
+  /**
+   * Writes the anchor nodes, spatial ability and known sets of the cognitive map to a checkpoint.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    out.writeInt(homeNode.getID());
+    out.writeInt(workNode.getID());
+    out.writeDouble(spatialAbility);
+    out.writeBoolean(formed);
+    Checkpoint.writeIntegers(out, activityBoneNodes);
+    Checkpoint.writeIntegers(out, activityBoneEdges);
+    Checkpoint.writeIntegers(out, agentKnownNodes);
+    Checkpoint.writeIntegers(out, agentKnownEdges);
+    Checkpoint.writeIntegers(out, agentKnownRegions);
+    Checkpoint.writeIntegers(out, agentKnownBarriers);
+    Checkpoint.writeIntegers(out, agentKnownLocalLandmarks);
+  }
+
+  /**
+   * Restores the cognitive map from a checkpoint written with {@link #writeState(DataOutput)}. The
+   * known network is rebuilt from the restored known edges.
+   *
+   * @param in the checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  public void readState(DataInput in) throws IOException {
+    homeNode = PedSimCity.nodesMap.get(in.readInt());
+    workNode = PedSimCity.nodesMap.get(in.readInt());
+    spatialAbility = in.readDouble();
+    formed = in.readBoolean();
+    activityBoneNodes = Checkpoint.readIntegers(in);
+    activityBoneEdges = Checkpoint.readIntegers(in);
+    agentKnownNodes = Checkpoint.readIntegers(in);
+    agentKnownEdges = Checkpoint.readIntegers(in);
+    agentKnownRegions = Checkpoint.readIntegers(in);
+    agentKnownBarriers = Checkpoint.readIntegers(in);
+    agentKnownLocalLandmarks = Checkpoint.readIntegers(in);
+    if (formed) {
+      networkBuilder = new NetworkBuilder(this);
+      networkBuilder.buildKnownNetwork();
+    }
+    version++;
+  }
+
+  /**
+   * Returns the version of the cognitive map, incremented whenever the known network is formed,
+   * readjusted or restored. Two planning invocations of the agent with the same version plan on
+   * the same known network.
+   *
+   * @return The version.
+   */
+  public int getVersion() {
+    return version;
   }
 
   private void identifyKnownUrbanElements() {
@@ -266,6 +389,32 @@ public class CognitiveMap extends CommunityCognitiveMap {
     return agentKnownBarriers;
   }
 
+  /**
+   * Returns the number of IDs in the known sets of the cognitive map, for memory accounting.
+   *
+   * @return The number of node, edge, region, barrier and landmark IDs held.
+   */
+  public int getKnownIDsCount() {
+    return activityBoneNodes.size() + activityBoneEdges.size() + agentKnownNodes.size()
+        + agentKnownEdges.size() + agentKnownRegions.size() + agentKnownBarriers.size()
+        + agentKnownLocalLandmarks.size();
+  }
+
+  /**
+   * Returns the number of graph elements in the known primal and dual networks, for memory
+   * accounting.
+   *
+   * @return The number of nodes and edges held.
+   */
+  public int getKnownNetworkCount() {
+    return networkBuilder.necessaryNodes.size() + networkBuilder.necessaryEdges.size()
+        + networkBuilder.necessaryDualNodes.size() + networkBuilder.necessaryDualEdges.size();
+  }
+
+  public List<Polygon> getCognitiveCollage() {
+    return cognitiveCollage;
+  }
+
   public Set<NodeGraph> getNodesInKnownNetwork() {
     return new HashSet<>(networkBuilder.necessaryNodes);
   }
@@ -8,7 +8,7 @@ import pedsim.parameters.RouteChoicePars;
  */
 public final class ElementsSensitivity {
 
-  final Random random = new Random();
+  final Random random;
 
   // === Landmark recognition: anchors and shaping ===
   private static final double MIN_LANDMARK_SCORE = 0.25;
@@ -34,6 +34,10 @@ public final class ElementsSensitivity {
   double globalLandmarkThreshold = RouteChoicePars.globalLandmarkThresholdCommunity;
   double localLandmarkThreshold = RouteChoicePars.localLandmarkThresholdCommunity;
 
+  public ElementsSensitivity(Random random) {
+    this.random = random;
+  }
+
   /**
    * Derives landmark thresholds (recognition) and weights (influence on routing) as smooth
    * functions of effective vividness ∈ [0,1].
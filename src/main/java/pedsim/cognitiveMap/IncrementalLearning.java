@@ -1,14 +1,23 @@
 package pedsim.cognitiveMap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.planargraph.DirectedEdge;
 import pedsim.agents.Agent;
+import pedsim.engine.Checkpoint;
+import pedsim.engine.PhaseTimings;
+import pedsim.engine.PhaseTimings.Phase;
 import pedsim.parameters.LearningPars;
 import pedsim.parameters.TimePars;
 import pedsim.routeMemorability.MemoryTrace;
 import pedsim.routeMemorability.RouteMeaningfulness;
 import pedsim.routeMemorability.RouteProperties;
 import pedsim.routePlanner.RoutePlanner;
+import pedsim.utilities.StringEnum.RandomStream;
 import sim.graph.NodeGraph;
 import sim.routing.Route;
 
@@ -27,7 +36,11 @@ public class IncrementalLearning {
   public IncrementalLearning(Agent agent) {
     this.agent = agent;
     this.cognitiveMap = agent.getCognitiveMap();
-    routeMeaningfulness = new RouteMeaningfulness();
+    routeMeaningfulness = new RouteMeaningfulness(agent.getRandom(RandomStream.LEARNING));
+  }
+
+  public VividnessGrid getVividnessGrid() {
+    return vividnessGrid;
   }
 
   public void buildBasicMemory() {
@@ -54,6 +67,7 @@ public class IncrementalLearning {
 
   public void updateAgentMemory(Route route) {
 
+    long start = PhaseTimings.start();
     RouteProperties routeProperties = RouteProperties.getProperties(route);
     if (routeProperties == null) {
       routeProperties = new RouteProperties(route, agent);
@@ -66,6 +80,7 @@ public class IncrementalLearning {
     expandCollage(route);
     // Add the last route to the list of routes walked so far
     routesSoFar.add(route);
+    PhaseTimings.stop(Phase.LEARNING, start);
   }
 
   private void expandCollage(Route route) {
@@ -86,6 +101,64 @@ public class IncrementalLearning {
     cognitiveMap.readjustCognitiveMap(vividnessGrid.updateCollage(computePercentileThreshold()));
   }
 
+  /**
+   * Writes the vividness grid and the routes walked so far, with their meaningfulness and their
+   * memory trace's weight and last update step, to a checkpoint. Routes are stored as sequences of
+   * (edgeID, fromNodeID) pairs.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    out.writeBoolean(vividnessGrid != null);
+    if (vividnessGrid != null) {
+      vividnessGrid.writeState(out);
+    }
+    out.writeInt(routesSoFar.size());
+    for (int i = 0; i < routesSoFar.size(); i++) {
+      Route route = routesSoFar.get(i);
+      Checkpoint.writeDirectedEdges(out, route.directedEdgesSequence);
+      RouteProperties routeProperties = RouteProperties.getProperties(route);
+      out.writeDouble(routeProperties != null ? routeProperties.getMeaningfulness() : 0.0);
+      List<MemoryTrace> memoryTraces = cognitiveMap.memoryTraces;
+      boolean hasTrace = i < memoryTraces.size();
+      out.writeDouble(hasTrace ? memoryTraces.get(i).getWeight() : 1.0);
+      out.writeLong(hasTrace ? memoryTraces.get(i).getLastUpdated() : 0L);
+    }
+  }
+
+  /**
+   * Restores the vividness grid and the routes walked so far from a checkpoint written with
+   * {@link #writeState(DataOutput)}. The routes' properties and memory traces are recomputed, while
+   * the grid densities and the traces' weights and last update steps are taken as saved.
+   *
+   * @param in the checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  public void readState(DataInput in) throws IOException {
+    vividnessGrid = in.readBoolean() ? VividnessGrid.readState(in) : null;
+    routesSoFar = new ArrayList<>();
+    cognitiveMap.memoryTraces = new ArrayList<>();
+    int nrRoutes = in.readInt();
+    for (int i = 0; i < nrRoutes; i++) {
+      List<DirectedEdge> directedEdges = Checkpoint.readDirectedEdges(in);
+      double meaningfulness = in.readDouble();
+      double memoryWeight = in.readDouble();
+      long lastUpdated = in.readLong();
+
+      Route route = new Route();
+      route.resetRoute(directedEdges);
+      RouteProperties routeProperties = new RouteProperties(route, agent);
+      routeProperties.computeRouteProperties();
+      routeProperties.setMeaningfulness(meaningfulness);
+      routesSoFar.add(route);
+      MemoryTrace memoryTrace = new MemoryTrace(routeProperties.getVisibilitySpace(), route,
+          memoryWeight, agent.getState());
+      memoryTrace.setLastUpdated(lastUpdated);
+      cognitiveMap.memoryTraces.add(memoryTrace);
+    }
+  }
+
   /**
    * Apply decay to the vividness grid for one simulation step, based on the agent's individual
    * memory ability.
@@ -1,5 +1,8 @@
 package pedsim.cognitiveMap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -12,6 +15,7 @@ import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.operation.union.UnaryUnionOp;
+import pedsim.engine.SimulationEvents;
 import pedsim.parameters.LearningPars;
 import sim.graph.NodeGraph;
 
@@ -106,6 +110,51 @@ public class VividnessGrid {
     return cellSize;
   }
 
+  /**
+   * Writes the grid extent, densities and smoothed vividness to a checkpoint.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    out.writeDouble(envelope.getMinX());
+    out.writeDouble(envelope.getMaxX());
+    out.writeDouble(envelope.getMinY());
+    out.writeDouble(envelope.getMaxY());
+    out.writeDouble(cellSize);
+    out.writeInt(width);
+    out.writeInt(height);
+    out.writeDouble(originX);
+    out.writeDouble(originY);
+    out.writeDouble(smoothedVividness);
+    for (float value : density) {
+      out.writeFloat(value);
+    }
+  }
+
+  /**
+   * Reads a grid previously written with {@link #writeState(DataOutput)}.
+   *
+   * @param in the checkpoint input.
+   * @return the restored grid.
+   * @throws IOException if reading fails.
+   */
+  public static VividnessGrid readState(DataInput in) throws IOException {
+    Envelope envelope =
+        new Envelope(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    VividnessGrid grid = new VividnessGrid(envelope, in.readDouble());
+    grid.width = in.readInt();
+    grid.height = in.readInt();
+    grid.originX = in.readDouble();
+    grid.originY = in.readDouble();
+    grid.smoothedVividness = in.readDouble();
+    grid.density = new float[grid.width * grid.height];
+    for (int i = 0; i < grid.density.length; i++) {
+      grid.density[i] = in.readFloat();
+    }
+    return grid;
+  }
+
   /**
    * Updates the cognitive collage by converting grid cells with density values above a given
    * threshold into contiguous polygon regions.
@@ -123,6 +172,8 @@ public class VividnessGrid {
    */
   public List<Polygon> updateCollage(double minThreshold) {
 
+    SimulationEvents.CollageUpdate event = new SimulationEvents.CollageUpdate();
+    event.begin();
     Envelope env = this.envelope;
     double cellSize = this.getCellSize();
     int width = (int) Math.round((env.getMaxX() - env.getMinX()) / cellSize);
@@ -151,8 +202,10 @@ public class VividnessGrid {
       }
     }
 
-    if (cellPolys.isEmpty())
+    if (cellPolys.isEmpty()) {
+      commitCollageEvent(event, 0, 0);
       return Collections.emptyList();
+    }
 
     // Step 2: union them all into contiguous regions
     Geometry unioned = UnaryUnionOp.union(cellPolys);
@@ -167,9 +220,22 @@ public class VividnessGrid {
         result.add((Polygon) mp.getGeometryN(i));
       }
     }
+    commitCollageEvent(event, cellPolys.size(), result.size());
     return result;
   }
 
+  private void commitCollageEvent(SimulationEvents.CollageUpdate event, int activeCells,
+      int polygons) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.cells = density.length;
+      event.activeCells = activeCells;
+      event.polygons = polygons;
+      event.gridBytes = (long) density.length * Float.BYTES;
+      event.commit();
+    }
+  }
+
   // Convert world → grid indices
   public int toGridX(double worldX) {
     return (int) ((worldX - originX) / cellSize);
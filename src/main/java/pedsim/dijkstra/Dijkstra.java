@@ -12,8 +12,12 @@ import pedsim.agents.Agent;
 import pedsim.agents.AgentProperties;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.SimulationEvents;
+import pedsim.engine.TripTrace;
 import pedsim.landmarkNavigation.Landmarkness;
 import pedsim.parameters.RouteChoicePars;
+import pedsim.utilities.SplitMixRandom;
+import pedsim.utilities.StringEnum.RandomStream;
 import sim.graph.EdgeGraph;
 import sim.graph.Graph;
 import sim.graph.GraphUtils;
@@ -22,7 +26,6 @@ import sim.graph.SubGraph;
 import sim.routing.NodeWrapper;
 import sim.routing.Route;
 import sim.routing.RoutingUtils;
-import sim.util.geo.Utilities;
 
 /**
  * The Dijkstra class provides functionality for performing Dijkstra's algorithm and related
@@ -155,7 +158,8 @@ public class Dijkstra {
    */
   protected double costPerceptionError(NodeGraph targetNode, EdgeGraph commonEdge, boolean dual) {
 
-    double error = Utilities.fromDistribution(1.0, 0.10, null);
+    SplitMixRandom random = agent.getRandom(RandomStream.ROUTING);
+    double error = random.fromDistribution(1.0, 0.10, null);
 
     if (positiveBarrierEffect()) {
       List<Integer> pBarriers =
@@ -163,7 +167,7 @@ public class Dijkstra {
               : commonEdge.attributes.get("positiveBarriers").getArray();
       pBarriers.retainAll(agent.getCognitiveMap().getAgentKnownBarriers());
       if (!pBarriers.isEmpty()) {
-        error = Utilities.fromDistribution(properties.naturalBarriersMean,
+        error = random.fromDistribution(properties.naturalBarriersMean,
             properties.naturalBarriersSD, "left");
       }
     }
@@ -173,7 +177,7 @@ public class Dijkstra {
               : commonEdge.attributes.get("negativeBarriers").getArray();
       nBarriers.retainAll(agent.getCognitiveMap().getAgentKnownBarriers());
       if (!nBarriers.isEmpty()) {
-        error = Utilities.fromDistribution(properties.severingBarriersMean,
+        error = random.fromDistribution(properties.severingBarriersMean,
             properties.severingBarriersSD, "right");
       }
     }
@@ -327,6 +331,29 @@ public class Dijkstra {
         && agent.getCognitiveMap().isRegionKnown(originNode.getRegionID());
   }
 
+  /**
+   * Records the search just run in the trip trace and commits its flight recorder event, if
+   * recorded.
+   *
+   * @param event The event, begun before the search was initialised.
+   * @param variant The variant of the search.
+   * @param mark The trip trace mark of the variant.
+   * @param path The path found.
+   */
+  protected void recordSearch(SimulationEvents.PathSearch event, String variant,
+      TripTrace.Mark mark, List<DirectedEdge> path) {
+    TripTrace.mark(mark, visitedNodes.size(), path.size());
+    event.end();
+    if (event.shouldCommit()) {
+      event.variant = variant;
+      event.agentID = agent.agentID;
+      event.nodesSettled = visitedNodes.size();
+      event.pathEdges = path.size();
+      event.regional = subGraph != null;
+      event.commit();
+    }
+  }
+
   protected boolean isEdgeKnown(EdgeGraph commonEdge) {
     if ((subGraph == null && !knownEdges.contains(commonEdge))
         || (subGraph != null && !knownEdges.contains(subGraph.getParentEdge(commonEdge)))) {
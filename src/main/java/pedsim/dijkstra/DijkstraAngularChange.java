@@ -8,6 +8,8 @@ import java.util.PriorityQueue;
 import java.util.Set;
 import org.locationtech.jts.planargraph.DirectedEdge;
 import pedsim.agents.Agent;
+import pedsim.engine.SimulationEvents;
+import pedsim.engine.TripTrace.Mark;
 import sim.graph.EdgeGraph;
 import sim.graph.NodeGraph;
 import sim.routing.NodeWrapper;
@@ -40,6 +42,8 @@ public class DijkstraAngularChange extends Dijkstra {
       NodeGraph finalDestinationNode, Set<NodeGraph> centroidsToAvoid, NodeGraph previousJunction,
       Agent agent) {
 
+    SimulationEvents.PathSearch event = new SimulationEvents.PathSearch();
+    event.begin();
     initialise(originNode, destinationNode, finalDestinationNode, agent);
     initialiseDual(centroidsToAvoid, previousJunction);
     visitedNodes = new HashSet<>();
@@ -61,7 +65,9 @@ public class DijkstraAngularChange extends Dijkstra {
     }
 
     runDijkstra();
-    return reconstructSequence();
+    ArrayList<DirectedEdge> sequence = reconstructSequence();
+    recordSearch(event, "angularChange", Mark.ANGULAR_CHANGE_SEARCH, sequence);
+    return sequence;
   }
 
   /**
@@ -8,6 +8,8 @@ import java.util.PriorityQueue;
 import java.util.Set;
 import org.locationtech.jts.planargraph.DirectedEdge;
 import pedsim.agents.Agent;
+import pedsim.engine.SimulationEvents;
+import pedsim.engine.TripTrace.Mark;
 import pedsim.landmarkNavigation.Landmarkness;
 import sim.graph.EdgeGraph;
 import sim.graph.NodeGraph;
@@ -35,6 +37,8 @@ public class DijkstraGlobalLandmarks extends Dijkstra {
   public List<DirectedEdge> dijkstraAlgorithm(NodeGraph originNode, NodeGraph destinationNode,
       NodeGraph finalDestinationNode, Set<DirectedEdge> directedEdgesToAvoid, Agent agent) {
 
+    SimulationEvents.PathSearch event = new SimulationEvents.PathSearch();
+    event.begin();
     initialise(originNode, destinationNode, finalDestinationNode, agent);
     initialisePrimal(directedEdgesToAvoid);
     visitedNodes = new HashSet<>();
@@ -46,7 +50,9 @@ public class DijkstraGlobalLandmarks extends Dijkstra {
     nodeWrapper.gx = 0.0;
     nodeWrappersMap.put(this.originNode, nodeWrapper);
     runDijkstra();
-    return reconstructSequence();
+    List<DirectedEdge> sequence = reconstructSequence();
+    recordSearch(event, "globalLandmarks", Mark.GLOBAL_LANDMARKS_SEARCH, sequence);
+    return sequence;
   }
 
   /**
@@ -8,6 +8,8 @@ import java.util.PriorityQueue;
 import java.util.Set;
 import org.locationtech.jts.planargraph.DirectedEdge;
 import pedsim.agents.Agent;
+import pedsim.engine.SimulationEvents;
+import pedsim.engine.TripTrace.Mark;
 import sim.graph.EdgeGraph;
 import sim.graph.NodeGraph;
 import sim.routing.NodeWrapper;
@@ -42,6 +44,8 @@ public class DijkstraRoadDistance extends Dijkstra {
   public List<DirectedEdge> dijkstraAlgorithm(NodeGraph originNode, NodeGraph destinationNode,
       NodeGraph finalDestinationNode, Set<DirectedEdge> directedEdgesToAvoid, Agent agent) {
 
+    SimulationEvents.PathSearch event = new SimulationEvents.PathSearch();
+    event.begin();
     initialise(originNode, destinationNode, finalDestinationNode, agent);
     initialisePrimal(directedEdgesToAvoid);
     visitedNodes = new HashSet<>();
@@ -53,8 +57,9 @@ public class DijkstraRoadDistance extends Dijkstra {
     nodeWrapper.gx = 0.0;
     nodeWrappersMap.put(originNode, nodeWrapper);
     runDijkstra();
-
-    return reconstructSequence();
+    List<DirectedEdge> sequence = reconstructSequence();
+    recordSearch(event, "roadDistance", Mark.ROAD_DISTANCE_SEARCH, sequence);
+    return sequence;
   }
 
   /**
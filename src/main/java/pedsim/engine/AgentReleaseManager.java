@@ -1,19 +1,19 @@
 package pedsim.engine;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
 import java.util.Set;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import pedsim.agents.Agent;
+import pedsim.engine.ExecutionPolicy.Pool;
+import pedsim.engine.PhaseTimings.Phase;
 import pedsim.parameters.RouteChoicePars;
 import pedsim.parameters.TimePars;
 import pedsim.utilities.LoggerUtil;
-import sim.util.geo.Utilities;
+import pedsim.utilities.StringEnum.RandomStream;
 
 /**
  * The AgentReleaseManager class handles the release of agents for the pedestrian simulation,
@@ -24,7 +24,6 @@ public class AgentReleaseManager {
   private static final Logger logger = LoggerUtil.getLogger();
 
   private LocalDateTime currentTime;
-  Random random = new Random();
 
   private PedSimCity state;
   private double metersToWalkCurrentDay;
@@ -39,6 +38,38 @@ public class AgentReleaseManager {
     metersWalkedSoFarToday = 0.0;
   }
 
+  /**
+   * Restores the release manager of a day in progress from a checkpoint written with
+   * {@link #writeState(DataOutput)}, without resetting the meters walked so far, so that a day
+   * carried over a day boundary (see {@link Engine}) continues as it would have.
+   *
+   * @param state the simulation state, whose agents have been restored.
+   * @param in the checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  AgentReleaseManager(PedSimCity state, DataInput in) throws IOException {
+    this.state = state;
+    metersToWalkCurrentDay = in.readDouble();
+    expectedMetersWalkedSoFarToday = in.readDouble();
+    metersWalkedSoFarToday = in.readDouble();
+    state.resetMetersWalkedToday();
+    state.addMetersWalkedToday(in.readDouble());
+  }
+
+  /**
+   * Writes the release manager's progress through the day to a checkpoint, together with the
+   * meters walked today by all agents.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  void writeState(DataOutput out) throws IOException {
+    out.writeDouble(metersToWalkCurrentDay);
+    out.writeDouble(expectedMetersWalkedSoFarToday);
+    out.writeDouble(metersWalkedSoFarToday);
+    out.writeDouble(state.getMetersWalkedToday());
+  }
+
   /**
    * Releases agents to start walking based on the calculated walking distances for the day.
    *
@@ -46,6 +77,7 @@ public class AgentReleaseManager {
    */
   public void releaseAgents(double steps) {
 
+    long start = PhaseTimings.start();
     currentTime = TimePars.getTime(steps);
     metersWalkedSoFarToday = computeMetersWalkedSoFar();
     double metersToAllocate = (metersToWalkCurrentDay * TimePars.computeTimeStepShare(currentTime));
@@ -61,6 +93,33 @@ public class AgentReleaseManager {
       logWalkingAgents();
     }
     expectedMetersWalkedSoFarToday += metersToAllocate;
+    PhaseTimings.stop(Phase.RELEASE, start);
+  }
+
+  /**
+   * Skips the release at the given step when it would not release any agent, so that the clock can
+   * jump across it in event-driven mode. This is only known in advance when every agent is at home:
+   * the meters walked today cannot change before the next release then. The release's allocation
+   * is accounted as in {@link #releaseAgents(double)}, so that it carries over to the next release
+   * and skipping does not change the results.
+   *
+   * @param steps the step of the release.
+   * @return true if the release was skipped, false if it must be carried out.
+   */
+  public boolean skipRelease(double steps) {
+
+    if (!state.agentsWalking.isEmpty() || state.agentsAtHome.size() < state.agentsList.size()) {
+      return false;
+    }
+    LocalDateTime releaseTime = TimePars.getTime(steps);
+    double metersToAllocate = metersToWalkCurrentDay * TimePars.computeTimeStepShare(releaseTime);
+    double metersAdjusted =
+        (metersToAllocate + (expectedMetersWalkedSoFarToday - computeMetersWalkedSoFar())) * 0.5;
+    if (metersAdjusted > 0) {
+      return false;
+    }
+    expectedMetersWalkedSoFarToday += metersToAllocate;
+    return true;
   }
 
   /**
@@ -76,9 +135,7 @@ public class AgentReleaseManager {
     int agentsExpectedToWalk =
         Math.max(1, (int) (metersToAllocate / RouteChoicePars.avgTripDistance));
 
-    Set<Agent> agentsAtHome = new HashSet<>(state.agentsAtHome);// least one
-    // agent
-    Set<Agent> agentsToRelease = selectRandomAgents(agentsAtHome, agentsExpectedToWalk);
+    Set<Agent> agentsToRelease = selectRandomAgents(agentsExpectedToWalk);
     allocateMetersAcrossAgents(agentsToRelease, metersToAllocate); // Allocate km accordingly
 
     for (Agent agent : agentsToRelease) {
@@ -92,9 +149,10 @@ public class AgentReleaseManager {
    */
   private void logWalkingAgents() {
     logger.info(String.format(
-        "TIME: %02d:%02d | Agents walking: %d | Expected Km walked till this time: %.1f vs KM Walked today: %.1f",
-        currentTime.getHour(), currentTime.getMinute(), state.agentsWalking.size(),
-        expectedMetersWalkedSoFarToday / 1000, metersWalkedSoFarToday / 1000));
+        "Job %d | TIME: %02d:%02d | Agents walking: %d | Expected Km walked till this time: %.1f vs KM Walked today: %.1f",
+        state.currentJob, currentTime.getHour(), currentTime.getMinute(),
+        state.agentsWalking.size(), expectedMetersWalkedSoFarToday / 1000,
+        metersWalkedSoFarToday / 1000));
   }
 
   // private int determineNrAgentsToRelease(int expectedPedestrians, Set<Agent> agentsWalking) {
@@ -114,19 +172,20 @@ public class AgentReleaseManager {
   // }
 
   /**
-   * Allocates the specified walking distance across a set of agents using parallel processing. Each
-   * agent gets a random variability applied to the allocated distance, ensuring they stay within
-   * defined minimum and maximum limits.
+   * Allocates the specified walking distance across a set of agents, in parallel for large sets.
+   * Each agent gets a random variability applied to the allocated distance, ensuring they stay
+   * within defined minimum and maximum limits.
    *
    * @param agentSet the set of agents to which the distance will be allocated.
    * @param kmToAllocate the total kilometers to be allocated to agents.
    */
   private void allocateMetersAcrossAgents(Set<Agent> agentSet, Double metersToAllocate) {
 
-    // Apply randomisation for variability (+/- 30%) using parallelStream
-    agentSet.parallelStream().forEach(agent -> {
-      double variabilityFactor = Utilities.fromDistribution(1.00, 0.30, null); // Variability (+/-
-                                                                               // 30%)
+    // Apply randomisation for variability (+/- 30%), each agent drawing from its own
+    // stream
+    ExecutionPolicy.forEach(Pool.PLANNING, agentSet, agent -> {
+      double variabilityFactor =
+          agent.getRandom(RandomStream.RELEASE).fromDistribution(1.00, 0.30, null);
       double metersToWalk = RouteChoicePars.avgTripDistance * variabilityFactor;
 
       // Ensure kmToWalk is within the defined boundaries
@@ -144,50 +203,38 @@ public class AgentReleaseManager {
 
   /**
    * Selects a specified number of agents randomly, with a weighted probability towards agents that
-   * have walked less distance. The selection is done using parallel streams to improve performance.
+   * have walked less distance. The selection is drawn from the state's {@link HomeAgentsSampler}, so
+   * that it costs O(nrAgents log N).
    *
-   * @param homeAgents the set of home agents to select from.
    * @param nrAgents the number of agents to select.
    * @return a set of randomly selected agents.
    */
-  private Set<Agent> selectRandomAgents(Set<Agent> homeAgents, int nrAgents) {
+  private Set<Agent> selectRandomAgents(int nrAgents) {
 
-    if (nrAgents >= homeAgents.size()) {
-      return homeAgents;
+    if (nrAgents >= state.agentsAtHome.size()) {
+      return new HashSet<>(state.agentsAtHome);
     }
-
-    List<Agent> agents = new ArrayList<>(homeAgents);
-    // Sort agents by kmWalked in ascending order (less walked first) using parallel
-    // sort
-    agents.parallelStream().sorted(Comparator.comparingDouble(Agent::getTotalMetersWalked))
-        .collect(Collectors.toList());
-
-    Set<Agent> selectedAgents = agents.parallelStream().limit(nrAgents) // Select only the first
-                                                                        // 'nrAgents' after
-                                                                        // sorting
-        .map(agent -> {
-          // Weighted selection: lower km-Walked has a higher probability
-          int weightedIndex = (int) (Math.pow(random.nextDouble(), 1.5) * agents.size());
-          return agents.get(weightedIndex);
-        }).collect(Collectors.toSet());
-
-    return selectedAgents;
+    return state.homeAgentsSampler.sample(nrAgents, state.getRandom(RandomStream.RELEASE));
   }
 
   /**
-   * Computes the total kilometres walked by all agents in the simulation up to the current time.
+   * Returns the total kilometres walked by all agents in the simulation up to the current time, as
+   * accumulated by the agents' movement.
    *
    * @return the total kilometres walked by all agents.
    */
   private double computeMetersWalkedSoFar() {
-    return state.agentsList.stream().mapToDouble(Agent::getMetersWalkedDay).sum();
+    return state.getMetersWalkedToday();
   }
 
   /**
-   * Resets the kmWalkedDay attribute for all agents in the simulation to zero.
+   * Resets the kmWalkedDay attribute for all agents in the simulation to zero, together with the
+   * running total, and clears the rounding residuals of the home agents' sampler.
    */
   private void resetMetersWalkedSoFar() {
     state.agentsList.forEach(agent -> agent.metersWalkedDay = 0.0);
+    state.resetMetersWalkedToday();
+    state.homeAgentsSampler.rebuild();
   }
 
 }
@@ -0,0 +1,60 @@
+package pedsim.engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import pedsim.agents.Agent;
+import pedsim.engine.ExecutionPolicy.Pool;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * The AgentsStepper class steps all the agents of a job in two phases. In the first phase, agents
+ * plan, walk and learn in parallel on the stepping pool of the {@link ExecutionPolicy}, shared by
+ * all jobs, while the side effects on shared structures (edge counts, flows, agent lists, spatial
+ * index) are buffered by each agent. In the second phase, these side effects are applied
+ * sequentially, in agentID order, so that results do not depend on thread scheduling.
+ */
+public class AgentsStepper implements Steppable {
+
+  private static final long serialVersionUID = 1L;
+  private final PedSimCity state;
+  private List<Agent> orderedAgents = new ArrayList<>();
+
+  /**
+   * Constructs an AgentsStepper for the given simulation state.
+   *
+   * @param state The PedSimCity simulation state.
+   */
+  public AgentsStepper(PedSimCity state) {
+    this.state = state;
+  }
+
+  /**
+   * Steps all the agents: parallel decision phase followed by the ordered commit phase.
+   *
+   * @param simState The simulation state.
+   */
+  @Override
+  public void step(SimState simState) {
+
+    List<Agent> agents = getOrderedAgents();
+    ExecutionPolicy.forEach(Pool.STEPPING, agents, agent -> agent.decide(state));
+    for (Agent agent : agents) {
+      agent.commit();
+    }
+  }
+
+  /**
+   * Returns the agents sorted by agentID, re-sorting them only when the population has changed.
+   *
+   * @return The list of agents in agentID order.
+   */
+  private List<Agent> getOrderedAgents() {
+    if (orderedAgents.size() != state.agentsList.size()) {
+      orderedAgents = new ArrayList<>(state.agentsList);
+      orderedAgents.sort(Comparator.comparingInt(agent -> agent.agentID));
+    }
+    return orderedAgents;
+  }
+}
@@ -0,0 +1,344 @@
+package pedsim.engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.parameters.ParameterManager;
+import pedsim.parameters.Pars;
+import pedsim.utilities.LoggerUtil;
+import pedsim.utilities.SplitMixRandom;
+import sim.util.geo.CSVUtils;
+
+/**
+ * The BatchRunner class runs a parameter sweep in a single JVM: the city is imported and prepared
+ * once, then each point of the sweep is run with its parameters, reusing the city. A results index
+ * file lists, for each point, its parameters, output folder, status and duration.
+ *
+ * The sweep is described by a manifest, a text file with one entry per line ({@code #} starts a
+ * comment):
+ *
+ * <pre>
+ * mode = grid                     # grid (default) or lhs
+ * samples = 50                    # number of points, lhs only
+ * seed = 42                       # lhs only
+ * RouteChoicePars.avgTripDistance = 1500, 1800, 2100   # grid values
+ * LearningPars.memoryPercentile = 0.05 : 0.30          # lhs range
+ * TimePars.numberOfDays = 14                           # constant
+ * </pre>
+ *
+ * Parameters are the static fields of the RouteChoicePars, LearningPars, TimePars, PopulationPars
+ * and Pars classes. Fields read while the city is prepared cannot be swept. As parameters, like
+ * the output location and the ensemble statistics, are global to a JVM, points run one after the
+ * other in this JVM by default, which loads the city once, with the jobs of each point running
+ * concurrently (see {@code Pars.maxConcurrentJobs}). With {@code Pars.batchProcesses} above 1,
+ * points run concurrently in local worker processes, each preparing and holding its own copy of
+ * the city and running one point at a time. The workers take the points from a {@link WorkQueue}
+ * in {@code <manifest>.queue}, where the output of each point is written under
+ * {@code results/task_N.A}, A being the attempt that ran it (see the index).
+ */
+public class BatchRunner {
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  private static final String PARAMETERS_PACKAGE = "pedsim.parameters.";
+
+  // fields used when preparing the shared city model
+  private static final Set<String> SETUP_FIELDS = Set.of("Pars.cityName",
+      "RouteChoicePars.includeTertiary", "RouteChoicePars.cityCentreRegionsID",
+      "RouteChoicePars.salientNodesPercentile", "RouteChoicePars.distanceNodeLandmark",
+      "RouteChoicePars.distanceAnchors", "RouteChoicePars.nrAnchors",
+      "RouteChoicePars.localLandmarkThresholdCommunity",
+      "RouteChoicePars.globalLandmarkThresholdCommunity");
+
+  private String mode = "grid";
+  private int samples = 10;
+  private long seed = 0L;
+  // swept parameter (Class.field) and its values as given in the manifest
+  private final Map<String, String> dimensions = new LinkedHashMap<>();
+  private final Map<String, Field> fields = new HashMap<>();
+  // values of the swept fields before the sweep, restored before each point
+  private final Map<String, Object> baseline = new HashMap<>();
+
+  /**
+   * Runs the sweep described by the given manifest. The results index is written next to the
+   * manifest, as {@code <manifest>.index.csv}.
+   *
+   * @param manifest The sweep manifest.
+   * @param args The command-line arguments, with which the worker processes are started.
+   * @throws Exception If the manifest is invalid, the city cannot be prepared or the workers fail.
+   */
+  public static void run(Path manifest, String[] args) throws Exception {
+
+    BatchRunner batchRunner = fromManifest(manifest);
+    List<Map<String, String>> points = batchRunner.generatePoints();
+    Path index = manifest.resolveSibling(manifest.getFileName() + ".index.csv");
+    int processes = getProcesses(points.size());
+    logger.info("Batch " + manifest.getFileName() + ": " + points.size() + " points, "
+        + processes + " processes.");
+
+    if (processes > 1) {
+      // one task per point, so that the statistics of its jobs are aggregated together
+      Pars.jobsPerTask = Pars.jobs;
+      WorkQueue.runLocally(manifest.resolveSibling(manifest.getFileName() + ".queue"), index,
+          processes, args, "point", points, null);
+      return;
+    }
+    PedSimCity.prepareCity();
+    batchRunner.runPoints(points, index);
+  }
+
+  /**
+   * Returns the number of processes among which the given number of tasks (points or branches)
+   * are distributed: {@code Pars.batchProcesses}, or, when 0, as many as the processors allow
+   * given the jobs run at the same time by each process.
+   *
+   * @param tasks The number of tasks.
+   * @return The number of processes, at least 1 and at most the number of tasks.
+   */
+  static int getProcesses(int tasks) {
+    int processes = Pars.batchProcesses;
+    if (processes <= 0) {
+      int concurrentJobs = Math.max(1, Math.min(Pars.jobs, Pars.maxConcurrentJobs));
+      processes = Runtime.getRuntime().availableProcessors() / concurrentJobs;
+    }
+    return Math.max(1, Math.min(processes, tasks));
+  }
+
+  /**
+   * Creates a BatchRunner for the sweep described by the given manifest.
+   *
+   * @param manifest The sweep manifest.
+   * @return The BatchRunner.
+   * @throws IOException If the manifest cannot be read.
+   */
+  static BatchRunner fromManifest(Path manifest) throws IOException {
+    BatchRunner batchRunner = new BatchRunner();
+    batchRunner.readManifest(manifest);
+    return batchRunner;
+  }
+
+  private void readManifest(Path manifest) throws IOException {
+
+    for (String line : Files.readAllLines(manifest)) {
+      int comment = line.indexOf('#');
+      line = (comment >= 0 ? line.substring(0, comment) : line).trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      String[] parts = line.split("=", 2);
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid manifest line: " + line);
+      }
+      String key = parts[0].trim();
+      String value = parts[1].trim();
+      switch (key) {
+        case "mode":
+          mode = value.toLowerCase();
+          break;
+        case "samples":
+          samples = Integer.parseInt(value);
+          break;
+        case "seed":
+          seed = Long.parseLong(value);
+          break;
+        default:
+          addDimension(key, value);
+      }
+    }
+    if (!mode.equals("grid") && !mode.equals("lhs")) {
+      throw new IllegalArgumentException("Unknown sweep mode: " + mode);
+    }
+  }
+
+  private void addDimension(String key, String value) {
+    resolveField(key);
+    dimensions.put(key, value);
+  }
+
+  /**
+   * Resolves a parameter given as Class.field and records its current value as its baseline.
+   *
+   * @param key The parameter.
+   * @return The field of the parameter.
+   */
+  private Field resolveField(String key) {
+
+    Field field = fields.get(key);
+    if (field != null) {
+      return field;
+    }
+    if (SETUP_FIELDS.contains(key)) {
+      throw new IllegalArgumentException(
+          key + " is used when preparing the city and cannot be swept in a batch");
+    }
+    String[] classAndField = key.split("\\.", 2);
+    if (classAndField.length != 2) {
+      throw new IllegalArgumentException("Parameters must be given as Class.field: " + key);
+    }
+    try {
+      Class<?> targetClass = Class.forName(PARAMETERS_PACKAGE + classAndField[0]);
+      field = targetClass.getDeclaredField(classAndField[1]);
+      field.setAccessible(true);
+      baseline.put(key, field.get(null));
+    } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException e) {
+      throw new IllegalArgumentException("Unknown parameter: " + key, e);
+    }
+    fields.put(key, field);
+    return field;
+  }
+
+  /**
+   * Generates the points of the sweep, as maps from parameter to value.
+   *
+   * @return The points.
+   */
+  List<Map<String, String>> generatePoints() {
+    return mode.equals("lhs") ? latinHypercube() : grid();
+  }
+
+  private List<Map<String, String>> grid() {
+
+    List<Map<String, String>> points = new ArrayList<>();
+    points.add(new LinkedHashMap<>());
+    for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+      if (dimension.getValue().contains(":")) {
+        throw new IllegalArgumentException(
+            "Ranges are only allowed in lhs mode: " + dimension.getKey());
+      }
+      List<Map<String, String>> expanded = new ArrayList<>();
+      for (Map<String, String> point : points) {
+        for (String value : dimension.getValue().split(",")) {
+          Map<String, String> newPoint = new LinkedHashMap<>(point);
+          newPoint.put(dimension.getKey(), value.trim());
+          expanded.add(newPoint);
+        }
+      }
+      points = expanded;
+    }
+    return points;
+  }
+
+  /**
+   * Latin hypercube sampling: each range is divided into {@code samples} strata, each sampled once,
+   * and the strata of the different parameters are paired at random.
+   */
+  private List<Map<String, String>> latinHypercube() {
+
+    SplitMixRandom random = new SplitMixRandom(seed);
+    List<Map<String, String>> points = new ArrayList<>();
+    for (int i = 0; i < samples; i++) {
+      points.add(new LinkedHashMap<>());
+    }
+    for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+      String[] values = dimension.getValue().split(":");
+      if (values.length != 2) {
+        // constant
+        points.forEach(point -> point.put(dimension.getKey(), dimension.getValue()));
+        continue;
+      }
+      double min = Double.parseDouble(values[0].trim());
+      double max = Double.parseDouble(values[1].trim());
+      int[] strata = new int[samples];
+      for (int i = 0; i < samples; i++) {
+        strata[i] = i;
+      }
+      for (int i = samples - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int stratum = strata[i];
+        strata[i] = strata[j];
+        strata[j] = stratum;
+      }
+      for (int i = 0; i < samples; i++) {
+        double value = min + (strata[i] + random.nextDouble()) / samples * (max - min);
+        points.get(i).put(dimension.getKey(), Double.toString(value));
+      }
+    }
+    return points;
+  }
+
+  /**
+   * Runs the points one after the other in this process and records each in the results index.
+   *
+   * @param points The points of the sweep.
+   * @param index The results index file.
+   * @throws Exception If the results index cannot be written.
+   */
+  private void runPoints(List<Map<String, String>> points, Path index) throws Exception {
+
+    try (BufferedWriter writer = Files.newBufferedWriter(index)) {
+      List<String> headers = new ArrayList<>(List.of("point", "output"));
+      headers.addAll(dimensions.keySet());
+      headers.addAll(List.of("status", "seconds", "message"));
+      CSVUtils.writeLine(writer, headers);
+      writer.flush();
+
+      for (int pointID = 0; pointID < points.size(); pointID++) {
+        Map<String, String> point = points.get(pointID);
+        String label = "point_" + pointID;
+        applyPoint(point);
+        Pars.outputLabel = label;
+
+        logger.info("Batch | running " + label + " " + point);
+        String status = "done";
+        String message = "";
+        long start = System.nanoTime();
+        try {
+          PedSimCity.runJobs();
+        } catch (Exception e) {
+          status = "failed";
+          message = e.getClass().getSimpleName() + ": " + e.getMessage();
+          logger.severe("Batch | " + label + " failed | " + message);
+        }
+        List<String> row = new ArrayList<>(List.of(Integer.toString(pointID), label));
+        row.addAll(point.values());
+        row.addAll(List.of(status, String.format("%.1f", (System.nanoTime() - start) / 1e9),
+            message));
+        CSVUtils.writeLine(writer, row);
+        writer.flush();
+      }
+    } finally {
+      Pars.outputLabel = null;
+    }
+  }
+
+  /**
+   * Applies the parameters of a point: the fields changed by earlier points are restored to their
+   * baseline, the point's values are set, the derived parameters are recomputed and the caches of
+   * the shared city model that depend on the parameters are cleared.
+   *
+   * @param point The point, as a map from parameter (Class.field) to value.
+   * @throws IllegalAccessException If a field cannot be restored.
+   */
+  void applyPoint(Map<String, String> point) throws IllegalAccessException {
+
+    for (Map.Entry<String, Object> entry : baseline.entrySet()) {
+      fields.get(entry.getKey()).set(null, entry.getValue());
+    }
+    for (Map.Entry<String, String> entry : point.entrySet()) {
+      Field field = resolveField(entry.getKey());
+      ParameterManager.setFieldValue(field.getDeclaringClass(), field.getName(), entry.getValue());
+    }
+    Pars.setSimulationParameters();
+    clearParameterCaches();
+  }
+
+  /**
+   * Clears the caches of the shared city model that depend on the parameters, once these have
+   * changed.
+   */
+  static void clearParameterCaches() {
+    CommunityCognitiveMap.routesSubNetwork.clear();
+    CommunityCognitiveMap.forcedRoutesSubNetwork.clear();
+    CommunityCognitiveMap.cachedHeuristics.clear();
+    PedSimCity.alternativeRoutes.clear();
+  }
+}
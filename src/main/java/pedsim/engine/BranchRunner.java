@@ -0,0 +1,143 @@
+package pedsim.engine;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import pedsim.parameters.Pars;
+import pedsim.parameters.TimePars;
+import pedsim.utilities.LoggerUtil;
+
+/**
+ * The BranchRunner class forks the jobs of a run into branches after a common burn-in. The jobs
+ * first simulate {@code Pars.burnInDays} days with the base parameters, after which each job's
+ * state (agents' cognitive maps, vividness grids, route histories and trips in progress, random
+ * streams, counters) is written as a snapshot to {@code <manifest>.branches/snapshots}. Each point
+ * of the branches manifest, in the format read by {@link BatchRunner}, is then run from these
+ * snapshots to the end of the simulation.
+ *
+ * The snapshots are written once and only read by the branches, which stream them as they restore
+ * their own agents: the snapshots are not held in memory, and unchanged data stays shared in a
+ * single copy on disk. As parameters are global to a JVM, branches run concurrently in
+ * {@code Pars.batchProcesses} local worker processes (see {@link BatchRunner#getProcesses(int)}),
+ * which take them from a {@link WorkQueue} in {@code <manifest>.branches/queue} and write the
+ * output of each under {@code results/task_N.A}. With a single process, branches run one after the
+ * other in this JVM, writing their output to the {@code branch_N} subfolder. The jobs of each
+ * branch run concurrently. Branches of the same job start from the same random state, so that
+ * their differences are due to their parameters.
+ */
+public class BranchRunner {
+
+  private static final Logger logger = LoggerUtil.getLogger();
+
+  /**
+   * Prepares the city, burns in the jobs and runs the branches described by the given manifest.
+   *
+   * @param manifest The branches manifest.
+   * @param args The command-line arguments, with which the worker processes are started.
+   * @throws Exception If the manifest is invalid, the city cannot be prepared or a job fails.
+   */
+  public static void run(Path manifest, String[] args) throws Exception {
+
+    BatchRunner branches = BatchRunner.fromManifest(manifest);
+    List<Map<String, String>> points = branches.generatePoints();
+    PedSimCity.prepareCity();
+    if (Pars.burnInDays < 1 || Pars.burnInDays >= TimePars.numberOfDays) {
+      throw new IllegalArgumentException("burnInDays must be between 1 and numberOfDays - 1");
+    }
+
+    Path directory = manifest.resolveSibling(manifest.getFileName() + ".branches");
+    Path snapshots = directory.resolve("snapshots");
+    logger.info("Branches | burning in " + Pars.jobs + " jobs for " + Pars.burnInDays + " days.");
+    Pars.outputLabel = "burn_in";
+    List<Callable<Path>> burnIns = new ArrayList<>();
+    for (int jobNr = 0; jobNr < Pars.jobs; jobNr++) {
+      final int job = jobNr;
+      burnIns.add(() -> new Engine().burnIn(job, Pars.burnInDays, snapshots));
+    }
+    try {
+      runConcurrently(burnIns);
+    } finally {
+      Pars.outputLabel = null;
+    }
+    logger.info("Branches | burn-in completed, snapshots in " + snapshots);
+
+    int processes = BatchRunner.getProcesses(points.size());
+    if (processes > 1) {
+      logger.info("Branches | running " + points.size() + " branches in " + processes
+          + " processes.");
+      // one task per branch, with all the jobs of the branch
+      Pars.jobsPerTask = Pars.jobs;
+      WorkQueue.runLocally(directory.resolve("queue"), directory.resolve("index.csv"), processes,
+          args, "branch", points, snapshots);
+    } else {
+      List<Integer> jobs = new ArrayList<>();
+      for (int jobNr = 0; jobNr < Pars.jobs; jobNr++) {
+        jobs.add(jobNr);
+      }
+      try {
+        for (int branchID = 0; branchID < points.size(); branchID++) {
+          Map<String, String> point = points.get(branchID);
+          branches.applyPoint(point);
+          Pars.outputLabel = "branch_" + branchID;
+          logger.info("Branches | running branch_" + branchID + " " + point);
+          resumeJobs(jobs, snapshots);
+        }
+      } finally {
+        Pars.outputLabel = null;
+      }
+    }
+    PhaseTimings.writeReport();
+    logger.info("Branches | " + points.size() + " branches completed.");
+  }
+
+  /**
+   * Resumes the given jobs from their burn-in snapshots, up to {@code Pars.maxConcurrentJobs} at a
+   * time, and runs them to the end of the simulation with the current parameters.
+   *
+   * @param jobs The job numbers.
+   * @param snapshots The directory of the snapshots.
+   * @throws Exception If a snapshot cannot be restored or a job fails.
+   */
+  static void resumeJobs(List<Integer> jobs, Path snapshots) throws Exception {
+
+    List<Callable<Path>> resumes = new ArrayList<>();
+    for (int job : jobs) {
+      Path snapshot = Checkpoint.getFile(snapshots, job, Pars.burnInDays);
+      resumes.add(() -> {
+        new Engine().resumeJob(snapshot);
+        return snapshot;
+      });
+    }
+    runConcurrently(resumes);
+  }
+
+  /**
+   * Runs the given jobs, up to {@code Pars.maxConcurrentJobs} at a time.
+   *
+   * @return The results of the jobs, in the order given.
+   */
+  private static <T> List<T> runConcurrently(List<Callable<T>> jobs) throws Exception {
+
+    int threads = Math.max(1, Math.min(jobs.size(), Pars.maxConcurrentJobs));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<T> results = new ArrayList<>();
+    try {
+      List<Future<T>> futures = new ArrayList<>();
+      for (Callable<T> job : jobs) {
+        futures.add(executor.submit(job));
+      }
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+}
@@ -0,0 +1,345 @@
+package pedsim.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import ec.util.MersenneTwisterFast;
+import org.locationtech.jts.planargraph.DirectedEdge;
+import pedsim.agents.Agent;
+import pedsim.utilities.LoggerUtil;
+import pedsim.utilities.StringEnum.RandomStream;
+import sim.graph.EdgeGraph;
+import sim.graph.NodeGraph;
+
+/**
+ * A snapshot of a simulation job taken at a day boundary, from which the job can be resumed. It
+ * contains the schedule time, the state of the random streams, the flow collectors' counters, the
+ * progress of the release manager through the day and, for each agent, its cognitive map, vividness grid, route history and current trip.
+ *
+ * The snapshot is streamed agent by agent to a compressed file, so that writing it does not require
+ * a copy of the simulation state in memory. Trips in progress at the day boundary are stored with
+ * their route and the agent's progress along it, so that the job resumes, at the step following
+ * the checkpointed one, as it would have continued. Restoring a checkpoint only reads its file,
+ * so that several jobs, possibly in several processes, can be resumed from it, e.g. the branches
+ * forked from a burn-in (see {@link BranchRunner}).
+ */
+public class Checkpoint {
+
+  private static final int MAGIC = 0x50534350; // "PSCP"
+  private static final int VERSION = 5;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final Logger logger = LoggerUtil.getLogger();
+
+  private final Path file;
+  final int job;
+  final long seed;
+  final int day;
+  final double steps;
+  // release manager of the checkpointed day, set on restore
+  AgentReleaseManager releaseManager;
+
+  private Checkpoint(Path file, int job, long seed, int day, double steps) {
+    this.file = file;
+    this.job = job;
+    this.seed = seed;
+    this.day = day;
+    this.steps = steps;
+  }
+
+  /**
+   * Writes the checkpoint of the given job to the checkpoint directory. The file is first written
+   * to a temporary file and then moved in place, so that an interrupted write never replaces a
+   * valid checkpoint.
+   *
+   * @param state The simulation state of the job.
+   * @param releaseManager The release manager of the day just completed.
+   * @param seed The seed the job was started with.
+   * @param day The number of days completed.
+   * @param steps The step at which the checkpoint is written.
+   * @param directory The directory where the checkpoint is stored.
+   * @return The path of the checkpoint file.
+   * @throws IOException if writing fails.
+   */
+  static Path write(PedSimCity state, AgentReleaseManager releaseManager, long seed, int day,
+      double steps, String directory) throws IOException {
+
+    Path directoryPath = Paths.get(directory);
+    Files.createDirectories(directoryPath);
+    Path file = getFile(directoryPath, state.currentJob, day);
+    Path temporaryFile = directoryPath.resolve(file.getFileName() + ".tmp");
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(temporaryFile), BUFFER_SIZE), BUFFER_SIZE))) {
+      writeSnapshot(out, state, releaseManager, seed, day, steps);
+    }
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    logger.info("Job " + state.currentJob + " | checkpoint written to " + file);
+    return file;
+  }
+
+  /**
+   * Returns the file of the checkpoint of the given job and day in the given directory.
+   *
+   * @param directory The checkpoint directory.
+   * @param job The job.
+   * @param day The number of days completed.
+   * @return The checkpoint file.
+   */
+  static Path getFile(Path directory, int job, int day) {
+    return directory.resolve("checkpoint_" + job + "_" + day + ".bin.gz");
+  }
+
+  private static void writeSnapshot(DataOutputStream out, PedSimCity state,
+      AgentReleaseManager releaseManager, long seed, int day, double steps) throws IOException {
+
+    List<Agent> agents = new ArrayList<>(state.agentsList);
+    agents.sort(Comparator.comparingInt(agent -> agent.agentID));
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(state.currentJob);
+    out.writeLong(seed);
+    out.writeInt(day);
+    out.writeDouble(steps);
+    writeObject(out, state.random);
+    for (RandomStream stream : RandomStream.values()) {
+      state.getRandom(stream).writeState(out);
+    }
+    state.flowHandler.writeState(out);
+    releaseManager.writeState(out);
+    out.writeInt(agents.size());
+    for (Agent agent : agents) {
+      out.writeInt(agent.agentID);
+      agent.writeState(out);
+    }
+  }
+
+  /**
+   * Reads the header of a checkpoint file: job, seed, day and step.
+   *
+   * @param file The checkpoint file.
+   * @return The checkpoint, ready to be restored.
+   * @throws IOException if the file cannot be read or is not a checkpoint.
+   */
+  static Checkpoint readHeader(Path file) throws IOException {
+    try (DataInputStream in = open(file)) {
+      return readHeader(file, in);
+    }
+  }
+
+  private static Checkpoint readHeader(Path file, DataInput in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException(file + " is not a PedSimCity checkpoint");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+    }
+    return new Checkpoint(file, in.readInt(), in.readLong(), in.readInt(), in.readDouble());
+  }
+
+  /**
+   * Restores the checkpoint into a job whose agents have been populated. Agents are matched by ID
+   * and resume their trips, if any; in event-driven mode the agents away from home are scheduled
+   * again. The job's clock continues from the step following the checkpointed one. The release
+   * manager of the checkpointed day is restored in {@link #releaseManager}, for the days that carry
+   * it over.
+   *
+   * @param state The simulation state of the job.
+   * @throws IOException if the checkpoint cannot be read or does not match the population.
+   */
+  void restore(PedSimCity state) throws IOException {
+
+    Map<Integer, Agent> agentsByID = new HashMap<>();
+    for (Agent agent : state.agentsList) {
+      agentsByID.put(agent.agentID, agent);
+    }
+
+    try (DataInputStream in = open(file)) {
+      readHeader(file, in);
+      state.random = (MersenneTwisterFast) readObject(in);
+      for (RandomStream stream : RandomStream.values()) {
+        state.getRandom(stream).readState(in);
+      }
+      state.flowHandler.readState(in);
+      releaseManager = new AgentReleaseManager(state, in);
+      int nrAgents = in.readInt();
+      if (nrAgents != agentsByID.size()) {
+        throw new IOException("The checkpoint contains " + nrAgents + " agents, the job "
+            + agentsByID.size() + ". The population parameters must not change on resume.");
+      }
+      for (int i = 0; i < nrAgents; i++) {
+        int agentID = in.readInt();
+        Agent agent = agentsByID.get(agentID);
+        if (agent == null) {
+          throw new IOException("Agent " + agentID + " of the checkpoint not found in the job");
+        }
+        agent.readState(in);
+      }
+    }
+    state.setStepsOffset(steps);
+    if (state.isEventDriven()) {
+      for (Agent agent : state.agentsList) {
+        agent.scheduleNextWakeUp();
+      }
+    }
+    logger.info("Job " + job + " | resumed from " + file + " at day " + (day + 1));
+  }
+
+  private static DataInputStream open(Path file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+  }
+
+  /**
+   * Writes a set of integer IDs.
+   *
+   * @param out The checkpoint output.
+   * @param integers The IDs.
+   * @throws IOException if writing fails.
+   */
+  public static void writeIntegers(DataOutput out, Set<Integer> integers) throws IOException {
+    out.writeInt(integers.size());
+    for (int integer : integers) {
+      out.writeInt(integer);
+    }
+  }
+
+  /**
+   * Reads a set of integer IDs written with {@link #writeIntegers(DataOutput, Set)}.
+   *
+   * @param in The checkpoint input.
+   * @return The IDs.
+   * @throws IOException if reading fails.
+   */
+  public static Set<Integer> readIntegers(DataInput in) throws IOException {
+    int size = in.readInt();
+    Set<Integer> integers = new HashSet<>(Math.max(16, size * 2));
+    for (int i = 0; i < size; i++) {
+      integers.add(in.readInt());
+    }
+    return integers;
+  }
+
+  /**
+   * Writes a directed edge as its edge ID and the ID of the node it leaves.
+   *
+   * @param out The checkpoint output.
+   * @param directedEdge The directed edge.
+   * @throws IOException if writing fails.
+   */
+  public static void writeDirectedEdge(DataOutput out, DirectedEdge directedEdge)
+      throws IOException {
+    out.writeInt(((EdgeGraph) directedEdge.getEdge()).getID());
+    out.writeInt(((NodeGraph) directedEdge.getFromNode()).getID());
+  }
+
+  /**
+   * Reads a directed edge written with {@link #writeDirectedEdge(DataOutput, DirectedEdge)}.
+   *
+   * @param in The checkpoint input.
+   * @return The directed edge of the city network.
+   * @throws IOException if reading fails.
+   */
+  public static DirectedEdge readDirectedEdge(DataInput in) throws IOException {
+    EdgeGraph edge = PedSimCity.edgesMap.get(in.readInt());
+    return edge.getDirEdge(PedSimCity.nodesMap.get(in.readInt()));
+  }
+
+  /**
+   * Writes a sequence of directed edges, e.g. a route.
+   *
+   * @param out The checkpoint output.
+   * @param directedEdges The directed edges.
+   * @throws IOException if writing fails.
+   */
+  public static void writeDirectedEdges(DataOutput out, List<DirectedEdge> directedEdges)
+      throws IOException {
+    out.writeInt(directedEdges.size());
+    for (DirectedEdge directedEdge : directedEdges) {
+      writeDirectedEdge(out, directedEdge);
+    }
+  }
+
+  /**
+   * Reads a sequence of directed edges written with {@link #writeDirectedEdges(DataOutput, List)}.
+   *
+   * @param in The checkpoint input.
+   * @return The directed edges.
+   * @throws IOException if reading fails.
+   */
+  public static List<DirectedEdge> readDirectedEdges(DataInput in) throws IOException {
+    int size = in.readInt();
+    List<DirectedEdge> directedEdges = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      directedEdges.add(readDirectedEdge(in));
+    }
+    return directedEdges;
+  }
+
+  /**
+   * Writes the ID of a node, or -1 for none.
+   *
+   * @param out The checkpoint output.
+   * @param node The node, possibly null.
+   * @throws IOException if writing fails.
+   */
+  public static void writeNode(DataOutput out, NodeGraph node) throws IOException {
+    out.writeInt(node == null ? -1 : node.getID());
+  }
+
+  /**
+   * Reads a node written with {@link #writeNode(DataOutput, NodeGraph)}.
+   *
+   * @param in The checkpoint input.
+   * @return The node of the city network, or null.
+   * @throws IOException if reading fails.
+   */
+  public static NodeGraph readNode(DataInput in) throws IOException {
+    int nodeID = in.readInt();
+    return nodeID == -1 ? null : PedSimCity.nodesMap.get(nodeID);
+  }
+
+  private static void writeObject(DataOutput out, Serializable object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+      objectOut.writeObject(object);
+    }
+    out.writeInt(bytes.size());
+    out.write(bytes.toByteArray());
+  }
+
+  private static Object readObject(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return objectIn.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+}
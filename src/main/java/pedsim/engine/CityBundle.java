@@ -0,0 +1,359 @@
+package pedsim.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import pedsim.parameters.Pars;
+import pedsim.utilities.LoggerUtil;
+import sim.field.geo.VectorLayer;
+import sim.graph.Building;
+import sim.graph.NodeGraph;
+import sim.util.geo.AttributeValue;
+import sim.util.geo.MasonGeometry;
+
+/**
+ * A compiled city bundle: a binary file holding the input layers of a city (geometries as WKB and
+ * their attributes) and the results of the spatial queries carried out when preparing the
+ * environment (each building's closest junction and the junctions' DMA). Loading the bundle, which
+ * is memory-mapped, replaces the parsing of the GeoPackage files.
+ *
+ * The bundle stores a checksum of the GeoPackage files it was compiled from; when the files change,
+ * the bundle is ignored and recompiled from them.
+ */
+public class CityBundle {
+
+  private static final int MAGIC = 0x50534342; // "PSCB"
+  private static final int VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final byte NULL = 0;
+  private static final byte INTEGER = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte STRING = 4;
+  private static final byte BOOLEAN = 5;
+
+  private static final Logger logger = LoggerUtil.getLogger();
+
+  // layers in the order they are stored, with the suffix of their GeoPackage file
+  private static final String[] LAYER_SUFFIXES = {"_landmarks", "_sight_lines", "_barriers",
+      "_edges", "_nodes", "_edgesDual_graph", "_nodesDual_graph"};
+  // the landmarks and sight lines are optional, as in the GeoPackage import: a city without them
+  // is stored with empty layers
+  private static final int OPTIONAL_LAYERS = 2;
+
+  private final Path file;
+  private final long checksum;
+  // the layers, referenced here as the sight lines are released once the environment is prepared
+  private final VectorLayer[] layers;
+
+  // results of the spatial queries in Environment.prepare, when loaded from the bundle
+  private Map<Integer, Integer> buildingNodes;
+  private Map<Integer, String> nodesDMA;
+
+  /**
+   * Creates the bundle of the city {@code Pars.cityName}, or of the synthetic city, located in
+   * {@code Pars.bundleDirectory}, and computes the checksum of the city's GeoPackage files.
+   *
+   * @param classLoader The class loader through which the GeoPackage files are accessed.
+   * @throws IOException if the GeoPackage files cannot be read.
+   */
+  public CityBundle(ClassLoader classLoader) throws IOException {
+    String name = Pars.syntheticCity ? SyntheticCity.bundleName() : Pars.cityName;
+    this.file = Paths.get(Pars.bundleDirectory, name + ".pscb");
+    this.checksum = computeChecksum(classLoader);
+    this.layers = getLayers();
+  }
+
+  private static VectorLayer[] getLayers() {
+    return new VectorLayer[] {PedSimCity.buildings, PedSimCity.sightLines, PedSimCity.barriers,
+        PedSimCity.roads, PedSimCity.junctions, PedSimCity.intersectionsDual,
+        PedSimCity.centroids};
+  }
+
+  /**
+   * Computes a CRC32 checksum over the bundle version and the GeoPackage files of the city, or the
+   * parameters of the synthetic city.
+   */
+  private static long computeChecksum(ClassLoader classLoader) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(VERSION);
+    if (Pars.syntheticCity) {
+      crc.update(SyntheticCity.specification().getBytes(StandardCharsets.UTF_8));
+      return crc.getValue();
+    }
+    byte[] buffer = new byte[BUFFER_SIZE];
+    for (int i = 0; i < LAYER_SUFFIXES.length; i++) {
+      String resourceName = Pars.cityName + "/" + Pars.cityName + LAYER_SUFFIXES[i] + ".gpkg";
+      try (InputStream in = classLoader.getResourceAsStream(resourceName)) {
+        // the presence of each file is part of the checksum, so that adding an optional layer
+        // invalidates the bundle
+        crc.update(in == null ? 0 : 1);
+        if (in == null && i < OPTIONAL_LAYERS) {
+          continue;
+        }
+        if (in == null) {
+          throw new IOException("Resource not found: " + resourceName);
+        }
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          crc.update(buffer, 0, read);
+        }
+      }
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Checks whether the bundle exists and was compiled from the current GeoPackage files.
+   *
+   * @return true if the bundle can be loaded, false otherwise.
+   */
+  public boolean isValid() {
+    if (!Files.isRegularFile(file)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(16);
+      channel.read(header, 0);
+      header.flip();
+      return header.remaining() == 16 && header.getInt() == MAGIC && header.getInt() == VERSION
+          && header.getLong() == checksum;
+    } catch (IOException e) {
+      logger.warning("City bundle " + file + " not readable: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Loads the layers of the city from the bundle. The layers are filled only once the whole bundle
+   * has been read, so that a failed load leaves them empty and the GeoPackage files can be imported
+   * instead. Optional layers absent from the city are stored, and loaded, empty.
+   *
+   * @throws IOException if the bundle cannot be read.
+   */
+  public void load() throws IOException {
+
+    List<List<MasonGeometry>> features = new ArrayList<>(layers.length);
+    Map<Integer, Integer> loadedBuildingNodes;
+    Map<Integer, String> loadedNodesDMA;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.position(16);
+      WKBReader wkbReader = new WKBReader();
+      for (int i = 0; i < layers.length; i++) {
+        features.add(readLayer(buffer, wkbReader));
+      }
+
+      int nrBuildings = buffer.getInt();
+      loadedBuildingNodes = new HashMap<>(Math.max(16, nrBuildings * 2));
+      for (int i = 0; i < nrBuildings; i++) {
+        loadedBuildingNodes.put(buffer.getInt(), buffer.getInt());
+      }
+      int nrNodes = buffer.getInt();
+      loadedNodesDMA = new HashMap<>(Math.max(16, nrNodes * 2));
+      for (int i = 0; i < nrNodes; i++) {
+        loadedNodesDMA.put(buffer.getInt(), readString(buffer));
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+      throw new IOException("Truncated city bundle " + file, e);
+    }
+
+    for (int i = 0; i < layers.length; i++) {
+      for (MasonGeometry masonGeometry : features.get(i)) {
+        layers[i].addGeometry(masonGeometry);
+      }
+    }
+    buildingNodes = loadedBuildingNodes;
+    nodesDMA = loadedNodesDMA;
+    logger.info("City bundle " + file + " loaded.");
+  }
+
+  private static List<MasonGeometry> readLayer(ByteBuffer buffer, WKBReader wkbReader)
+      throws IOException {
+
+    int nrFeatures = buffer.getInt();
+    List<MasonGeometry> features = new ArrayList<>(nrFeatures);
+    for (int i = 0; i < nrFeatures; i++) {
+      byte[] wkb = new byte[buffer.getInt()];
+      buffer.get(wkb);
+      Geometry geometry;
+      try {
+        geometry = wkbReader.read(wkb);
+      } catch (ParseException e) {
+        throw new IOException("Invalid geometry in city bundle", e);
+      }
+      MasonGeometry masonGeometry = new MasonGeometry(geometry);
+      int nrAttributes = buffer.getInt();
+      for (int a = 0; a < nrAttributes; a++) {
+        String key = readString(buffer);
+        masonGeometry.addAttribute(key, readValue(buffer));
+      }
+      features.add(masonGeometry);
+    }
+    return features;
+  }
+
+  private static Object readValue(ByteBuffer buffer) {
+    byte type = buffer.get();
+    switch (type) {
+      case INTEGER:
+        return buffer.getInt();
+      case LONG:
+        return buffer.getLong();
+      case DOUBLE:
+        return buffer.getDouble();
+      case STRING:
+        return readString(buffer);
+      case BOOLEAN:
+        return buffer.get() != 0;
+      default:
+        return null;
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the bundle from the imported layers and the prepared environment. It must be called
+   * after {@link Environment#prepare()}. The file is written to a temporary file first and then
+   * moved in place.
+   *
+   * @throws IOException if writing fails.
+   */
+  public void write() throws IOException {
+
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporaryFile), BUFFER_SIZE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(checksum);
+      WKBWriter wkbWriter = new WKBWriter(2);
+      for (VectorLayer layer : layers) {
+        writeLayer(out, layer, wkbWriter);
+      }
+
+      out.writeInt(PedSimCity.buildingsMap.size());
+      for (Building building : PedSimCity.buildingsMap.values()) {
+        out.writeInt(building.buildingID);
+        out.writeInt(building.node != null ? building.node.getID() : -1);
+      }
+      Map<Integer, String> dma = new HashMap<>();
+      for (NodeGraph node : PedSimCity.nodesMap.values()) {
+        if (node.DMA != null) {
+          dma.put(node.getID(), node.DMA);
+        }
+      }
+      out.writeInt(dma.size());
+      for (Map.Entry<Integer, String> entry : dma.entrySet()) {
+        out.writeInt(entry.getKey());
+        writeString(out, entry.getValue());
+      }
+    }
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    logger.info("City bundle written to " + file);
+  }
+
+  private static void writeLayer(DataOutputStream out, VectorLayer layer, WKBWriter wkbWriter)
+      throws IOException {
+
+    List<MasonGeometry> geometries = layer.getGeometries();
+    out.writeInt(geometries.size());
+    for (MasonGeometry masonGeometry : geometries) {
+      byte[] wkb = wkbWriter.write(masonGeometry.getGeometry());
+      out.writeInt(wkb.length);
+      out.write(wkb);
+      Map<String, AttributeValue> attributes = masonGeometry.getAttributes();
+      out.writeInt(attributes.size());
+      for (Map.Entry<String, AttributeValue> attribute : attributes.entrySet()) {
+        writeString(out, attribute.getKey());
+        writeValue(out, attribute.getValue() != null ? attribute.getValue().getValue() : null);
+      }
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      out.writeByte(INTEGER);
+      out.writeInt(((Number) value).intValue());
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Number) {
+      out.writeByte(DOUBLE);
+      out.writeDouble(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeByte((Boolean) value ? 1 : 0);
+    } else {
+      out.writeByte(STRING);
+      writeString(out, value.toString());
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Returns the ID of the junction closest to the given building, as stored in the bundle.
+   *
+   * @param buildingID The building ID.
+   * @return The node ID, -1 if the building has no junction within 500 m, or null if the bundle
+   *         has not been loaded or does not contain the building.
+   */
+  Integer getBuildingNode(int buildingID) {
+    return buildingNodes == null ? null : buildingNodes.get(buildingID);
+  }
+
+  /**
+   * Returns the DMA assigned to the given junction, as stored in the bundle.
+   *
+   * @param nodeID The node ID.
+   * @return The DMA, or null if the junction has none.
+   */
+  String getNodeDMA(int nodeID) {
+    return nodesDMA == null ? null : nodesDMA.get(nodeID);
+  }
+
+  /**
+   * Checks whether the results of the environment's spatial queries were loaded from the bundle.
+   *
+   * @return true if the bundle has been loaded, false otherwise.
+   */
+  boolean isLoaded() {
+    return buildingNodes != null;
+  }
+}
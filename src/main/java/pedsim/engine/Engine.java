@@ -1,10 +1,12 @@
 package pedsim.engine;
 
+import java.nio.file.Path;
 import java.util.logging.Logger;
 import pedsim.parameters.Pars;
 import pedsim.parameters.TimePars;
 import pedsim.utilities.LoggerUtil;
-import sim.util.geo.Utilities;
+import pedsim.utilities.SplitMixRandom;
+import pedsim.utilities.StringEnum.RandomStream;
 
 public class Engine {
 
@@ -12,6 +14,11 @@ public class Engine {
   private double kmCurrentDay;
   AgentReleaseManager currentDayReleaseManager;
   private int currentDay;
+  private long seed;
+  // day after which the job stops and writes its snapshot, when burning in branches
+  private int stopAfterDay = -1;
+  private String snapshotDirectory;
+  private Path snapshot;
 
   private static final Logger logger = LoggerUtil.getLogger();
 
@@ -21,43 +28,166 @@ public class Engine {
 
   /**
    * Executes the simulation job by controlling the flow of the simulation steps. It manages the
-   * progression of the days and agent release.
+   * progression of the days and agent release. The seed of the job is derived from
+   * {@code Pars.seed} and the job number.
    *
    * @param job The job ID for the simulation.
    * @throws Exception if an error occurs during the execution.
    */
   public void executeJob(int job) throws Exception {
+    executeJob(job, SplitMixRandom.jobSeed(Pars.seed, job));
+  }
+
+  /**
+   * Executes the simulation job with the given seed, so that it can be reproduced.
+   *
+   * @param job The job ID for the simulation.
+   * @param seed The seed of the job.
+   * @throws Exception if an error occurs during the execution.
+   */
+  void executeJob(int job, long seed) throws Exception {
 
     currentDay = 0;
-    state = new PedSimCity(System.currentTimeMillis(), job);
+    this.seed = seed;
+    state = new PedSimCity(seed, job);
     state.start();
     handleNewDay();
+    runJob(1.0);
+  }
+
+  /**
+   * Resumes a simulation job from a checkpoint written at a day boundary (see
+   * {@link Checkpoint}). The agents are populated as in a new job and then restored from the
+   * checkpoint, trips in progress included; the job continues from the step following the
+   * checkpointed one.
+   *
+   * @param checkpointFile The checkpoint file.
+   * @throws Exception if the checkpoint cannot be restored or an error occurs during the
+   *         execution.
+   */
+  public void resumeJob(Path checkpointFile) throws Exception {
+    resumeJob(Checkpoint.readHeader(checkpointFile));
+  }
+
+  /**
+   * Runs a job until the end of the given day and writes its snapshot to the given directory, so
+   * that branches can be forked from it with {@link #resumeJob(Path)}.
+   *
+   * @param job The job ID for the simulation.
+   * @param days The number of days to simulate.
+   * @param directory The directory where the snapshot is written.
+   * @return The snapshot of the job at the end of the last day.
+   * @throws Exception if an error occurs during the execution.
+   */
+  Path burnIn(int job, int days, Path directory) throws Exception {
+    stopAfterDay = days;
+    snapshotDirectory = directory.toString();
+    executeJob(job);
+    return snapshot;
+  }
 
-    double nextAgentRelease = 1.0;
+  /**
+   * Resumes a simulation job from a checkpoint. The day following the checkpointed one starts as
+   * it does in an uninterrupted job (see {@link #startDay()}), carrying over the restored release
+   * manager when the day boundary does not replace it.
+   *
+   * @param checkpoint The checkpoint.
+   * @throws Exception if the checkpoint cannot be restored or an error occurs during the
+   *         execution.
+   */
+  private void resumeJob(Checkpoint checkpoint) throws Exception {
+
+    currentDay = checkpoint.day;
+    seed = checkpoint.seed;
+    state = new PedSimCity(seed, checkpoint.job);
+    state.start();
+    checkpoint.restore(state);
+    currentDayReleaseManager = checkpoint.releaseManager;
+    startDay();
+    // first release at or after the checkpointed step, on the original release grid; the
+    // checkpoint is written before the release of its own step, which is carried out here
+    double releasesSoFar = Math.ceil((checkpoint.steps - 1.0) / TimePars.releaseAgentsEverySteps);
+    double nextAgentRelease = 1.0 + releasesSoFar * TimePars.releaseAgentsEverySteps;
+    if (nextAgentRelease == checkpoint.steps) {
+      currentDayReleaseManager.releaseAgents(checkpoint.steps);
+      nextAgentRelease += TimePars.releaseAgentsEverySteps;
+    }
+    runJob(nextAgentRelease);
+  }
+
+  /**
+   * Runs the simulation loop from the current day until the end of the simulation.
+   *
+   * @param nextAgentRelease The step of the first agent release.
+   * @throws Exception if an error occurs during the execution.
+   */
+  private void runJob(double nextAgentRelease) throws Exception {
+
+    if (state.isEventDriven()) {
+      scheduleNextDay();
+      nextAgentRelease = skipEmptyReleases(nextAgentRelease);
+      state.scheduleWakeUp(nextAgentRelease);
+    }
     while (continueSimulation()) {
-      double steps = state.schedule.getSteps();
+      double steps = state.getCurrentSteps();
 
       if (isNextDay(steps, currentDay)) {
         state.flowHandler.updateCognitiveMapsData(currentDay + 1, null);
         state.flowHandler.exportFlowsData(currentDay + 1);
         state.flowHandler.exportCognitiveMapsData(currentDay + 1);
         currentDay++;
-        if (currentDay % 6 == 0) {
-          handleEndWeek(state);
-        } else {
-          handleNewDay();
+        PhaseTimings.reportDay(currentDay);
+        MemoryAccounting.reportDay(state, currentDay);
+        if (Pars.writeCheckpoints) {
+          // a checkpoint is only valid once the exports of the days it covers are written
+          state.flowHandler.flushExports();
+          Checkpoint.write(state, currentDayReleaseManager, seed, currentDay, steps,
+              Pars.checkpointDirectory);
+        }
+        if (currentDay == stopAfterDay) {
+          state.flowHandler.flushExports();
+          snapshot = Checkpoint.write(state, currentDayReleaseManager, seed, currentDay, steps,
+              snapshotDirectory);
+          finishJob();
+          return;
+        }
+        startDay();
+        if (state.isEventDriven()) {
+          scheduleNextDay();
+          // the releases of the new day are skipped, if at all, by the new day's release manager
+          if (nextAgentRelease > steps) {
+            nextAgentRelease = skipEmptyReleases(nextAgentRelease);
+            state.scheduleWakeUp(nextAgentRelease);
+          }
         }
       }
 
       if (nextAgentRelease == steps) {
         currentDayReleaseManager.releaseAgents(steps);
         nextAgentRelease += TimePars.releaseAgentsEverySteps;
+        if (state.isEventDriven()) {
+          nextAgentRelease = skipEmptyReleases(nextAgentRelease);
+          state.scheduleWakeUp(nextAgentRelease);
+        }
       }
     }
     state.flowHandler.updateCognitiveMapsData(currentDay + 1, null);
     state.flowHandler.exportFlowsData(currentDay + 1);
     state.flowHandler.exportCognitiveMapsData(currentDay + 1);
-    state.finish();
+    finishJob();
+  }
+
+  /**
+   * Closes the exports of the job and finishes it, so that a failed export fails the job.
+   *
+   * @throws Exception if any of the exports failed.
+   */
+  private void finishJob() throws Exception {
+    try {
+      state.flowHandler.closeExports();
+    } finally {
+      state.finish();
+    }
   }
 
   /**
@@ -67,7 +197,53 @@ public class Engine {
    */
   private boolean continueSimulation() {
     return state.schedule.step(state)
-        && (state.schedule.getSteps() <= TimePars.simulationDurationInSteps);
+        && (state.getCurrentSteps() <= TimePars.simulationDurationInSteps);
+  }
+
+  /**
+   * Moves the next release forward across the releases that would not release any agent (see
+   * {@link AgentReleaseManager#skipRelease(double)}), so that the clock jumps across empty night
+   * periods in event-driven mode. Releases are not skipped beyond the next day boundary, where the
+   * release manager is replaced.
+   *
+   * @param nextAgentRelease The step of the next scheduled release.
+   * @return The step of the next release that cannot be skipped.
+   */
+  private double skipEmptyReleases(double nextAgentRelease) {
+    double nextDay = getFirstStepOfDay(currentDay + 1);
+    while (nextAgentRelease <= TimePars.simulationDurationInSteps && nextAgentRelease < nextDay
+        && currentDayReleaseManager.skipRelease(nextAgentRelease)) {
+      nextAgentRelease += TimePars.releaseAgentsEverySteps;
+    }
+    return nextAgentRelease;
+  }
+
+  /**
+   * Schedules, in event-driven mode, a wake-up at the first step of the next day, so that the
+   * day-boundary exports are carried out at that step even when the clock jumps across it.
+   */
+  private void scheduleNextDay() {
+    if (currentDay + 1 < TimePars.numberOfDays) {
+      state.scheduleWakeUp(getFirstStepOfDay(currentDay + 1));
+    }
+  }
+
+  /**
+   * Returns the first step of the given day, the step at which {@link #isNextDay(double, int)}
+   * detects the day boundary.
+   *
+   * @param day The day, from 0.
+   * @return The first step of the day.
+   */
+  static double getFirstStepOfDay(int day) {
+    double steps = Math.ceil(day * 24 * 60 * TimePars.MINUTE_TO_STEPS);
+    while (getDays(steps) < day) {
+      steps++;
+    }
+    while (steps > 1.0 && getDays(steps - 1.0) >= day) {
+      steps--;
+    }
+    return steps;
   }
 
   /**
@@ -95,13 +271,28 @@ public class Engine {
     return totalMinutes / (24 * 60); // Calculate days
   }
 
+  /**
+   * Starts the day following a day boundary: at the end of a week the release manager of the day
+   * just completed carries over, otherwise a new day begins.
+   */
+  private void startDay() {
+    if (currentDay % 6 == 0) {
+      handleEndWeek(state);
+    } else {
+      handleNewDay();
+    }
+  }
+
   /**
    * Handles the start of a new day by calculating the km for the day and initialising the release
    * manager.
    */
   private void handleNewDay() {
     kmCurrentDay = calculateMetersCurrentDay();
-    logger.info("---------- Beginning day Nr " + (currentDay + 1));
+    logger.info("Job " + state.currentJob + " ---------- Beginning day Nr " + (currentDay + 1));
+    if (state.planningPool != null && currentDay > 0) {
+      logger.info("Job " + state.currentJob + " | " + state.planningPool.collectMetrics());
+    }
     currentDayReleaseManager = new AgentReleaseManager(state, kmCurrentDay);
   }
 
@@ -111,7 +302,8 @@ public class Engine {
    * @return The total kilometres for the current day.
    */
   private double calculateMetersCurrentDay() {
-    return Pars.metersPerDay * Utilities.fromDistribution(1.0, 0.10, null);
+    return Pars.metersPerDay
+        * state.getRandom(RandomStream.DAILY_DISTANCE).fromDistribution(1.0, 0.10, null);
   }
 
   private void handleEndWeek(PedSimCity state) {
@@ -0,0 +1,270 @@
+package pedsim.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import pedsim.utilities.LoggerUtil;
+import sim.util.geo.CSVUtils;
+
+/**
+ * The EnsembleStatistics class aggregates the daily pedestrian volumes of the jobs of a run as they
+ * are exported, keeping for each day, edge and scenario the running mean and variance of the
+ * volumes across jobs (Welford's algorithm). Once all the jobs have reported a day, its mean,
+ * standard deviation and 95% confidence interval half-width are appended to a single summary file
+ * and the day's accumulators are released. When the number of jobs is not known in advance
+ * (adaptive runs), the days are written when the statistics are closed.
+ *
+ * The volumes of each job over the whole run are aggregated likewise once the job completes, and
+ * are used to assess whether the ensemble has converged (see {@link #getConvergedShare(double)}).
+ */
+public class EnsembleStatistics {
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  private static final double Z_95 = 1.959964;
+
+  private final int nrJobs;
+  private final int[] edgeIDs;
+  private final Map<Integer, Integer> edgeIndex = new HashMap<>();
+  // scenarios of the jobs, set by the first report
+  private String[] scenarios;
+  // accumulators of the days not yet written, by day
+  private final TreeMap<Integer, DayAccumulator> days = new TreeMap<>();
+  // volumes over the whole run: per running job, and across completed jobs
+  private final Map<Integer, double[]> jobTotals = new HashMap<>();
+  private DayAccumulator runTotals;
+  private final Path summaryFile;
+  private BufferedWriter writer;
+
+  /**
+   * The running statistics of one day, per edge and scenario.
+   */
+  private static class DayAccumulator {
+    int count;
+    final double[] mean;
+    final double[] m2;
+
+    DayAccumulator(int size) {
+      mean = new double[size];
+      m2 = new double[size];
+    }
+  }
+
+  /**
+   * Constructs an EnsembleStatistics for the given number of jobs.
+   *
+   * @param nrJobs The number of jobs whose volumes are aggregated, or 0 if not known in advance.
+   * @param edgeIDs The IDs of the edges.
+   */
+  public EnsembleStatistics(int nrJobs, Iterable<Integer> edgeIDs) {
+    this.nrJobs = nrJobs;
+    List<Integer> sortedIDs = new ArrayList<>();
+    edgeIDs.forEach(sortedIDs::add);
+    sortedIDs.sort(null);
+    this.edgeIDs = sortedIDs.stream().mapToInt(Integer::intValue).toArray();
+    for (int i = 0; i < this.edgeIDs.length; i++) {
+      edgeIndex.put(this.edgeIDs[i], i);
+    }
+    String currentDate = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+    summaryFile = Paths.get(Exporter.getOutputRoot() + File.separator + "ensembleVolumes",
+        currentDate + "_summary.csv");
+  }
+
+  /**
+   * Adds the volumes of a job for the given day. Each job must report each day once.
+   *
+   * @param job The job.
+   * @param day The simulated day from 1 onwards.
+   * @param scenarios The scenarios, the same for all jobs.
+   * @param volumesMap The volumes of the day (edgeID, scenario, volume).
+   * @throws IOException If the summary file cannot be written.
+   */
+  public void addDay(int job, int day, String[] scenarios,
+      Map<Integer, Map<String, Integer>> volumesMap) throws IOException {
+
+    DayAccumulator accumulator;
+    double[] totals;
+    synchronized (this) {
+      if (this.scenarios == null) {
+        this.scenarios = scenarios;
+        runTotals = new DayAccumulator(edgeIDs.length * scenarios.length);
+      }
+      accumulator = days.computeIfAbsent(day,
+          key -> new DayAccumulator(edgeIDs.length * scenarios.length));
+      totals = jobTotals.computeIfAbsent(job, key -> new double[edgeIDs.length * scenarios.length]);
+    }
+    boolean complete;
+    synchronized (accumulator) {
+      int n = ++accumulator.count;
+      for (Map.Entry<Integer, Map<String, Integer>> entry : volumesMap.entrySet()) {
+        Integer index = edgeIndex.get(entry.getKey());
+        if (index == null) {
+          continue;
+        }
+        for (int s = 0; s < scenarios.length; s++) {
+          Integer volume = entry.getValue().get(scenarios[s]);
+          double x = volume != null ? volume : 0.0;
+          int cell = index * scenarios.length + s;
+          double delta = x - accumulator.mean[cell];
+          accumulator.mean[cell] += delta / n;
+          accumulator.m2[cell] += delta * (x - accumulator.mean[cell]);
+          totals[cell] += x;
+        }
+      }
+      complete = accumulator.count == nrJobs;
+    }
+    if (complete) {
+      writeCompleteDays();
+    }
+  }
+
+  /**
+   * Adds the volumes of a completed job over the whole run to the run statistics. Jobs that fail
+   * are not completed, and only count in the daily statistics of the days they reported.
+   *
+   * @param job The job.
+   */
+  public synchronized void completeJob(int job) {
+    double[] totals = jobTotals.remove(job);
+    if (totals == null) {
+      return;
+    }
+    int n = ++runTotals.count;
+    for (int cell = 0; cell < totals.length; cell++) {
+      double delta = totals[cell] - runTotals.mean[cell];
+      runTotals.mean[cell] += delta / n;
+      runTotals.m2[cell] += delta * (totals[cell] - runTotals.mean[cell]);
+    }
+  }
+
+  /**
+   * Returns the number of completed jobs.
+   *
+   * @return The number of jobs added with {@link #completeJob(int)}.
+   */
+  public synchronized int getCompletedJobs() {
+    return runTotals == null ? 0 : runTotals.count;
+  }
+
+  /**
+   * Returns the share of the edges whose run volumes have converged in all the scenarios: the 95%
+   * confidence interval half-width of their mean, relative to the mean, is within the given target.
+   * Edges that no agent walked in any of the completed jobs are not counted.
+   *
+   * @param targetRelativeCI The maximum CI half-width, as a fraction of the mean.
+   * @return The share of converged edges, between 0 and 1; 0 with fewer than two completed jobs.
+   */
+  public synchronized double getConvergedShare(double targetRelativeCI) {
+
+    int n = getCompletedJobs();
+    if (n < 2) {
+      return 0.0;
+    }
+    int walkedEdges = 0;
+    int convergedEdges = 0;
+    for (int e = 0; e < edgeIDs.length; e++) {
+      boolean walked = false;
+      boolean converged = true;
+      for (int s = 0; s < scenarios.length; s++) {
+        int cell = e * scenarios.length + s;
+        double mean = runTotals.mean[cell];
+        if (mean <= 0.0) {
+          continue;
+        }
+        walked = true;
+        double halfWidth = Z_95 * Math.sqrt(runTotals.m2[cell] / (n - 1)) / Math.sqrt(n);
+        if (halfWidth > targetRelativeCI * mean) {
+          converged = false;
+        }
+      }
+      if (walked) {
+        walkedEdges++;
+        if (converged) {
+          convergedEdges++;
+        }
+      }
+    }
+    return walkedEdges == 0 ? 1.0 : (double) convergedEdges / walkedEdges;
+  }
+
+  /**
+   * Writes, in day order, the days that all the jobs have reported.
+   */
+  private synchronized void writeCompleteDays() throws IOException {
+    if (nrJobs == 0) {
+      return;
+    }
+    while (!days.isEmpty()) {
+      int day = days.firstKey();
+      DayAccumulator accumulator = days.get(day);
+      synchronized (accumulator) {
+        if (accumulator.count < nrJobs) {
+          return;
+        }
+        writeDay(day, accumulator);
+      }
+      days.remove(day);
+    }
+  }
+
+  /**
+   * Writes the days still held, reported by only some of the jobs (e.g. when a job failed) or by an
+   * unknown number of jobs, and closes the summary file.
+   *
+   * @throws IOException If the summary file cannot be written.
+   */
+  public synchronized void close() throws IOException {
+    for (Map.Entry<Integer, DayAccumulator> entry : days.entrySet()) {
+      synchronized (entry.getValue()) {
+        writeDay(entry.getKey(), entry.getValue());
+      }
+    }
+    days.clear();
+    if (writer != null) {
+      writer.close();
+      logger.info("Ensemble volumes summary written to " + summaryFile);
+    }
+  }
+
+  private void writeDay(int day, DayAccumulator accumulator) throws IOException {
+
+    if (writer == null) {
+      Files.createDirectories(summaryFile.getParent());
+      writer = Files.newBufferedWriter(summaryFile);
+      List<String> headers = new ArrayList<>(Arrays.asList("day", "edgeID", "jobs"));
+      for (String scenario : scenarios) {
+        headers.addAll(Arrays.asList(scenario + "_mean", scenario + "_sd", scenario + "_ci95"));
+      }
+      CSVUtils.writeLine(writer, headers);
+    }
+
+    int n = accumulator.count;
+    for (int e = 0; e < edgeIDs.length; e++) {
+      List<String> row = new ArrayList<>(3 + 3 * scenarios.length);
+      row.add(Integer.toString(day));
+      row.add(Integer.toString(edgeIDs[e]));
+      row.add(Integer.toString(n));
+      for (int s = 0; s < scenarios.length; s++) {
+        int cell = e * scenarios.length + s;
+        double sd = n > 1 ? Math.sqrt(accumulator.m2[cell] / (n - 1)) : 0.0;
+        row.add(Double.toString(accumulator.mean[cell]));
+        row.add(Double.toString(sd));
+        row.add(Double.toString(n > 1 ? Z_95 * sd / Math.sqrt(n) : 0.0));
+      }
+      CSVUtils.writeLine(writer, row);
+    }
+    writer.flush();
+    logger.info("Day nr " + day + ": ensemble volumes of " + n + " jobs exported.");
+  }
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.logging.Logger;
 import org.javatuples.Pair;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.planargraph.DirectedEdge;
@@ -14,6 +15,7 @@ import pedsim.communityCognitiveMap.BarrierIntegration;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
 import pedsim.communityCognitiveMap.Gateway;
 import pedsim.communityCognitiveMap.Region;
+import pedsim.utilities.LoggerUtil;
 import pedsim.utilities.StringEnum;
 import pedsim.utilities.StringEnum.BarrierType;
 import sim.field.geo.VectorLayer;
@@ -31,27 +33,52 @@ import sim.util.geo.MasonGeometry;
  */
 public class Environment {
 
+  private static final Logger logger = LoggerUtil.getLogger();
+
   /**
    * Prepares the simulation environment by initializing junctions, buildings, barriers, attributes,
    * dual graph, and regions (if barriers are present).
    */
   public static void prepare() {
+    prepare(null);
+  }
+
+  /**
+   * Prepares the simulation environment, reusing the results of the spatial queries stored in the
+   * given city bundle when it was loaded.
+   *
+   * @param cityBundle The city bundle, or null.
+   */
+  public static void prepare(CityBundle cityBundle) {
 
+    long start = System.nanoTime();
     prepareGraph();
+    long graph = System.nanoTime();
     if (!PedSimCity.buildings.getGeometries().isEmpty()) {
-      prepareBuildings();
+      prepareBuildings(cityBundle != null && cityBundle.isLoaded() ? cityBundle : null);
     }
+    long buildings = System.nanoTime();
     if (!PedSimCity.barriers.getGeometries().isEmpty()) {
       identifyGateways();
     }
     prepareDualGraph();
+    long dualGraph = System.nanoTime();
 
     if (!PedSimCity.barriers.getGeometries().isEmpty()) {
       integrateBarriers();
       prepareRegions();
     }
+    long regions = System.nanoTime();
 
     CommunityCognitiveMap.setCommunityCognitiveMap();
+    long end = System.nanoTime();
+    // the phases the city bundle does not cover yet, to be compared with the bundle's load time
+    logger.info(String.format(
+        "Environment prepared in %.0f ms | graph and centrality %.0f, buildings %.0f, "
+            + "gateways and dual graph %.0f, barriers and regions %.0f, "
+            + "community cognitive map %.0f",
+        (end - start) / 1e6, (graph - start) / 1e6, (buildings - graph) / 1e6,
+        (dualGraph - buildings) / 1e6, (regions - dualGraph) / 1e6, (end - regions) / 1e6));
   }
 
   /**
@@ -88,7 +115,7 @@ public class Environment {
   /**
    * Landmarks: Assign landmark scores to buildings.
    */
-  static private void prepareBuildings() {
+  static private void prepareBuildings(CityBundle cityBundle) {
 
     List<MasonGeometry> geometries = PedSimCity.buildings.getGeometries();
     for (final MasonGeometry buildingGeometry : geometries) {
@@ -103,6 +130,13 @@ public class Environment {
       building.attributes.put("localLandmarkness",
           buildingGeometry.getAttributes().get("lScore_sc"));
 
+      if (cityBundle != null) {
+        Integer nodeID = cityBundle.getBuildingNode(building.buildingID);
+        building.node = nodeID != null ? PedSimCity.nodesMap.get(nodeID) : null;
+        PedSimCity.buildingsMap.put(building.buildingID, building);
+        continue;
+      }
+
       List<MasonGeometry> nearestNodes =
           PedSimCity.junctions.featuresWithinDistance(buildingGeometry.getGeometry(), 500.0);
       MasonGeometry closest = null;
@@ -122,6 +156,11 @@ public class Environment {
       PedSimCity.buildingsMap.put(building.buildingID, building);
     }
 
+    if (cityBundle != null) {
+      PedSimCity.network.getNodes().forEach(node -> node.DMA = cityBundle.getNodeDMA(node.getID()));
+      return;
+    }
+
     PedSimCity.network.getNodes().forEach((node) -> {
       List<MasonGeometry> nearestBuildings =
           PedSimCity.buildings.featuresWithinDistance(node.getMasonGeometry().geometry, 100);
@@ -0,0 +1,246 @@
+package pedsim.engine;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+import pedsim.parameters.Pars;
+
+/**
+ * The ExecutionPolicy class decides how the data-parallel loops of the model are executed. Each
+ * loop names the pool it belongs to; a loop runs in parallel, on that pool, only when:
+ * <ul>
+ * <li>{@code Pars.parallelExecution} is set;</li>
+ * <li>it has at least {@code Pars.parallelCutoff} items, below which fork-join overhead outweighs
+ * the gain;</li>
+ * <li>it is not already running inside a parallel loop, the agents stepper or another worker
+ * thread (see {@link #asWorker(Runnable)}), so that parallelism is never nested.</li>
+ * </ul>
+ * Otherwise it runs sequentially on the calling thread. The pools are shared by all the jobs of the
+ * run, so that concurrent jobs share a fixed number of threads per pool instead of each creating
+ * its own: the agents stepper's decision phase runs on the stepping pool, exports on the I/O pool
+ * and asynchronous route planning on the route planning executor (see
+ * {@link #getRoutePlanningExecutor()}). The number of parallel and sequential executions, items and
+ * time spent are collected per pool.
+ */
+public class ExecutionPolicy {
+
+  /**
+   * The pools of the model. The stepping pool has {@code Pars.steppingThreads} threads, the I/O
+   * pool {@code Pars.ioThreads} and the others {@code Pars.policyThreads}.
+   */
+  public enum Pool {
+    PLANNING, LEARNING, SETUP, STEPPING, IO
+  }
+
+  private static final Map<Pool, ForkJoinPool> pools = new EnumMap<>(Pool.class);
+  private static ThreadPoolExecutor routePlanningExecutor;
+  private static final Map<Pool, PoolMetrics> metrics = new EnumMap<>(Pool.class);
+
+  static {
+    for (Pool pool : Pool.values()) {
+      metrics.put(pool, new PoolMetrics());
+    }
+  }
+
+  /**
+   * Counters of the loops run under a pool.
+   */
+  private static class PoolMetrics {
+    final AtomicLong parallelLoops = new AtomicLong();
+    final AtomicLong sequentialLoops = new AtomicLong();
+    final AtomicLong items = new AtomicLong();
+    final AtomicLong parallelNanos = new AtomicLong();
+  }
+
+  // set on the threads of the model's own pools (e.g. route planning)
+  private static final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> false);
+
+  private ExecutionPolicy() {}
+
+  /**
+   * Wraps the body of a worker thread of a pool other than the policy's, so that the loops it runs
+   * are sequential.
+   *
+   * @param runnable The body of the thread.
+   * @return The wrapped body.
+   */
+  public static Runnable asWorker(Runnable runnable) {
+    return () -> {
+      worker.set(true);
+      runnable.run();
+    };
+  }
+
+  /**
+   * Applies the action to each item.
+   *
+   * @param pool The pool of the loop.
+   * @param items The items.
+   * @param action The action, which must be thread-safe.
+   */
+  public static <T> void forEach(Pool pool, Collection<T> items, Consumer<? super T> action) {
+    if (!runInParallel(pool, items.size())) {
+      items.forEach(action);
+      return;
+    }
+    long start = System.nanoTime();
+    getPool(pool).submit(() -> items.parallelStream().forEach(action)).join();
+    metrics.get(pool).parallelNanos.addAndGet(System.nanoTime() - start);
+  }
+
+  /**
+   * Applies the action to each index from 0 (inclusive) to size (exclusive).
+   *
+   * @param pool The pool of the loop.
+   * @param size The number of indices.
+   * @param action The action, which must be thread-safe.
+   */
+  public static void forEachIndex(Pool pool, int size, IntConsumer action) {
+    if (!runInParallel(pool, size)) {
+      IntStream.range(0, size).forEach(action);
+      return;
+    }
+    long start = System.nanoTime();
+    getPool(pool).submit(() -> IntStream.range(0, size).parallel().forEach(action)).join();
+    metrics.get(pool).parallelNanos.addAndGet(System.nanoTime() - start);
+  }
+
+  /**
+   * Sums the values mapped from the items.
+   *
+   * @param pool The pool of the loop.
+   * @param items The items.
+   * @param mapper The function mapping an item to its value.
+   * @return The sum of the values.
+   */
+  public static <T> double sum(Pool pool, List<T> items, ToDoubleFunction<? super T> mapper) {
+    if (!runInParallel(pool, items.size())) {
+      double sum = 0.0;
+      for (T item : items) {
+        sum += mapper.applyAsDouble(item);
+      }
+      return sum;
+    }
+    long start = System.nanoTime();
+    double sum =
+        getPool(pool).submit(() -> items.parallelStream().mapToDouble(mapper).sum()).join();
+    metrics.get(pool).parallelNanos.addAndGet(System.nanoTime() - start);
+    return sum;
+  }
+
+  /**
+   * Returns an executor running tasks on the given pool, e.g. the I/O pool. Each task is counted as
+   * an item of the pool.
+   *
+   * @param pool The pool.
+   * @return The executor.
+   */
+  public static Executor getExecutor(Pool pool) {
+    return task -> {
+      metrics.get(pool).items.incrementAndGet();
+      getPool(pool).execute(task);
+    };
+  }
+
+  /**
+   * Returns the executor on which routes are planned asynchronously (see
+   * {@code pedsim.routePlanner.RoutePlanningPool}), shared by all jobs:
+   * {@code Pars.planningThreads} threads and at most {@code Pars.planningQueueCapacity} waiting
+   * requests, beyond which the submitting thread plans the route itself. Its threads are workers
+   * (see {@link #asWorker(Runnable)}).
+   *
+   * @return The route planning executor.
+   */
+  public static synchronized ThreadPoolExecutor getRoutePlanningExecutor() {
+    if (routePlanningExecutor == null) {
+      AtomicInteger threadIndex = new AtomicInteger();
+      int threads = Math.max(1, Pars.planningThreads);
+      routePlanningExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(Math.max(1, Pars.planningQueueCapacity)), runnable -> {
+            Thread thread = new Thread(asWorker(runnable),
+                "route-planner-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    return routePlanningExecutor;
+  }
+
+  private static boolean runInParallel(Pool pool, int size) {
+    PoolMetrics poolMetrics = metrics.get(pool);
+    poolMetrics.items.addAndGet(size);
+    boolean parallel = Pars.parallelExecution && size >= Pars.parallelCutoff
+        && !ForkJoinTask.inForkJoinPool() && !worker.get();
+    (parallel ? poolMetrics.parallelLoops : poolMetrics.sequentialLoops).incrementAndGet();
+    return parallel;
+  }
+
+  private static synchronized ForkJoinPool getPool(Pool pool) {
+    return pools.computeIfAbsent(pool, key -> new ForkJoinPool(Math.max(1, getThreads(key)),
+        forkJoinPool -> {
+          ForkJoinWorkerThread thread =
+              ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+          thread.setName(key.toString().toLowerCase() + "-" + thread.getPoolIndex());
+          thread.setDaemon(true);
+          return thread;
+        }, null, false));
+  }
+
+  private static int getThreads(Pool pool) {
+    switch (pool) {
+      case STEPPING:
+        return Pars.steppingThreads;
+      case IO:
+        return Pars.ioThreads;
+      default:
+        return Pars.policyThreads;
+    }
+  }
+
+  /**
+   * Shuts the pools and the route planning executor down, so that they are created again, with the
+   * current thread parameters, when next used. No loop, export or planning may be running.
+   */
+  static synchronized void shutdownPools() {
+    for (ForkJoinPool pool : pools.values()) {
+      pool.shutdown();
+    }
+    pools.clear();
+    if (routePlanningExecutor != null) {
+      routePlanningExecutor.shutdownNow();
+      routePlanningExecutor = null;
+    }
+  }
+
+  /**
+   * Returns the metrics collected so far, for each pool: loops run in parallel and sequentially,
+   * items processed, and time spent in parallel loops.
+   *
+   * @return A summary of the metrics.
+   */
+  public static String collectMetrics() {
+    StringBuilder summary = new StringBuilder("Execution policy |");
+    for (Map.Entry<Pool, PoolMetrics> entry : metrics.entrySet()) {
+      PoolMetrics poolMetrics = entry.getValue();
+      summary.append(String.format(" %s: %d parallel / %d sequential loops, %d items, %.1f s;",
+          entry.getKey().toString().toLowerCase(), poolMetrics.parallelLoops.get(),
+          poolMetrics.sequentialLoops.get(), poolMetrics.items.get(),
+          poolMetrics.parallelNanos.get() / 1e9));
+    }
+    return summary.toString();
+  }
+}
@@ -0,0 +1,98 @@
+package pedsim.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import pedsim.engine.ExecutionPolicy.Pool;
+
+/**
+ * The ExportPipeline class writes the day-boundary exports of a job in the background, on the I/O
+ * pool of the {@link ExecutionPolicy} shared by all jobs, so that the simulation continues into the
+ * next day while the previous day's files are written. The exports of a job are written one at a
+ * time, in submission order; when queueCapacity exports are waiting, the submitting thread waits
+ * for room. Without background writing, exports are written by the submitting thread.
+ */
+public class ExportPipeline {
+
+  /**
+   * An export to be written.
+   */
+  @FunctionalInterface
+  interface ExportTask {
+    void write() throws Exception;
+  }
+
+  private final Executor executor;
+  private final Semaphore capacity;
+  private CompletableFuture<Void> lastExport = CompletableFuture.completedFuture(null);
+  private volatile Exception failure;
+
+  /**
+   * Constructs an ExportPipeline.
+   *
+   * @param async Whether exports are written in the background.
+   * @param queueCapacity The maximum number of exports waiting to be written.
+   */
+  public ExportPipeline(boolean async, int queueCapacity) {
+    executor = async ? ExecutionPolicy.getExecutor(Pool.IO) : null;
+    capacity = new Semaphore(Math.max(1, queueCapacity));
+  }
+
+  /**
+   * Submits an export. A failure of an earlier export is rethrown here.
+   *
+   * @param task The export.
+   * @throws Exception if an earlier export failed, or if the export fails when written by the
+   *         submitting thread.
+   */
+  void submit(ExportTask task) throws Exception {
+    rethrowFailure();
+    if (executor == null) {
+      task.write();
+      return;
+    }
+    capacity.acquire();
+    // chained on the previous export, so that the job's exports are written in order
+    lastExport = lastExport.thenRunAsync(() -> {
+      try {
+        task.write();
+      } catch (Exception e) {
+        if (failure == null) {
+          failure = e;
+        }
+      } finally {
+        capacity.release();
+      }
+    }, executor);
+  }
+
+  /**
+   * Waits until all the submitted exports have been written.
+   *
+   * @throws Exception if any of the exports failed.
+   */
+  public void flush() throws Exception {
+    try {
+      lastExport.get();
+    } catch (ExecutionException e) {
+      throw new Exception("Export failed", e.getCause());
+    }
+    rethrowFailure();
+  }
+
+  /**
+   * Writes the pending exports. The I/O pool keeps running for the other jobs.
+   *
+   * @throws Exception if any of the exports failed.
+   */
+  public void shutdown() throws Exception {
+    flush();
+  }
+
+  private void rethrowFailure() throws Exception {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
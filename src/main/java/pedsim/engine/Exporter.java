@@ -8,11 +8,11 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.ArrayUtils;
+import pedsim.parameters.Pars;
 import pedsim.utilities.LoggerUtil;
 import pedsim.utilities.RouteData;
 import sim.field.geo.VectorLayer;
@@ -35,7 +35,7 @@ public class Exporter {
   private String outputLandmarkCognitiveMapDirectory;
 
   private static final Logger logger = LoggerUtil.getLogger();
-  private static int nrColumns;
+  private int nrColumns;
   private static final int FIELD_LIMIT = 254;
   int job;
   private String currentDate;
@@ -46,26 +46,42 @@ public class Exporter {
   public Exporter(FlowHandler<?> flowHandler) {
     this.flowHandler = flowHandler;
     this.job = flowHandler.job;
-    outputDirectory = "C:" + File.separator + "Users" + File.separator + userName + File.separator
-        + "PedSimCityLearning" + File.separator + "Output";
+    outputDirectory = getOutputRoot();
     DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
     currentDate = LocalDate.now().format(formatter);
   }
 
+  /**
+   * Returns the directory where the output files are written: {@code Pars.outputDirectory}, or the
+   * user's PedSimCityLearning/Output folder, followed by {@code Pars.outputLabel} when set.
+   *
+   * @return The output directory.
+   */
+  static String getOutputRoot() {
+    String outputRoot = Pars.outputDirectory != null ? Pars.outputDirectory
+        : "C:" + File.separator + "Users" + File.separator + System.getProperty("user.name")
+            + File.separator + "PedSimCityLearning" + File.separator + "Output";
+    if (Pars.outputLabel != null) {
+      outputRoot += File.separator + Pars.outputLabel;
+    }
+    return outputRoot;
+  }
+
   /**
    * Saves pedestrian volumes data to a CSV file.
    *
    * @param day The simulated day from 1 onwards.
+   * @param scenarios The scenarios, one column each.
+   * @param volumesMap The volumes of the day (edgeID, scenario, volume).
    * @throws Exception If there is an error while saving the data.
    */
-  public <E extends Enum<E>> void savePedestrianVolumes(int day, String[] scenarios)
-      throws Exception {
+  public <E extends Enum<E>> void savePedestrianVolumes(int day, String[] scenarios,
+      Map<Integer, Map<String, Integer>> volumesMap) throws Exception {
 
     outputVolumesDirectory = verifyOutputPath(outputVolumesDirectory, "streetVolumes");
     outputVolumesDirectory += File.separator + currentDate + "_" + job + "_" + day + ".csv";
     final FileWriter writerVolumesData = new FileWriter(outputVolumesDirectory);
 
-    Map<Integer, Map<String, Integer>> volumesMap = new HashMap<>(flowHandler.volumesMap);
     List<String> headers = new ArrayList<>();
     headers.add("edgeID"); // Directly adding "edgeID" without specifying index
 
@@ -135,13 +151,13 @@ public class Exporter {
     ShapeFileExporter.write(outputRoutesDirectory, routes);
   }
 
-  public void saveCognitiveMapsData(int day, String[] scenarios) throws Exception {
+  public void saveCognitiveMapsData(int day, String[] scenarios,
+      Map<Integer, Map<String, Integer>> knownByMap) throws Exception {
 
     outputCognitiveMapDirectory = verifyOutputPath(outputCognitiveMapDirectory, "knownEdges");
     outputCognitiveMapDirectory += File.separator + currentDate + "_" + day + "_" + job + ".csv";
     final FileWriter writerCognitiveMapsData = new FileWriter(outputCognitiveMapDirectory);
 
-    Map<Integer, Map<String, Integer>> knownByMap = new HashMap<>(flowHandler.knownEdgesMap);
     List<String> headers = new ArrayList<>();
     headers.add("edgeID"); // Directly adding "edgeID" without specifying index
 
@@ -169,11 +185,14 @@ public class Exporter {
 
       CSVUtils.writeLine(writerCognitiveMapsData, row);
     }
+    writerCognitiveMapsData.flush();
+    writerCognitiveMapsData.close();
 
     logger.info("Day nr " + day + ": Cognitive Maps Data successfully exported.");
   }
 
-  public void saveKnownLandmarksData(int day, String[] scenarios) throws Exception {
+  public void saveKnownLandmarksData(int day, String[] scenarios,
+      Map<Integer, Map<String, Integer>> knownLandmarksByMap) throws Exception {
 
     outputLandmarkCognitiveMapDirectory =
         verifyOutputPath(outputLandmarkCognitiveMapDirectory, "knownLandmarks");
@@ -181,8 +200,6 @@ public class Exporter {
         File.separator + currentDate + "_" + day + "_" + job + ".csv";
     final FileWriter writerCognitiveMapsData = new FileWriter(outputLandmarkCognitiveMapDirectory);
 
-    Map<Integer, Map<String, Integer>> knownLandmarksByMap =
-        new HashMap<>(flowHandler.knownLandmarksMap);
     List<String> headers = new ArrayList<>();
     headers.add("buildingID"); // Directly adding "edgeID" without specifying index
 
@@ -211,6 +228,8 @@ public class Exporter {
 
       CSVUtils.writeLine(writerCognitiveMapsData, row);
     }
+    writerCognitiveMapsData.flush();
+    writerCognitiveMapsData.close();
 
     logger.info("Day nr " + day + ": Landmarks Cognitive Maps Data successfully exported.");
   }
@@ -244,7 +263,7 @@ public class Exporter {
    * @param masonGeometry The MasonGeometry object representing a route.
    * @param routeData The route data associated with the route.
    */
-  private static void formRouteAttributes(MasonGeometry masonGeometry, RouteData routeData) {
+  private void formRouteAttributes(MasonGeometry masonGeometry, RouteData routeData) {
     String edgeIDs = ArrayUtils.toString(routeData.edgeIDsSequence);
 
     if (edgeIDs.length() <= FIELD_LIMIT) {
@@ -1,5 +1,8 @@
 package pedsim.engine;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -10,6 +13,8 @@ import java.util.stream.Collectors;
 import pedsim.agents.Agent;
 import pedsim.cognitiveMap.CognitiveMap;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.engine.PhaseTimings.Phase;
+import pedsim.parameters.Pars;
 import pedsim.utilities.RouteData;
 import sim.graph.EdgeGraph;
 import sim.graph.GraphUtils;
@@ -35,6 +40,8 @@ public class FlowHandler<E extends Enum<E>> {
   String[] scenarios;
   private PedSimCity state;
   Exporter exporter;
+  private final ExportPipeline exportPipeline;
+  private boolean exportsClosed = false;
 
   public FlowHandler(int job, PedSimCity state, E[] agentScenarioValues,
       E[] simulationScenarioValues) {
@@ -55,6 +62,7 @@ public class FlowHandler<E extends Enum<E>> {
     initializeEdgeVolumes();
     initializeCognitiveMapCollector();
     exporter = new Exporter(this);
+    exportPipeline = new ExportPipeline(Pars.asyncExport, Pars.exportQueueCapacity);
   }
 
   /**
@@ -167,21 +175,161 @@ public class FlowHandler<E extends Enum<E>> {
   }
 
   /**
-   * Exports the flows data for the specified day.
+   * Exports the flows data for the specified day. The volumes are swapped with fresh counters, while
+   * the frozen ones are written by the export pipeline, on a background thread when
+   * {@code Pars.asyncExport} is set. They are added to the ensemble statistics of the run, if any,
+   * and written to the job's own file unless {@code Pars.perJobVolumes} is false.
    *
    * @param day The day for which the flow data should be exported.
    * @throws Exception if there is an error during the export process.
    */
   public void exportFlowsData(int day) throws Exception {
-    exporter.savePedestrianVolumes(day, scenarios);
+    Map<Integer, Map<String, Integer>> dayVolumesMap;
+    synchronized (this) {
+      dayVolumesMap = volumesMap;
+      volumesMap = new HashMap<>();
+      initializeEdgeVolumes();
+    }
+    EnsembleStatistics ensembleStatistics = PedSimCity.ensembleStatistics;
+    exportPipeline.submit(() -> {
+      long start = PhaseTimings.start();
+      SimulationEvents.DayExport event = new SimulationEvents.DayExport();
+      event.begin();
+      if (ensembleStatistics != null) {
+        ensembleStatistics.addDay(job, day, scenarios, dayVolumesMap);
+      }
+      if (Pars.perJobVolumes) {
+        exporter.savePedestrianVolumes(day, scenarios, dayVolumesMap);
+      }
+      commitExportEvent(event, day, "volumes", dayVolumesMap.size());
+      PhaseTimings.stop(Phase.EXPORT, start);
+    });
     // exporter.saveRoutes(day);
-    initializeEdgeVolumes();
   }
 
+  /**
+   * Exports the cognitive maps data collected for the specified day. The collectors are swapped
+   * with fresh ones, while the frozen ones are written by the export pipeline.
+   *
+   * @param day The day for which the cognitive maps data should be exported.
+   * @throws Exception if an earlier export failed.
+   */
   public void exportCognitiveMapsData(int day) throws Exception {
 
-    exporter.saveCognitiveMapsData(day, scenarios);
-    exporter.saveKnownLandmarksData(day, scenarios);
-    initializeCognitiveMapCollector();
+    Map<Integer, Map<String, Integer>> dayKnownEdgesMap;
+    Map<Integer, Map<String, Integer>> dayKnownLandmarksMap;
+    synchronized (this) {
+      dayKnownEdgesMap = knownEdgesMap;
+      dayKnownLandmarksMap = knownLandmarksMap;
+      knownEdgesMap = new HashMap<>();
+      knownLandmarksMap = new HashMap<>();
+      initializeCognitiveMapCollector();
+    }
+    exportPipeline.submit(() -> {
+      long start = PhaseTimings.start();
+      SimulationEvents.DayExport event = new SimulationEvents.DayExport();
+      event.begin();
+      exporter.saveCognitiveMapsData(day, scenarios, dayKnownEdgesMap);
+      exporter.saveKnownLandmarksData(day, scenarios, dayKnownLandmarksMap);
+      commitExportEvent(event, day, "cognitiveMaps", dayKnownEdgesMap.size());
+      PhaseTimings.stop(Phase.EXPORT, start);
+    });
+  }
+
+  private void commitExportEvent(SimulationEvents.DayExport event, int day, String data,
+      int edges) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.job = job;
+      event.day = day;
+      event.data = data;
+      event.edges = edges;
+      event.commit();
+    }
+  }
+
+  /**
+   * Waits until all the exports submitted so far have been written.
+   *
+   * @throws Exception if any of the exports failed.
+   */
+  public void flushExports() throws Exception {
+    exportPipeline.flush();
+  }
+
+  /**
+   * Writes the pending exports and stops the export pipeline. Only the first call has any effect,
+   * so that {@link PedSimCity#finish()} can close the exports of a job the engine has not closed.
+   *
+   * @throws Exception if any of the exports failed.
+   */
+  public void closeExports() throws Exception {
+    if (exportsClosed) {
+      return;
+    }
+    exportsClosed = true;
+    exportPipeline.shutdown();
+  }
+
+  /**
+   * Writes the non-zero counters of the volumes, known edges and known landmarks collectors to a
+   * checkpoint.
+   *
+   * @param out the checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  void writeState(DataOutput out) throws IOException {
+    writeCounters(out, volumesMap);
+    writeCounters(out, knownEdgesMap);
+    writeCounters(out, knownLandmarksMap);
+  }
+
+  /**
+   * Restores the collectors' counters from a checkpoint written with
+   * {@link #writeState(DataOutput)}.
+   *
+   * @param in the checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  void readState(DataInput in) throws IOException {
+    readCounters(in, volumesMap);
+    readCounters(in, knownEdgesMap);
+    readCounters(in, knownLandmarksMap);
+  }
+
+  private void writeCounters(DataOutput out, Map<Integer, Map<String, Integer>> countersMap)
+      throws IOException {
+    int nrEntries = 0;
+    for (Map<String, Integer> counters : countersMap.values()) {
+      for (int count : counters.values()) {
+        if (count != 0) {
+          nrEntries++;
+        }
+      }
+    }
+    out.writeInt(nrEntries);
+    for (Map.Entry<Integer, Map<String, Integer>> entry : countersMap.entrySet()) {
+      for (Map.Entry<String, Integer> counter : entry.getValue().entrySet()) {
+        if (counter.getValue() != 0) {
+          out.writeInt(entry.getKey());
+          out.writeUTF(counter.getKey());
+          out.writeInt(counter.getValue());
+        }
+      }
+    }
+  }
+
+  private void readCounters(DataInput in, Map<Integer, Map<String, Integer>> countersMap)
+      throws IOException {
+    int nrEntries = in.readInt();
+    for (int i = 0; i < nrEntries; i++) {
+      int elementID = in.readInt();
+      String attribute = in.readUTF();
+      int count = in.readInt();
+      Map<String, Integer> counters = countersMap.get(elementID);
+      if (counters != null && counters.containsKey(attribute)) {
+        counters.replace(attribute, count);
+      }
+    }
   }
 }
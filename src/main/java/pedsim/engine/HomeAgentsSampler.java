@@ -0,0 +1,142 @@
+package pedsim.engine;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import pedsim.agents.Agent;
+import pedsim.parameters.RouteChoicePars;
+
+/**
+ * The HomeAgentsSampler class supports the weighted random selection of agents at home. Each agent
+ * at home is weighted so that agents who have walked less so far are more likely to be selected;
+ * agents who are not at home have no weight. Weights are stored in a Fenwick (binary indexed) tree
+ * indexed by agentID, so that updating an agent and drawing one agent both cost O(log N).
+ */
+public class HomeAgentsSampler {
+
+  private final Agent[] agents;
+  private final double[] weights;
+  private final double[] tree;
+
+  /**
+   * Constructs a sampler for agents with IDs between 0 and {@code nrAgents - 1}.
+   *
+   * @param nrAgents The number of agents.
+   */
+  public HomeAgentsSampler(int nrAgents) {
+    agents = new Agent[nrAgents];
+    weights = new double[nrAgents];
+    tree = new double[nrAgents + 1];
+  }
+
+  /**
+   * Adds an agent who has reached home, weighted on the basis of the meters it has walked so far.
+   *
+   * @param agent The agent at home.
+   */
+  public synchronized void addAgent(Agent agent) {
+    agents[agent.agentID] = agent;
+    setWeight(agent.agentID, computeWeight(agent));
+  }
+
+  /**
+   * Removes an agent who has left home.
+   *
+   * @param agent The agent leaving home.
+   */
+  public synchronized void removeAgent(Agent agent) {
+    setWeight(agent.agentID, 0.0);
+  }
+
+  /**
+   * Computes the weight of an agent: it decreases as the total meters walked, expressed in average
+   * trips, increase.
+   *
+   * @param agent The agent.
+   * @return The agent's selection weight.
+   */
+  private static double computeWeight(Agent agent) {
+    return 1.0 / (1.0 + agent.getTotalMetersWalked() / RouteChoicePars.avgTripDistance);
+  }
+
+  /**
+   * Draws, without replacement, the given number of agents among those at home. Selected agents
+   * are removed from the sampler.
+   *
+   * @param nrAgents The number of agents to draw.
+   * @param random The random generator.
+   * @return The selected agents.
+   */
+  public synchronized Set<Agent> sample(int nrAgents, Random random) {
+
+    Set<Agent> selected = new LinkedHashSet<>();
+    while (selected.size() < nrAgents) {
+      double total = prefixSum(weights.length);
+      if (total <= 0.0) {
+        break;
+      }
+      int index = find(random.nextDouble() * total);
+      if (weights[index] <= 0.0) {
+        // rounding residuals in the tree; rebuild it and draw again
+        rebuild();
+        continue;
+      }
+      selected.add(agents[index]);
+      setWeight(index, 0.0);
+    }
+    return selected;
+  }
+
+  /**
+   * Rebuilds the tree from the weights, clearing accumulated rounding errors.
+   */
+  public synchronized void rebuild() {
+    Arrays.fill(tree, 0.0);
+    for (int i = 0; i < weights.length; i++) {
+      int node = i + 1;
+      tree[node] += weights[i];
+      int parent = node + (node & -node);
+      if (parent < tree.length) {
+        tree[parent] += tree[node];
+      }
+    }
+  }
+
+  /**
+   * Sets the weight at the given index, updating the tree.
+   */
+  private void setWeight(int index, double weight) {
+    double delta = weight - weights[index];
+    weights[index] = weight;
+    for (int node = index + 1; node < tree.length; node += node & -node) {
+      tree[node] += delta;
+    }
+  }
+
+  /**
+   * Returns the sum of the first {@code count} weights.
+   */
+  private double prefixSum(int count) {
+    double sum = 0.0;
+    for (int node = count; node > 0; node -= node & -node) {
+      sum += tree[node];
+    }
+    return sum;
+  }
+
+  /**
+   * Finds the index whose cumulative weight interval contains the given value.
+   */
+  private int find(double value) {
+    int position = 0;
+    for (int step = Integer.highestOneBit(weights.length); step > 0; step >>= 1) {
+      int next = position + step;
+      if (next < tree.length && tree[next] <= value) {
+        position = next;
+        value -= tree[next];
+      }
+    }
+    return Math.min(position, weights.length - 1);
+  }
+}
@@ -15,19 +15,85 @@ public class Import {
 
   private static final Logger logger = LoggerUtil.getLogger();
   private final ClassLoader CLASSLOADER = getClass().getClassLoader();
+  private CityBundle cityBundle;
 
   /**
    * Imports various data files required for the simulation based on the selected simulation
-   * parameters.
+   * parameters. With {@code Pars.syntheticCity}, the layers are generated instead (see
+   * {@link SyntheticCity}).
    *
    * @throws Exception If an error occurs during the import process.
    */
   public void importFiles() throws Exception {
+    if (Pars.useCityBundle && loadCityBundle()) {
+      PedSimCity.buildings.setID("buildingID");
+      PedSimCity.barriers.setID("barrierID");
+      buildGraphs();
+      return;
+    }
+    if (Pars.syntheticCity) {
+      new SyntheticCity().generate();
+      PedSimCity.buildings.setID("buildingID");
+      PedSimCity.barriers.setID("barrierID");
+      buildGraphs();
+      return;
+    }
     readLandmarksAndSightLines();
     readBarriers();
     readGraphs();
   }
 
+  /**
+   * Loads the layers from the city bundle, when valid. Any failure is logged and the city is then
+   * imported (or generated) as without bundle; the bundle is kept, so that it is recompiled, unless
+   * it could not be created at all.
+   *
+   * @return true if the layers were loaded from the bundle, false otherwise.
+   */
+  private boolean loadCityBundle() {
+    try {
+      cityBundle = new CityBundle(CLASSLOADER);
+      if (cityBundle.isValid()) {
+        long start = System.nanoTime();
+        cityBundle.load();
+        logger.info(
+            String.format("City bundle loaded in %.0f ms.", (System.nanoTime() - start) / 1e6));
+        return true;
+      }
+      logger.info("City bundle missing or outdated, "
+          + (Pars.syntheticCity ? "generating the city." : "importing the GeoPackage files."));
+    } catch (Exception e) {
+      handleImportError("Loading the city bundle failed", e);
+      logger.info(Pars.syntheticCity ? "Generating the city." : "Importing the GeoPackage files.");
+    }
+    return false;
+  }
+
+  /**
+   * Returns the compiled city bundle, when {@code Pars.useCityBundle} is set.
+   *
+   * @return The city bundle, loaded if it was valid, or null if bundles are not used.
+   */
+  public CityBundle getCityBundle() {
+    return cityBundle;
+  }
+
+  /**
+   * Writes the city bundle if it was not loaded, so that the next runs can skip the GeoPackage
+   * files. It must be called once the environment is prepared. Failures are logged only, as the
+   * bundle is a cache.
+   */
+  public void compileCityBundle() {
+    if (cityBundle == null || cityBundle.isLoaded()) {
+      return;
+    }
+    try {
+      cityBundle.write();
+    } catch (Exception e) {
+      handleImportError("Compiling the city bundle failed", e);
+    }
+  }
+
   /**
    * Reads and imports road network graphs required for the simulation.
    *
@@ -50,16 +116,22 @@ public class Import {
         VectorLayer.readGPKG(fileUrl, vectorLayers[i]);
       }
 
-      PedSimCity.network.fromStreetJunctionsSegments(PedSimCity.junctions, PedSimCity.roads);
-      PedSimCity.dualNetwork.fromStreetJunctionsSegments(PedSimCity.centroids,
-          PedSimCity.intersectionsDual);
-
+      buildGraphs();
       logger.info("Graphs successfully imported.");
     } catch (Exception e) {
       handleImportError("Importing Graphs failed", e);
     }
   }
 
+  /**
+   * Builds the primal and dual graphs from the junctions and street segments layers.
+   */
+  private void buildGraphs() {
+    PedSimCity.network.fromStreetJunctionsSegments(PedSimCity.junctions, PedSimCity.roads);
+    PedSimCity.dualNetwork.fromStreetJunctionsSegments(PedSimCity.centroids,
+        PedSimCity.intersectionsDual);
+  }
+
   /**
    * Reads and imports landmarks and sight lines data for the simulation.
    */
@@ -0,0 +1,248 @@
+package pedsim.engine;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.planargraph.DirectedEdge;
+import pedsim.agents.Agent;
+import pedsim.cognitiveMap.CognitiveMap;
+import pedsim.cognitiveMap.IncrementalLearning;
+import pedsim.cognitiveMap.VividnessGrid;
+import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.parameters.Pars;
+import pedsim.routeMemorability.MemoryTrace;
+import pedsim.utilities.LoggerUtil;
+import pedsim.utilities.RouteData;
+import sim.graph.EdgeGraph;
+import sim.routing.Route;
+
+/**
+ * The MemoryAccounting class estimates the heap retained by the main subsystems of a job and logs
+ * it at each day boundary, together with the average and maximum retained by a single agent, when
+ * {@code Pars.memoryAccounting} is set.
+ *
+ * Sizes are estimated from the number of entries, points and cells of each structure, assuming a
+ * 64-bit JVM with compressed references (heaps below 32 GB); they are meant to compare subsystems
+ * and size heaps, not to match a heap dump. Objects shared by several structures are counted once,
+ * under the first subsystem holding them: the visibility spaces of the routes walked are counted
+ * under the memory traces, and the graph elements under none. The shared caches are reported by
+ * each job, as they are shared by all the jobs of the run.
+ */
+public class MemoryAccounting {
+
+  /**
+   * The subsystems accounted for. Those per agent come first.
+   */
+  public enum Subsystem {
+    VIVIDNESS_GRIDS, ROUTES_SO_FAR, MEMORY_TRACES, KNOWN_NETWORKS, ROUTES_DATA, INDEXED_EDGE_CACHE,
+    VISIBILITY_POLYGONS_CACHE, ROUTES_SUB_NETWORK, ALTERNATIVE_ROUTES
+  }
+
+  private static final Logger logger = LoggerUtil.getLogger();
+
+  static final long OBJECT_HEADER = 12L;
+  static final long REFERENCE = 4L;
+  // Coordinate: header and three doubles, plus the reference from its array
+  static final long COORDINATE = 40L + REFERENCE;
+  // geometry, envelope and coordinate sequence objects of a simple geometry
+  static final long GEOMETRY_OVERHEAD = 120L;
+  // HashMap.Node, plus its share of the table at the default load factor
+  static final long HASH_ENTRY = 32L + 6L;
+  static final long INTEGER = 16L;
+  static final long COLLECTION_OVERHEAD = 48L;
+
+  private MemoryAccounting() {}
+
+  /**
+   * Estimates the bytes retained by the job's subsystems and logs them, with the per-agent average
+   * and maximum, for the given day.
+   *
+   * @param state The job's simulation state.
+   * @param day The simulated day just completed, from 1 onwards.
+   */
+  static void reportDay(PedSimCity state, int day) {
+
+    if (!Pars.memoryAccounting) {
+      return;
+    }
+    Map<Subsystem, Long> bytes = new EnumMap<>(Subsystem.class);
+    for (Subsystem subsystem : Subsystem.values()) {
+      bytes.put(subsystem, 0L);
+    }
+
+    long maxAgentBytes = 0L;
+    int maxAgentID = -1;
+    int nrAgents = 0;
+    long totalAgentBytes = 0L;
+    for (Agent agent : state.agentsList) {
+      long agentBytes = 0L;
+      IncrementalLearning learning = agent.learning;
+      if (learning != null) {
+        agentBytes += add(bytes, Subsystem.VIVIDNESS_GRIDS, gridBytes(learning.getVividnessGrid()));
+        agentBytes += add(bytes, Subsystem.ROUTES_SO_FAR, routesBytes(learning.routesSoFar));
+      }
+      CognitiveMap cognitiveMap = agent.getCognitiveMap();
+      if (cognitiveMap != null) {
+        agentBytes += add(bytes, Subsystem.MEMORY_TRACES, tracesBytes(cognitiveMap.memoryTraces));
+        agentBytes += add(bytes, Subsystem.KNOWN_NETWORKS, knownNetworkBytes(cognitiveMap));
+      }
+      nrAgents++;
+      totalAgentBytes += agentBytes;
+      if (agentBytes > maxAgentBytes) {
+        maxAgentBytes = agentBytes;
+        maxAgentID = agent.agentID;
+      }
+    }
+
+    synchronized (state.flowHandler) {
+      bytes.put(Subsystem.ROUTES_DATA, routesDataBytes(state.flowHandler.routesData));
+    }
+    bytes.put(Subsystem.INDEXED_EDGE_CACHE, indexedEdgeCacheBytes());
+    bytes.put(Subsystem.VISIBILITY_POLYGONS_CACHE, visibilityPolygonsCacheBytes());
+    long subNetworkBytes = 0L;
+    for (Route route : CommunityCognitiveMap.routesSubNetwork.values()) {
+      subNetworkBytes += HASH_ENTRY + pairBytes() + routeBytes(route);
+    }
+    bytes.put(Subsystem.ROUTES_SUB_NETWORK, subNetworkBytes);
+    long alternativeRoutesBytes = 0L;
+    for (List<DirectedEdge> edges : PedSimCity.alternativeRoutes.values()) {
+      alternativeRoutesBytes += HASH_ENTRY + pairBytes() + listBytes(edges.size());
+    }
+    bytes.put(Subsystem.ALTERNATIVE_ROUTES, alternativeRoutesBytes);
+
+    StringBuilder report =
+        new StringBuilder("Job " + state.currentJob + " | Day nr " + day + " memory |");
+    long total = 0L;
+    for (Map.Entry<Subsystem, Long> entry : bytes.entrySet()) {
+      total += entry.getValue();
+      report.append(String.format(" %s: %.1f MB;", entry.getKey().toString().toLowerCase(),
+          entry.getValue() / 1048576.0));
+    }
+    Runtime runtime = Runtime.getRuntime();
+    report.append(String.format(" total: %.1f MB (heap used %.1f MB);", total / 1048576.0,
+        (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0));
+    if (nrAgents > 0) {
+      report.append(String.format(" per agent: avg %.1f KB, max %.1f KB (agent %d)",
+          totalAgentBytes / 1024.0 / nrAgents, maxAgentBytes / 1024.0, maxAgentID));
+    }
+    logger.info(report.toString());
+  }
+
+  private static long add(Map<Subsystem, Long> bytes, Subsystem subsystem, long value) {
+    bytes.merge(subsystem, value, Long::sum);
+    return value;
+  }
+
+  private static long gridBytes(VividnessGrid grid) {
+    if (grid == null) {
+      return 0L;
+    }
+    return OBJECT_HEADER + 64L + align(OBJECT_HEADER + 4L + (long) grid.getDensity().length * 4L);
+  }
+
+  private static long routesBytes(List<Route> routes) {
+    long bytes = listBytes(routes.size());
+    for (Route route : routes) {
+      bytes += routeBytes(route);
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimates the bytes retained by a route's own sequences and attributes, excluding the graph
+   * elements and the visibility space it refers to.
+   */
+  private static long routeBytes(Route route) {
+    if (route == null) {
+      return 0L;
+    }
+    return OBJECT_HEADER + 8 * REFERENCE + listBytes(route.directedEdgesSequence.size())
+        + listBytes(route.edgesSequence.size()) + listBytes(route.nodesSequence.size())
+        + listBytes(route.dualNodesSequence.size())
+        + COLLECTION_OVERHEAD + route.attributes.size() * (HASH_ENTRY + 64L);
+  }
+
+  private static long tracesBytes(List<MemoryTrace> memoryTraces) {
+    long bytes = listBytes(memoryTraces.size());
+    for (MemoryTrace memoryTrace : memoryTraces) {
+      bytes += OBJECT_HEADER + 2 * REFERENCE + 16L
+          + geometryBytes(memoryTrace.getVisibilitySpace());
+    }
+    return bytes;
+  }
+
+  private static long knownNetworkBytes(CognitiveMap cognitiveMap) {
+    long bytes = cognitiveMap.getKnownIDsCount() * (HASH_ENTRY + INTEGER)
+        + cognitiveMap.getKnownNetworkCount() * HASH_ENTRY + 11 * COLLECTION_OVERHEAD;
+    for (Geometry polygon : cognitiveMap.getCognitiveCollage()) {
+      bytes += REFERENCE + geometryBytes(polygon);
+    }
+    return bytes;
+  }
+
+  private static long routesDataBytes(List<RouteData> routesData) {
+    long bytes = listBytes(routesData.size());
+    for (RouteData routeData : routesData) {
+      bytes += OBJECT_HEADER + 6 * REFERENCE + 2 * INTEGER
+          + listBytes(routeData.edgeIDsSequence.size())
+          + routeData.edgeIDsSequence.size() * INTEGER + geometryBytes(routeData.lineGeometry)
+          + 2 * 64L;
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimates the bytes retained by the indexed lines cache. Lines indexed in the edge's direction
+   * share the edge's geometry, so this is an upper bound.
+   */
+  private static long indexedEdgeCacheBytes() {
+    long bytes = 0L;
+    for (DirectedEdge directedEdge : PedSimCity.indexedEdgeCache.keySet()) {
+      bytes += HASH_ENTRY + OBJECT_HEADER + REFERENCE
+          + geometryBytes(((EdgeGraph) directedEdge.getEdge()).getLine());
+    }
+    return bytes;
+  }
+
+  private static long visibilityPolygonsCacheBytes() {
+    long bytes = 0L;
+    for (Geometry polygon : PedSimCity.visibilityPolygonsCache.values()) {
+      bytes += HASH_ENTRY + pairBytes() + geometryBytes(polygon);
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimates the bytes retained by a geometry from its number of points.
+   *
+   * @param geometry The geometry.
+   * @return The estimated bytes, 0 if the geometry is null.
+   */
+  static long geometryBytes(Geometry geometry) {
+    if (geometry == null) {
+      return 0L;
+    }
+    return GEOMETRY_OVERHEAD * Math.max(1, geometry.getNumGeometries())
+        + geometry.getNumPoints() * COORDINATE;
+  }
+
+  /**
+   * Estimates the bytes retained by an array list with the given number of references.
+   *
+   * @param size The number of elements.
+   * @return The estimated bytes.
+   */
+  static long listBytes(int size) {
+    return COLLECTION_OVERHEAD + align(size * REFERENCE * 5 / 4);
+  }
+
+  private static long pairBytes() {
+    return OBJECT_HEADER + 4 * REFERENCE + COLLECTION_OVERHEAD;
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7L) & ~7L;
+  }
+}
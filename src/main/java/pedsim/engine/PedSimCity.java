@@ -1,12 +1,21 @@
 package pedsim.engine;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.javatuples.Pair;
 import org.locationtech.jts.geom.Coordinate;
@@ -19,10 +28,16 @@ import pedsim.agents.Agent;
 import pedsim.communityCognitiveMap.Barrier;
 import pedsim.communityCognitiveMap.Gateway;
 import pedsim.communityCognitiveMap.Region;
+import pedsim.parameters.ParameterManager;
 import pedsim.parameters.Pars;
+import pedsim.routePlanner.PlanningRecorder;
+import pedsim.routePlanner.RoutePlanningPool;
 import pedsim.utilities.LoggerUtil;
+import pedsim.utilities.SplitMixRandom;
 import pedsim.utilities.StringEnum;
+import pedsim.utilities.StringEnum.RandomStream;
 import sim.engine.SimState;
+import sim.engine.Steppable;
 import sim.engine.Stoppable;
 import sim.field.geo.VectorLayer;
 import sim.graph.Building;
@@ -37,6 +52,11 @@ import sim.util.geo.MasonGeometry;
 public class PedSimCity extends SimState {
 	private static final long serialVersionUID = 1L;
 
+	// ---------------------------------------------------
+	// Shared city model: built once by Import and Environment.prepare and only
+	// read afterwards, so that concurrent jobs can share it.
+	// ---------------------------------------------------
+
 	// Urban elements: graphs, buildings, etc.
 	public static VectorLayer roads = new VectorLayer();
 	public static VectorLayer buildings = new VectorLayer();
@@ -70,8 +90,12 @@ public class PedSimCity extends SimState {
 	public static Map<Pair<Coordinate, Coordinate>, Polygon> visibilityPolygonsCache = new ConcurrentHashMap<>();
 	// cached alternative routes for night movement
 	public static Map<Pair<NodeGraph, NodeGraph>, List<DirectedEdge>> alternativeRoutes = new ConcurrentHashMap<>();
+	// daily volumes aggregated across the jobs of the current run, if enabled
+	static volatile EnsembleStatistics ensembleStatistics;
 
-	// used only when loading OD sets
+	// ---------------------------------------------------
+	// Per-job simulation context
+	// ---------------------------------------------------
 	public int currentJob;
 	public FlowHandler<?> flowHandler; // Using a wildcard since we don't know the exact type
 
@@ -79,6 +103,23 @@ public class PedSimCity extends SimState {
 	public Set<Agent> agentsAtHome = ConcurrentHashMap.newKeySet();
 	public Set<Agent> agentsWalking = ConcurrentHashMap.newKeySet();
 	public Set<Agent> agentsList = ConcurrentHashMap.newKeySet();
+	// agents walking on each edge (edgeID, count), kept per job as the EdgeGraphs are
+	// shared. The map is filled once; counters can be read without locking.
+	private final Map<Integer, AtomicInteger> edgeAgentCounts = new HashMap<>();
+	private AgentsStepper agentsStepper;
+	// weighted selection of the agents at home and meters walked by all agents today
+	public HomeAgentsSampler homeAgentsSampler;
+	private double metersWalkedToday = 0.0;
+	// trips planned by the agents of this job, counted from concurrent steppers
+	private final LongAdder tripsPlanned = new LongAdder();
+	public RoutePlanningPool planningPool;
+	// records the route planning workload of this job, when Pars.recordPlanning is set
+	public PlanningRecorder planningRecorder;
+	private Steppable spatialIndexUpdater;
+	// job-level random streams, derived from the seed as the agents' ones
+	private final Map<RandomStream, SplitMixRandom> randomStreams = new EnumMap<>(RandomStream.class);
+	// steps already simulated before this run, when resuming from a checkpoint
+	private double stepsOffset = 0.0;
 
 	/**
 	 * Constructs a new instance of the PedSimCity simulation environment.
@@ -89,19 +130,31 @@ public class PedSimCity extends SimState {
 	public PedSimCity(long seed, int job) {
 		super(seed);
 		this.currentJob = job;
+		for (RandomStream stream : RandomStream.values()) {
+			randomStreams.put(stream, createRandomStream(-1, stream));
+		}
 		this.flowHandler = new FlowHandler<>(job, this, StringEnum.Learner.values(), null);
 		this.agents = new VectorLayer(); // create a new vector layer for each job
+		this.homeAgentsSampler = new HomeAgentsSampler(Pars.numAgents);
+		if (Pars.asyncPlanning) {
+			this.planningPool = new RoutePlanningPool();
+		}
+		if (Pars.recordPlanning != null) {
+			this.planningRecorder = PlanningRecorder.open(Pars.recordPlanning, job);
+		}
+		for (Integer edgeID : edgesMap.keySet()) {
+			edgeAgentCounts.put(edgeID, new AtomicInteger());
+		}
 	}
 
 	/**
-	 * Initialises the simulation by defining the simulation mode, initialising edge
-	 * volumes, and preparing the simulation environment. It then proceeds to
-	 * populate the environment with agents and starts the agent movement.
+	 * Initialises the simulation by populating the environment with agents and
+	 * starting the agent movement. The shared city model must have been prepared
+	 * beforehand (see {@link #prepareEnvironment()}).
 	 */
 	@Override
 	public void start() {
 		super.start();
-		prepareEnvironment();
 		populateEnvironment();
 		startMovingAgents();
 	}
@@ -109,9 +162,10 @@ public class PedSimCity extends SimState {
 	/**
 	 * Prepares the environment for the simulation. This method sets up the minimum
 	 * bounding rectangle (MBR) to encompass both the road and building layers and
-	 * updates the MBR of the road layer accordingly.
+	 * updates the MBR of the road layer accordingly. It is called once, before any
+	 * job is started, as the MBR is shared across jobs.
 	 */
-	private void prepareEnvironment() {
+	static void prepareEnvironment() {
 		MBR = roads.getMBR();
 		if (!buildings.getGeometries().isEmpty()) {
 			MBR.expandToInclude(buildings.getMBR());
@@ -122,11 +176,6 @@ public class PedSimCity extends SimState {
 		roads.setMBR(MBR);
 	}
 
-	/**
-	 * Populates the simulation environment with agents and other entities based on
-	 * the selected simulation parameters. This method uses the Populate class to
-	 * generate the agent population.
-	 */
 	/**
 	 * Populates the simulation environment with agents and other entities based on
 	 * the selected simulation parameters. This method uses the Populate class to
@@ -140,33 +189,263 @@ public class PedSimCity extends SimState {
 
 	/**
 	 * Starts moving agents in the simulation. This method schedules agents for
-	 * repeated movement updates and sets up the spatial index for agents.
+	 * repeated movement updates and sets up the spatial index for agents. When
+	 * {@code Pars.parallelStepping} is enabled, the agents are stepped together by
+	 * an {@link AgentsStepper} rather than one by one. In event-driven mode agents
+	 * are not scheduled here, but when released (see
+	 * {@link Agent#scheduleNextWakeUp()}).
 	 */
 	private void startMovingAgents() {
+		if (Pars.parallelStepping) {
+			agentsStepper = new AgentsStepper(this);
+			schedule.scheduleRepeating(agentsStepper);
+		}
+
 		for (Agent agent : agentsList) {
-			Stoppable stop = schedule.scheduleRepeating(agent);
-			agent.setStoppable(stop);
-			schedule.scheduleRepeating(agents.scheduleSpatialIndexUpdater(), Integer.MAX_VALUE, 1.0);
+			if (Pars.parallelStepping || isEventDriven()) {
+				agent.setStoppable(() -> {
+				}); // removal from agentsList is enough to stop stepping it
+			} else {
+				Stoppable stop = schedule.scheduleRepeating(agent);
+				agent.setStoppable(stop);
+			}
+		}
+		Steppable indexUpdater = agents.scheduleSpatialIndexUpdater();
+		spatialIndexUpdater = simState -> {
+			if (isAnalyticMovement()) {
+				// walking agents' locations are only interpolated on demand
+				refreshWalkingAgentsPositions();
+			}
+			indexUpdater.step(simState);
+		};
+		if (!isEventDriven()) {
+			// in event-driven mode, the index is refreshed at each wake-up instead
+			schedule.scheduleRepeating(spatialIndexUpdater, Integer.MAX_VALUE, 1.0);
 		}
 		agents.setMBR(MBR);
 	}
 
+	/**
+	 * Interpolates the position of the walking agents at the current step, when
+	 * they move analytically, so that the agents' layer (its spatial index and
+	 * whatever draws or exports it) does not see them at the point where they
+	 * entered their current edge.
+	 */
+	public void refreshWalkingAgentsPositions() {
+		for (Agent agent : agentsWalking) {
+			agent.getCurrentPosition();
+		}
+	}
+
+	/**
+	 * Schedules, in event-driven mode, a wake-up of the simulation at the given
+	 * step, so that the engine regains control then even if no agent is scheduled.
+	 * The agents' positions and spatial index are refreshed at each wake-up.
+	 *
+	 * @param steps The step at which the simulation should wake up.
+	 */
+	public void scheduleWakeUp(double steps) {
+		schedule.scheduleOnce(toScheduleTime(steps), Integer.MAX_VALUE, spatialIndexUpdater);
+	}
+
+	/**
+	 * Converts a simulation step into the schedule time at which an event for that
+	 * step must be scheduled. The schedule time lags one behind the step count and
+	 * restarts from zero when a job is resumed from a checkpoint.
+	 *
+	 * @param steps The simulation step.
+	 * @return The schedule time.
+	 */
+	public double toScheduleTime(double steps) {
+		return steps - 1.0 - stepsOffset;
+	}
+
+	/**
+	 * Sets the steps simulated before this run, when resuming from a checkpoint, so
+	 * that {@link #getCurrentSteps()} continues after the checkpointed step.
+	 *
+	 * @param stepsOffset The steps already simulated.
+	 */
+	void setStepsOffset(double stepsOffset) {
+		this.stepsOffset = stepsOffset;
+	}
+
+	/**
+	 * Checks whether agents are scheduled only at their next event rather than at
+	 * every step. Event-driven scheduling does not apply when agents are stepped in
+	 * parallel.
+	 *
+	 * @return true if agents are scheduled event by event, false otherwise.
+	 */
+	public boolean isEventDriven() {
+		return Pars.eventDrivenScheduling && !Pars.parallelStepping;
+	}
+
+	/**
+	 * Checks whether walking agents are moved analytically, edge by edge, rather
+	 * than step by step. This requires event-driven scheduling.
+	 *
+	 * @return true if movement is analytic, false otherwise.
+	 */
+	public boolean isAnalyticMovement() {
+		return isEventDriven() && Pars.analyticMovement;
+	}
+
+	/**
+	 * Returns the current simulation step. In event-driven mode the schedule may
+	 * skip steps without events, so the step is derived from the schedule time
+	 * rather than from the number of schedule iterations.
+	 *
+	 * @return The current step.
+	 */
+	public double getCurrentSteps() {
+		if (isEventDriven()) {
+			return schedule.getTime() + 1.0 + stepsOffset;
+		}
+		return schedule.getSteps() + stepsOffset;
+	}
+
+	/**
+	 * Creates the random stream of an agent serving the given purpose. Streams
+	 * depend only on the job seed, the agent and the purpose, so that the job is
+	 * reproducible from its seed regardless of threading.
+	 *
+	 * @param agentID The agent identifier, or -1 for the job-level streams.
+	 * @param stream  The purpose of the stream.
+	 * @return A new random stream.
+	 */
+	public SplitMixRandom createRandomStream(int agentID, RandomStream stream) {
+		return SplitMixRandom.forStream(seed(), agentID, stream);
+	}
+
+	/**
+	 * Returns the job-level random stream serving the given purpose.
+	 *
+	 * @param stream The purpose of the stream.
+	 * @return The random stream.
+	 */
+	public SplitMixRandom getRandom(RandomStream stream) {
+		return randomStreams.get(stream);
+	}
+
+	/**
+	 * Adds the given distance to the meters walked by all agents today.
+	 *
+	 * @param meters The meters walked.
+	 */
+	public void addMetersWalkedToday(double meters) {
+		metersWalkedToday += meters;
+	}
+
+	/**
+	 * Returns the meters walked by all agents today.
+	 *
+	 * @return The meters walked today.
+	 */
+	public double getMetersWalkedToday() {
+		return metersWalkedToday;
+	}
+
+	/**
+	 * Resets the meters walked today, at the beginning of a new day.
+	 */
+	public void resetMetersWalkedToday() {
+		metersWalkedToday = 0.0;
+	}
+
+	/**
+	 * Counts a trip planned by an agent of this job.
+	 */
+	public void countTripPlanned() {
+		tripsPlanned.increment();
+	}
+
+	/**
+	 * Returns the number of trips planned by the agents of this job so far.
+	 *
+	 * @return The trips planned.
+	 */
+	public long getTripsPlanned() {
+		return tripsPlanned.sum();
+	}
+
+	/**
+	 * Registers an agent entering the given edge in this job.
+	 *
+	 * @param edge The edge the agent is entering.
+	 */
+	public void incrementAgentCount(EdgeGraph edge) {
+		edgeAgentCounts.get(edge.getID()).incrementAndGet();
+	}
+
+	/**
+	 * Registers an agent leaving the given edge in this job.
+	 *
+	 * @param edge The edge the agent is leaving.
+	 */
+	public void decrementAgentCount(EdgeGraph edge) {
+		edgeAgentCounts.get(edge.getID()).decrementAndGet();
+	}
+
+	/**
+	 * Returns the number of agents currently walking along the given edge in this
+	 * job.
+	 *
+	 * @param edge The edge.
+	 * @return The number of agents on the edge.
+	 */
+	public int getAgentCount(EdgeGraph edge) {
+		AtomicInteger count = edgeAgentCounts.get(edge.getID());
+		return count == null ? 0 : count.get();
+	}
+
 	// ---------------------------------------------------
 	// Shared simulation core (used by GUI + headless)
 	// ---------------------------------------------------
 	/**
 	 * Completes the simulation by saving results and performing cleanup operations.
+	 * The engine closes the exports of a job before finishing it, so that export
+	 * failures fail the job; the exports still pending when the simulation is
+	 * finished otherwise are written here, and their failures only logged.
 	 */
 	@Override
 	public void finish() {
 		super.finish();
+		try {
+			flowHandler.closeExports();
+		} catch (Exception e) {
+			LoggerUtil.getLogger().severe("Job " + currentJob + " | exports failed: " + e.getMessage());
+		}
+		if (planningPool != null) {
+			planningPool.shutdown();
+		}
+		if (planningRecorder != null) {
+			planningRecorder.close();
+		}
 	}
 
 	/**
 	 * Runs the full simulation once all parameters are set.
 	 */
 	public static void runSimulation() throws Exception {
-		// Parse args with ParameterManager
+
+		prepareCity();
+		if (Pars.resume != null) {
+			LoggerUtil.getLogger().info("Resuming job from checkpoint " + Pars.resume);
+			new Engine().resumeJob(Paths.get(Pars.resume));
+		} else {
+			runJobs();
+		}
+		LoggerUtil.getLogger().info("Simulation finished.");
+	}
+
+	/**
+	 * Imports the city and prepares the shared city model, once for all the jobs
+	 * (and all the points of a batch, or all the benchmarks of a fork).
+	 *
+	 * @throws Exception If the city cannot be imported.
+	 */
+	public static void prepareCity() throws Exception {
 
 		Pars.setSimulationParameters();
 		Import importer = new Import();
@@ -174,15 +453,149 @@ public class PedSimCity extends SimState {
 		LoggerUtil.getLogger().info("Running ABM with " + Pars.numAgents + " agents for "
 				+ StringEnum.Learner.values().length + " scenarios.");
 
-		Environment.prepare();
+		Environment.prepare(importer.getCityBundle());
+		prepareEnvironment();
+		importer.compileCityBundle();
 		LoggerUtil.getLogger().info("Environment prepared. Starting simulation...");
+	}
 
-		Engine engine = new Engine();
+	/**
+	 * Runs the {@code Pars.jobs} jobs on the shared city model. Each job gets its
+	 * own {@link Engine} and {@link PedSimCity} context; up to
+	 * {@code Pars.maxConcurrentJobs} jobs are executed concurrently. With
+	 * {@code Pars.adaptiveJobs}, {@code Pars.jobs} is the maximum number of jobs
+	 * (see {@link #runAdaptiveJobs()}).
+	 *
+	 * @throws Exception If any of the jobs fails.
+	 */
+	static void runJobs() throws Exception {
+		if (Pars.adaptiveJobs) {
+			runAdaptiveJobs();
+			return;
+		}
+		List<Integer> jobs = new ArrayList<>();
 		for (int jobNr = 0; jobNr < Pars.jobs; jobNr++) {
-			LoggerUtil.getLogger().info("Executing Job: " + jobNr);
-			engine.executeJob(jobNr);
+			jobs.add(jobNr);
 		}
-		LoggerUtil.getLogger().info("Simulation finished.");
+		runJobs(jobs);
+	}
+
+	/**
+	 * Runs the given jobs on the shared city model, up to
+	 * {@code Pars.maxConcurrentJobs} at a time. With
+	 * {@code Pars.ensembleStatistics}, their daily volumes are aggregated into a
+	 * summary file, written as the jobs complete each day.
+	 *
+	 * @param jobs The job numbers.
+	 * @throws Exception If any of the jobs fails.
+	 */
+	static void runJobs(List<Integer> jobs) throws Exception {
+
+		int threads = Math.max(1, Math.min(jobs.size(), Pars.maxConcurrentJobs));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		ensembleStatistics = Pars.ensembleStatistics
+				? new EnsembleStatistics(jobs.size(), edgesMap.keySet())
+				: null;
+		try {
+			for (int job : jobs) {
+				futures.add(executor.submit(() -> {
+					LoggerUtil.getLogger().info("Executing Job: " + job);
+					new Engine().executeJob(job);
+					return null;
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				futures.get(i).get();
+				if (ensembleStatistics != null) {
+					ensembleStatistics.completeJob(jobs.get(i));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			if (ensembleStatistics != null) {
+				ensembleStatistics.close();
+				ensembleStatistics = null;
+			}
+		}
+		LoggerUtil.getLogger().info(ExecutionPolicy.collectMetrics());
+		PhaseTimings.writeReport();
+	}
+
+	/**
+	 * Runs jobs until the ensemble has converged: once at least
+	 * {@code Pars.minJobs} jobs have completed, no new job is launched when, for
+	 * {@code Pars.convergedEdgesShare} of the walked edges, the 95% confidence
+	 * interval half-width of the volumes over the run is within
+	 * {@code Pars.targetRelativeCI} of their mean. Jobs already running are
+	 * completed and included. At most {@code Pars.jobs} jobs are run. Jobs are
+	 * seeded from {@code Pars.seed} and added to the statistics in job order, so
+	 * that the number of jobs needed can be reproduced.
+	 *
+	 * @throws Exception If any of the jobs fails.
+	 */
+	static void runAdaptiveJobs() throws Exception {
+
+		int threads = Math.max(1, Math.min(Pars.jobs, Pars.maxConcurrentJobs));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+		EnsembleStatistics statistics = new EnsembleStatistics(0, edgesMap.keySet());
+		ensembleStatistics = statistics;
+		int launched = 0;
+		int running = 0;
+		int jobsNeeded = -1;
+		try {
+			while (launched < Math.min(threads, Pars.jobs)) {
+				submitJob(completionService, launched++);
+				running++;
+			}
+			Set<Integer> finished = new HashSet<>();
+			int nextJob = 0;
+			while (running > 0) {
+				finished.add(completionService.take().get());
+				running--;
+				// jobs are added in job order, whatever order they finish in, so that the
+				// number of jobs needed depends on the base seed only
+				while (finished.remove(nextJob)) {
+					statistics.completeJob(nextJob++);
+					if (jobsNeeded >= 0) {
+						continue;
+					}
+					double convergedShare = statistics.getConvergedShare(Pars.targetRelativeCI);
+					LoggerUtil.getLogger().info("Adaptive ensemble | " + statistics.getCompletedJobs()
+							+ " jobs completed, " + String.format("%.1f", convergedShare * 100)
+							+ "% of the edges converged");
+					if (statistics.getCompletedJobs() >= Pars.minJobs
+							&& convergedShare >= Pars.convergedEdgesShare) {
+						jobsNeeded = statistics.getCompletedJobs();
+					}
+				}
+				while (jobsNeeded < 0 && launched < Pars.jobs && running < threads) {
+					submitJob(completionService, launched++);
+					running++;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			statistics.close();
+			ensembleStatistics = null;
+		}
+		PhaseTimings.writeReport();
+		if (jobsNeeded > 0) {
+			LoggerUtil.getLogger().info("Adaptive ensemble | converged after " + jobsNeeded + " jobs ("
+					+ statistics.getCompletedJobs() + " run, base seed " + Pars.seed + ").");
+		} else {
+			LoggerUtil.getLogger().warning("Adaptive ensemble | not converged after " + launched
+					+ " jobs (base seed " + Pars.seed + ").");
+		}
+	}
+
+	private static void submitJob(CompletionService<Integer> completionService, int job) {
+		completionService.submit(() -> {
+			LoggerUtil.getLogger().info("Executing Job: " + job);
+			new Engine().executeJob(job);
+			return job;
+		});
 	}
 
 	/**
@@ -194,6 +607,17 @@ public class PedSimCity extends SimState {
 	 */
 	public static void main(String[] args) throws Exception {
 		// 1. Parse + apply all parameters
-		runSimulation(); // local run, with whatever local defaults/logging you need
+		ParameterManager.initFromArgs(args);
+		if (Pars.queue != null && Pars.worker) {
+			WorkQueue.runWorker(Paths.get(Pars.queue));
+		} else if (Pars.queue != null) {
+			WorkQueue.coordinate(Paths.get(Pars.queue));
+		} else if (Pars.branches != null) {
+			BranchRunner.run(Paths.get(Pars.branches), args);
+		} else if (Pars.batch != null) {
+			BatchRunner.run(Paths.get(Pars.batch), args);
+		} else {
+			runSimulation(); // local run, with whatever local defaults/logging you need
+		}
 	}
 }
@@ -0,0 +1,233 @@
+package pedsim.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+import pedsim.parameters.Pars;
+import pedsim.utilities.LoggerUtil;
+
+/**
+ * The PhaseTimings class measures the wall time spent in the phases of the simulation loop (route
+ * planning by heuristic, learning, route properties, walking, release, exports) and their latency
+ * distribution, in log-linear histograms with a relative precision of about 3%. Phases are timed
+ * with:
+ *
+ * <pre>
+ * long start = PhaseTimings.start();
+ * ...
+ * PhaseTimings.stop(Phase.WALKING, start);
+ * </pre>
+ *
+ * When {@code Pars.phaseTimings} is not set, {@link #start()} returns 0 without reading the clock
+ * and {@link #stop(Phase, long)} returns at once. The timings of all the jobs of a run are
+ * aggregated; they are logged by the first job completing each simulated day, covering all the jobs
+ * since the previous report, as concurrent jobs need not be on the same day, and written as JSON
+ * at the end of the run.
+ */
+public class PhaseTimings {
+
+  /**
+   * The phases timed.
+   */
+  public enum Phase {
+    PLAN_ROAD_DISTANCE, PLAN_ANGULAR_CHANGE, PLAN_REGIONS, PLAN_BARRIERS, PLAN_LOCAL_LANDMARKS,
+    PLAN_GLOBAL_LANDMARKS, LEARNING, ROUTE_PROPERTIES, WALKING, RELEASE, EXPORT
+  }
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  // 2^SUB_BUCKET_BITS sub-buckets per power of two
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private static final Map<Phase, Histogram> runHistograms = new EnumMap<>(Phase.class);
+  private static final Map<Phase, Histogram> dayHistograms = new EnumMap<>(Phase.class);
+  private static final AtomicInteger lastReportedDay = new AtomicInteger();
+
+  static {
+    for (Phase phase : Phase.values()) {
+      runHistograms.put(phase, new Histogram());
+      dayHistograms.put(phase, new Histogram());
+    }
+  }
+
+  private PhaseTimings() {}
+
+  /**
+   * A latency histogram with log-linear buckets: values are grouped by power of two, each divided
+   * into {@code SUB_BUCKETS} linear sub-buckets.
+   */
+  private static class Histogram {
+    final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong totalNanos = new AtomicLong();
+    final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+      counts.incrementAndGet(bucketIndex(nanos));
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns the value at the given percentile, as the upper bound of its bucket.
+     */
+    long percentile(double percentile) {
+      long total = count.get();
+      if (total == 0) {
+        return 0L;
+      }
+      long rank = (long) Math.ceil(percentile / 100.0 * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += counts.get(i);
+        if (seen >= Math.max(1, rank)) {
+          return Math.min(bucketUpperBound(i), maxNanos.get());
+        }
+      }
+      return maxNanos.get();
+    }
+
+    void reset() {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts.set(i, 0L);
+      }
+      count.set(0L);
+      totalNanos.set(0L);
+      maxNanos.set(0L);
+    }
+  }
+
+  private static int bucketIndex(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) Math.max(0, nanos);
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+    int subBucket = (int) (nanos >>> shift) - SUB_BUCKETS;
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long bucketUpperBound(int index) {
+    int magnitude = index / SUB_BUCKETS;
+    int subBucket = index % SUB_BUCKETS;
+    if (magnitude == 0) {
+      return subBucket;
+    }
+    return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - 1)) - 1;
+  }
+
+  /**
+   * Starts timing a phase.
+   *
+   * @return The start time, or 0 when timings are disabled.
+   */
+  public static long start() {
+    return Pars.phaseTimings ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Stops timing a phase started with {@link #start()}.
+   *
+   * @param phase The phase.
+   * @param start The start time returned by {@link #start()}.
+   */
+  public static void stop(Phase phase, long start) {
+    if (start == 0L) {
+      return;
+    }
+    long nanos = System.nanoTime() - start;
+    runHistograms.get(phase).record(nanos);
+    dayHistograms.get(phase).record(nanos);
+  }
+
+  /**
+   * Logs the timings of all the jobs since the previous report, if no other job has already
+   * completed the given day, and starts the next report's.
+   *
+   * @param day The simulated day just completed, from 1 onwards.
+   */
+  static void reportDay(int day) {
+    if (!Pars.phaseTimings || lastReportedDay.getAndAccumulate(day, Math::max) >= day) {
+      return;
+    }
+    StringBuilder report =
+        new StringBuilder("Timings since the previous report, at the end of day nr " + day + " |");
+    for (Phase phase : Phase.values()) {
+      Histogram histogram = dayHistograms.get(phase);
+      if (histogram.count.get() > 0) {
+        report.append(String.format(" %s: %d, %.1f s, p50 %.3f ms, p99 %.3f ms;",
+            phase.toString().toLowerCase(), histogram.count.get(), histogram.totalNanos.get() / 1e9,
+            histogram.percentile(50) / 1e6, histogram.percentile(99) / 1e6));
+      }
+      histogram.reset();
+    }
+    logger.info(report.toString());
+  }
+
+  /**
+   * Writes the timings of the run as JSON to the {@code timings} output folder and resets them.
+   */
+  static void writeReport() {
+
+    if (!Pars.phaseTimings) {
+      return;
+    }
+    String currentDate = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+    Path file =
+        Paths.get(Exporter.getOutputRoot() + File.separator + "timings", currentDate + ".json");
+    try {
+      Files.createDirectories(file.getParent());
+      try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+        writer.write("{\n");
+        Phase[] phases = Phase.values();
+        for (int p = 0; p < phases.length; p++) {
+          writePhase(writer, phases[p], runHistograms.get(phases[p]));
+          writer.write(p < phases.length - 1 ? ",\n" : "\n");
+        }
+        writer.write("}\n");
+      }
+      logger.info("Timings written to " + file);
+    } catch (IOException e) {
+      logger.warning("Timings not written: " + e.getMessage());
+    }
+    for (Phase phase : Phase.values()) {
+      runHistograms.get(phase).reset();
+      dayHistograms.get(phase).reset();
+    }
+    lastReportedDay.set(0);
+  }
+
+  private static void writePhase(BufferedWriter writer, Phase phase, Histogram histogram)
+      throws IOException {
+
+    long count = histogram.count.get();
+    writer.write(String.format(
+        "  \"%s\": {\"count\": %d, \"totalMs\": %.3f, \"meanUs\": %.3f, \"p50Us\": %.3f, "
+            + "\"p90Us\": %.3f, \"p99Us\": %.3f, \"maxUs\": %.3f, \"histogramNs\": {",
+        phase.toString().toLowerCase(), count, histogram.totalNanos.get() / 1e6,
+        count > 0 ? histogram.totalNanos.get() / 1e3 / count : 0.0,
+        histogram.percentile(50) / 1e3, histogram.percentile(90) / 1e3,
+        histogram.percentile(99) / 1e3, histogram.maxNanos.get() / 1e3));
+    boolean first = true;
+    for (int i = 0; i < BUCKETS; i++) {
+      long bucketCount = histogram.counts.get(i);
+      if (bucketCount > 0) {
+        writer.write((first ? "" : ", ") + "\"" + bucketUpperBound(i) + "\": " + bucketCount);
+        first = false;
+      }
+    }
+    writer.write("}}");
+  }
+}
@@ -1,8 +1,8 @@
 package pedsim.engine;
 
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 import pedsim.agents.Agent;
+import pedsim.engine.ExecutionPolicy.Pool;
 import pedsim.parameters.Pars;
 import pedsim.utilities.LoggerUtil;
 import pedsim.utilities.StringEnum.Learner;
@@ -29,7 +29,7 @@ public class Populate {
     // Create agents with parameter true
     int totalAgents = Pars.numAgents;
     logger.info("Creating " + totalAgents + " Agents. Building Their Cognitive Maps");
-    IntStream.range(0, totalAgents).parallel().forEach(agentID -> {
+    ExecutionPolicy.forEachIndex(Pool.SETUP, totalAgents, agentID -> {
       addAgent(agentID); // Must be thread-safe!
     });
 
@@ -47,10 +47,21 @@ public class Populate {
    */
   private void addAgent(int agentID) {
 
-    Agent agent = new Agent(this.state);
-    agent.agentID = agentID;
-    agent.learner = (agentID % 2 == 0) ? Learner.LEARNER : Learner.NOT_LEARNER;
+    Agent agent = new Agent(this.state, agentID);
+    agent.learner = isLearner(agentID) ? Learner.LEARNER : Learner.NOT_LEARNER;
     state.agentsList.add(agent);
     agent.updateAgentLists(false, true);
   }
+
+  /**
+   * Checks whether the agent is a learner. The {@code Pars.learnerShare} of the agents are
+   * learners, spread evenly over the agent IDs; with the default share of 0.5, agents with even IDs
+   * are.
+   *
+   * @param agentID The identifier of the agent.
+   * @return true if the agent is a learner, false otherwise.
+   */
+  static boolean isLearner(int agentID) {
+    return Math.ceil((agentID + 1) * Pars.learnerShare) > Math.ceil(agentID * Pars.learnerShare);
+  }
 }
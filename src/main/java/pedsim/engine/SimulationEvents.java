@@ -0,0 +1,189 @@
+package pedsim.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import pedsim.agents.AgentProperties;
+
+/**
+ * The SimulationEvents class defines the Java Flight Recorder events emitted by the model, so that
+ * a recording of a run (e.g. {@code -XX:StartFlightRecording=filename=run.jfr}) shows trips, path
+ * searches, learning and exports next to the JVM's own GC, allocation and thread events. Events
+ * are created and timed as:
+ *
+ * <pre>
+ * SimulationEvents.PathSearch event = new SimulationEvents.PathSearch();
+ * event.begin();
+ * ...
+ * event.end();
+ * if (event.shouldCommit()) {
+ *   event.nodesSettled = ...;
+ *   event.commit();
+ * }
+ * </pre>
+ *
+ * When no recording is running, or an event type is disabled in its settings, the events cost no
+ * more than an allocation that the JIT eliminates, and their fields are not filled.
+ */
+public class SimulationEvents {
+
+  private static final String CATEGORY = "PedSimCity";
+
+  private SimulationEvents() {}
+
+  /**
+   * An agent starting a trip, once its origin and destination are defined.
+   */
+  @Name("pedsim.TripStart")
+  @Label("Trip Start")
+  @Category({CATEGORY, "Trips"})
+  @StackTrace(false)
+  public static class TripStart extends Event {
+    @Label("Job")
+    public int job;
+    @Label("Agent")
+    public int agentID;
+    @Label("Origin Node")
+    public int originNode;
+    @Label("Destination Node")
+    public int destinationNode;
+  }
+
+  /**
+   * An agent reaching the destination of a trip, with the route choice heuristics it used.
+   */
+  @Name("pedsim.TripEnd")
+  @Label("Trip End")
+  @Category({CATEGORY, "Trips"})
+  @StackTrace(false)
+  public static class TripEnd extends Event {
+    @Label("Job")
+    public int job;
+    @Label("Agent")
+    public int agentID;
+    @Label("Origin Node")
+    public int originNode;
+    @Label("Destination Node")
+    public int destinationNode;
+    @Label("Route Length")
+    @Description("Length of the route walked, in metres")
+    public double routeLength;
+    @Label("Route Edges")
+    public int routeEdges;
+    @Label("Minimising Distance")
+    public boolean minimisingDistance;
+    @Label("Minimising Angular Change")
+    public boolean minimisingAngular;
+    @Label("Local Heuristic Distance")
+    public boolean localHeuristicDistance;
+    @Label("Local Heuristic Angular")
+    public boolean localHeuristicAngular;
+    @Label("Local Landmarks")
+    public boolean usingLocalLandmarks;
+    @Label("Distant Landmarks")
+    public boolean usingDistantLandmarks;
+    @Label("Regions")
+    public boolean regionBasedNavigation;
+    @Label("Barriers")
+    public boolean barrierBasedNavigation;
+
+    /**
+     * Copies the route choice heuristics of the agent.
+     *
+     * @param properties The agent's properties.
+     */
+    public void setHeuristics(AgentProperties properties) {
+      minimisingDistance = properties.minimisingDistance;
+      minimisingAngular = properties.minimisingAngular;
+      localHeuristicDistance = properties.localHeuristicDistance;
+      localHeuristicAngular = properties.localHeuristicAngular;
+      usingLocalLandmarks = properties.usingLocalLandmarks;
+      usingDistantLandmarks = properties.usingDistantLandmarks;
+      regionBasedNavigation = properties.regionBasedNavigation;
+      barrierBasedNavigation = properties.barrierBasedNavigation;
+    }
+  }
+
+  /**
+   * A single Dijkstra search, on the agent's network or on a region's subgraph.
+   */
+  @Name("pedsim.PathSearch")
+  @Label("Path Search")
+  @Category({CATEGORY, "Route Planning"})
+  @StackTrace(false)
+  public static class PathSearch extends Event {
+    @Label("Variant")
+    @Description("roadDistance, angularChange or globalLandmarks")
+    public String variant;
+    @Label("Agent")
+    public int agentID;
+    @Label("Nodes Settled")
+    public int nodesSettled;
+    @Label("Path Edges")
+    @Description("Edges of the path found, 0 when there is none")
+    public int pathEdges;
+    @Label("Region Subgraph")
+    public boolean regional;
+  }
+
+  /**
+   * An update of an agent's cognitive collage from its vividness grid.
+   */
+  @Name("pedsim.CollageUpdate")
+  @Label("Collage Update")
+  @Category({CATEGORY, "Learning"})
+  @StackTrace(false)
+  public static class CollageUpdate extends Event {
+    @Label("Grid Cells")
+    public int cells;
+    @Label("Active Cells")
+    @Description("Cells at or above the vividness threshold")
+    public int activeCells;
+    @Label("Polygons")
+    public int polygons;
+    @Label("Grid Size")
+    @DataAmount
+    public long gridBytes;
+  }
+
+  /**
+   * The readjustment of an agent's known network to its cognitive collage.
+   */
+  @Name("pedsim.CognitiveMapReadjustment")
+  @Label("Cognitive Map Readjustment")
+  @Category({CATEGORY, "Learning"})
+  @StackTrace(false)
+  public static class CognitiveMapReadjustment extends Event {
+    @Label("Agent")
+    public int agentID;
+    @Label("Polygons")
+    public int polygons;
+    @Label("Known Nodes")
+    public int knownNodes;
+    @Label("Known Edges")
+    public int knownEdges;
+  }
+
+  /**
+   * The export of a job's daily data, as written by its export pipeline.
+   */
+  @Name("pedsim.DayExport")
+  @Label("Day Export")
+  @Category({CATEGORY, "Exports"})
+  @StackTrace(false)
+  public static class DayExport extends Event {
+    @Label("Job")
+    public int job;
+    @Label("Day")
+    public int day;
+    @Label("Data")
+    @Description("volumes or cognitiveMaps")
+    public String data;
+    @Label("Edges")
+    public int edges;
+  }
+}
@@ -0,0 +1,636 @@
+package pedsim.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import pedsim.parameters.ParameterManager;
+import pedsim.parameters.Pars;
+import pedsim.parameters.RouteChoicePars;
+import pedsim.utilities.LoggerUtil;
+import pedsim.utilities.SplitMixRandom;
+import sim.util.geo.MasonGeometry;
+
+/**
+ * The SyntheticCity class generates the input layers of a city of any size, with the schema of the
+ * GeoPackage files read by {@link Import}, so that the engine can be tested and benchmarked on
+ * networks larger than the bundled city:
+ * <ul>
+ * <li>junctions ({@code _nodes}): {@code nodeID}, {@code Bc_multi}, {@code district} and
+ * {@code gateway};</li>
+ * <li>street segments ({@code _edges}): {@code edgeID}, {@code u}, {@code v}, {@code highway},
+ * {@code length}, and the barriers along them as {@code p_barr}, {@code n_barr},
+ * {@code a_rivers} and {@code w_parks};</li>
+ * <li>the dual graph: the segments' centroids, with their {@code edgeID}, and the links between
+ * contiguous segments, with their deflection angle {@code deg};</li>
+ * <li>barriers: {@code barrierID} and {@code type} (road, water, railway or park);</li>
+ * <li>buildings ({@code _landmarks}): {@code buildingID}, {@code land_use}, {@code DMA},
+ * {@code gScore_sc} and {@code lScore_sc}, and the sight lines from the global landmarks to the
+ * junctions around them, with their {@code buildingID} and {@code nodeID}.</li>
+ * </ul>
+ * The streets form a grid of {@code Pars.syntheticBlocksX} x {@code Pars.syntheticBlocksY}
+ * blocks; in the organic topology, the junctions are displaced and some streets removed, keeping
+ * the network connected. Every {@code Pars.syntheticArterialSpacing} rows and columns are primary
+ * roads, which act as severing barriers; rivers and railways cross the city, and some blocks are
+ * parks. The regions are the Voronoi cells of {@code Pars.syntheticRegions} random seeds. The
+ * betweenness centrality is approximated from the position of the junctions in the grid, as
+ * computing it is not affordable on the largest networks.
+ *
+ * The city depends only on the parameters, the seed included. As generating and preparing large
+ * cities takes long, they are best compiled into a city bundle once (see {@link #main(String[])}).
+ */
+public class SyntheticCity {
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  // organic topology: displacement of the junctions, in blocks, and share of the streets removed
+  // among those that do not disconnect the network
+  private static final double ORGANIC_JITTER = 0.4;
+  private static final double ORGANIC_REMOVED_SHARE = 0.2;
+  // rivers and railways are along the streets whose junctions are within this distance, in blocks
+  private static final double BARRIER_DISTANCE = 0.6;
+  private static final int RIVER_VERTICES = 64;
+  private static final double PARK_INSET = 0.05;
+  // share of the block, on each side, left between the streets and the buildings
+  private static final double BUILDING_MARGIN = 0.15;
+  private static final double SIGHT_LINES_RADIUS = 1000.0;
+  private static final int SIGHT_LINES_PER_LANDMARK = 30;
+  private static final Map<String, String> LAND_USES =
+      Map.of("live", "residential", "work", "commercial", "visit", "leisure");
+
+  private final int blocksX;
+  private final int blocksY;
+  private final double blockSize;
+  private final boolean organic;
+  private final SplitMixRandom random;
+
+  // junctions by grid position, at index i * (blocksY + 1) + j
+  private Coordinate[] junctions;
+  private int[] districts;
+  private double[] centralities;
+  private final List<Street> streets = new ArrayList<>();
+  private final Map<Long, Street> streetsByJunctions = new HashMap<>();
+  private final List<List<Street>> incidentStreets = new ArrayList<>();
+  // blocks by grid position, at index i * blocksY + j
+  private boolean[] parkBlocks;
+  private int nextBarrierID = 1;
+
+  /**
+   * A street segment between two junctions adjacent in the grid.
+   */
+  private static class Street {
+    final int from;
+    final int to;
+    final boolean horizontal;
+    // the row of a horizontal street, the column of a vertical one
+    final int line;
+    int edgeID;
+    final List<Integer> positiveBarriers = new ArrayList<>();
+    final List<Integer> negativeBarriers = new ArrayList<>();
+    final List<Integer> rivers = new ArrayList<>();
+    final List<Integer> parks = new ArrayList<>();
+
+    Street(int from, int to, boolean horizontal, int line) {
+      this.from = from;
+      this.to = to;
+      this.horizontal = horizontal;
+      this.line = line;
+    }
+  }
+
+  /**
+   * Creates the generator of the synthetic city described by the {@code Pars.synthetic*}
+   * parameters.
+   */
+  public SyntheticCity() {
+    blocksX = Math.max(1, Pars.syntheticBlocksX);
+    blocksY = Math.max(1, Pars.syntheticBlocksY);
+    blockSize = Pars.syntheticBlockSize;
+    if (!Pars.syntheticTopology.equalsIgnoreCase("grid")
+        && !Pars.syntheticTopology.equalsIgnoreCase("organic")) {
+      throw new IllegalArgumentException("Unknown synthetic topology: " + Pars.syntheticTopology);
+    }
+    organic = Pars.syntheticTopology.equalsIgnoreCase("organic");
+    random = new SplitMixRandom(Pars.syntheticSeed);
+  }
+
+  /**
+   * Returns the parameters the synthetic city depends on, as a string, for the checksum of its
+   * city bundle.
+   *
+   * @return The specification of the synthetic city.
+   */
+  static String specification() {
+    return String.join("|", Pars.syntheticTopology.toLowerCase(),
+        String.valueOf(Pars.syntheticBlocksX), String.valueOf(Pars.syntheticBlocksY),
+        String.valueOf(Pars.syntheticBlockSize), String.valueOf(Pars.syntheticRegions),
+        String.valueOf(Pars.syntheticArterialSpacing), String.valueOf(Pars.syntheticRivers),
+        String.valueOf(Pars.syntheticRailways), String.valueOf(Pars.syntheticParkShare),
+        String.valueOf(Pars.syntheticBuildingsPerBlock),
+        String.valueOf(Pars.syntheticLandmarkShare), String.valueOf(Pars.syntheticSeed),
+        String.valueOf(RouteChoicePars.globalLandmarkThresholdCommunity));
+  }
+
+  /**
+   * Returns the name of the city bundle of the synthetic city, which is named after its topology
+   * and size rather than {@code Pars.cityName}.
+   *
+   * @return The bundle name.
+   */
+  static String bundleName() {
+    return "synthetic_" + Pars.syntheticTopology.toLowerCase() + "_" + Pars.syntheticBlocksX + "x"
+        + Pars.syntheticBlocksY;
+  }
+
+  /**
+   * Generates the layers of the city into the layers of {@link PedSimCity}, as
+   * {@link Import#importFiles()} would read them.
+   */
+  public void generate() {
+
+    generateJunctions();
+    generateStreets();
+    assignDistricts();
+    computeCentralities();
+    generateBarriers();
+    addJunctions();
+    addStreets();
+    addDualGraph();
+    addBuildings();
+    logger.info(String.format(
+        "Synthetic city generated: %d junctions, %d streets, %d barriers, %d buildings, "
+            + "%d sight lines.",
+        junctions.length, streets.size(), nextBarrierID - 1,
+        PedSimCity.buildings.getGeometries().size(),
+        PedSimCity.sightLines.getGeometries().size()));
+  }
+
+  private int index(int i, int j) {
+    return i * (blocksY + 1) + j;
+  }
+
+  private void generateJunctions() {
+    junctions = new Coordinate[(blocksX + 1) * (blocksY + 1)];
+    double jitter = organic ? ORGANIC_JITTER * blockSize : 0.0;
+    for (int i = 0; i <= blocksX; i++) {
+      for (int j = 0; j <= blocksY; j++) {
+        double x = i * blockSize + (random.nextDouble() - 0.5) * jitter;
+        double y = j * blockSize + (random.nextDouble() - 0.5) * jitter;
+        junctions[index(i, j)] = new Coordinate(x, y);
+      }
+    }
+  }
+
+  /**
+   * Generates the streets between adjacent junctions. In the organic topology, the streets of a
+   * random spanning tree and the primary roads are kept, the others are removed at random.
+   */
+  private void generateStreets() {
+
+    List<Street> candidates = new ArrayList<>();
+    for (int i = 0; i <= blocksX; i++) {
+      for (int j = 0; j <= blocksY; j++) {
+        if (i < blocksX) {
+          candidates.add(new Street(index(i, j), index(i + 1, j), true, j));
+        }
+        if (j < blocksY) {
+          candidates.add(new Street(index(i, j), index(i, j + 1), false, i));
+        }
+      }
+    }
+    if (organic) {
+      Collections.shuffle(candidates, random);
+      int[] parents = new int[junctions.length];
+      for (int node = 0; node < parents.length; node++) {
+        parents[node] = node;
+      }
+      for (Street street : candidates) {
+        int fromRoot = find(parents, street.from);
+        int toRoot = find(parents, street.to);
+        if (fromRoot != toRoot) {
+          parents[fromRoot] = toRoot;
+          streets.add(street);
+        } else if (highway(street).equals("primary")
+            || random.nextDouble() >= ORGANIC_REMOVED_SHARE) {
+          streets.add(street);
+        }
+      }
+      streets.sort(Comparator.comparingInt((Street street) -> street.from)
+          .thenComparingInt(street -> street.to));
+    } else {
+      streets.addAll(candidates);
+    }
+
+    for (int node = 0; node < junctions.length; node++) {
+      incidentStreets.add(new ArrayList<>(4));
+    }
+    for (int edgeID = 0; edgeID < streets.size(); edgeID++) {
+      Street street = streets.get(edgeID);
+      street.edgeID = edgeID;
+      streetsByJunctions.put((long) street.from * junctions.length + street.to, street);
+      incidentStreets.get(street.from).add(street);
+      incidentStreets.get(street.to).add(street);
+    }
+  }
+
+  private static int find(int[] parents, int node) {
+    while (parents[node] != node) {
+      parents[node] = parents[parents[node]];
+      node = parents[node];
+    }
+    return node;
+  }
+
+  private String highway(Street street) {
+    int spacing = Pars.syntheticArterialSpacing;
+    if (spacing > 0 && street.line % spacing == 0) {
+      return "primary";
+    }
+    if (spacing > 1 && street.line % (spacing / 2) == 0) {
+      return "secondary";
+    }
+    return "residential";
+  }
+
+  /**
+   * Assigns each junction to the region of its closest seed. Regions are numbered from 1.
+   */
+  private void assignDistricts() {
+
+    Coordinate[] seeds = new Coordinate[Math.max(1, Pars.syntheticRegions)];
+    for (int region = 0; region < seeds.length; region++) {
+      seeds[region] = new Coordinate(random.nextDouble() * blocksX * blockSize,
+          random.nextDouble() * blocksY * blockSize);
+    }
+    districts = new int[junctions.length];
+    for (int node = 0; node < junctions.length; node++) {
+      double lowestDistance = Double.MAX_VALUE;
+      for (int region = 0; region < seeds.length; region++) {
+        double distance = junctions[node].distance(seeds[region]);
+        if (distance < lowestDistance) {
+          lowestDistance = distance;
+          districts[node] = region + 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Approximates the betweenness centrality of the junctions: on a grid, it peaks at the centre and
+   * vanishes at the border; junctions on primary roads are raised, as routes concentrate on them.
+   */
+  private void computeCentralities() {
+
+    centralities = new double[junctions.length];
+    double highest = 0.0;
+    int spacing = Pars.syntheticArterialSpacing;
+    for (int i = 0; i <= blocksX; i++) {
+      for (int j = 0; j <= blocksY; j++) {
+        double x = (double) i / blocksX;
+        double y = (double) j / blocksY;
+        double centrality = 0.05 + 16.0 * x * (1.0 - x) * y * (1.0 - y);
+        if (spacing > 0 && (i % spacing == 0 || j % spacing == 0)) {
+          centrality *= 1.5;
+        }
+        centralities[index(i, j)] = centrality;
+        highest = Math.max(highest, centrality);
+      }
+    }
+    for (int node = 0; node < centralities.length; node++) {
+      centralities[node] /= highest;
+    }
+  }
+
+  private void generateBarriers() {
+
+    double width = blocksX * blockSize;
+    double height = blocksY * blockSize;
+    int spacing = Pars.syntheticArterialSpacing;
+    if (spacing > 0) {
+      for (int j = spacing; j < blocksY; j += spacing) {
+        Coordinate[] coordinates = new Coordinate[blocksX + 1];
+        for (int i = 0; i <= blocksX; i++) {
+          coordinates[i] = junctions[index(i, j)];
+        }
+        attachToLine(addBarrier(GEOMETRY_FACTORY.createLineString(coordinates), "road"), true, j);
+      }
+      for (int i = spacing; i < blocksX; i += spacing) {
+        Coordinate[] coordinates = new Coordinate[blocksY + 1];
+        for (int j = 0; j <= blocksY; j++) {
+          coordinates[j] = junctions[index(i, j)];
+        }
+        attachToLine(addBarrier(GEOMETRY_FACTORY.createLineString(coordinates), "road"), false, i);
+      }
+    }
+
+    int rivers = Math.max(0, Pars.syntheticRivers);
+    for (int river = 1; river <= rivers; river++) {
+      double baseY = height * river / (rivers + 1) + blockSize / 2.0;
+      double amplitude = Math.min(height / (2.0 * (rivers + 1)), 3.0 * blockSize);
+      double phase = random.nextDouble() * 2.0 * Math.PI;
+      Coordinate[] coordinates = new Coordinate[RIVER_VERTICES + 1];
+      for (int vertex = 0; vertex <= RIVER_VERTICES; vertex++) {
+        double share = (double) vertex / RIVER_VERTICES;
+        coordinates[vertex] = new Coordinate(-blockSize + (width + 2.0 * blockSize) * share,
+            baseY + amplitude * Math.sin(phase + 3.0 * Math.PI * share));
+      }
+      LineString geometry = GEOMETRY_FACTORY.createLineString(coordinates);
+      int barrierID = addBarrier(geometry, "water");
+      attachAlong(geometry, street -> {
+        street.positiveBarriers.add(barrierID);
+        street.rivers.add(barrierID);
+      });
+    }
+
+    int railways = Math.max(0, Pars.syntheticRailways);
+    for (int railway = 1; railway <= railways; railway++) {
+      double x = width * railway / (railways + 1) + blockSize / 2.0;
+      LineString geometry = GEOMETRY_FACTORY.createLineString(new Coordinate[] {
+          new Coordinate(x, -blockSize), new Coordinate(x, height + blockSize)});
+      int barrierID = addBarrier(geometry, "railway");
+      attachAlong(geometry, street -> street.negativeBarriers.add(barrierID));
+    }
+
+    parkBlocks = new boolean[blocksX * blocksY];
+    for (int i = 0; i < blocksX; i++) {
+      for (int j = 0; j < blocksY; j++) {
+        if (random.nextDouble() >= Pars.syntheticParkShare) {
+          continue;
+        }
+        parkBlocks[i * blocksY + j] = true;
+        int barrierID = addBarrier(blockPolygon(i, j, PARK_INSET), "park");
+        int[][] sides = {{index(i, j), index(i + 1, j)}, {index(i, j + 1), index(i + 1, j + 1)},
+            {index(i, j), index(i, j + 1)}, {index(i + 1, j), index(i + 1, j + 1)}};
+        for (int[] side : sides) {
+          Street street = streetsByJunctions.get((long) side[0] * junctions.length + side[1]);
+          if (street != null) {
+            street.positiveBarriers.add(barrierID);
+            street.parks.add(barrierID);
+          }
+        }
+      }
+    }
+  }
+
+  private int addBarrier(Geometry geometry, String type) {
+    int barrierID = nextBarrierID++;
+    MasonGeometry masonGeometry = new MasonGeometry(geometry);
+    masonGeometry.addAttribute("barrierID", barrierID);
+    masonGeometry.addAttribute("type", type);
+    PedSimCity.barriers.addGeometry(masonGeometry);
+    return barrierID;
+  }
+
+  private void attachToLine(int barrierID, boolean horizontal, int line) {
+    for (Street street : streets) {
+      if (street.horizontal == horizontal && street.line == line) {
+        street.negativeBarriers.add(barrierID);
+      }
+    }
+  }
+
+  /**
+   * Attaches a barrier to the streets along it, those whose junctions are both close to it.
+   *
+   * @param barrier The barrier geometry.
+   * @param attach The action attaching the barrier to a street.
+   */
+  private void attachAlong(Geometry barrier, Consumer<Street> attach) {
+
+    double distance = BARRIER_DISTANCE * blockSize;
+    Envelope envelope = new Envelope(barrier.getEnvelopeInternal());
+    envelope.expandBy(distance);
+    for (Street street : streets) {
+      Coordinate from = junctions[street.from];
+      Coordinate to = junctions[street.to];
+      if (envelope.contains(from) && envelope.contains(to)
+          && barrier.distance(GEOMETRY_FACTORY.createPoint(from)) <= distance
+          && barrier.distance(GEOMETRY_FACTORY.createPoint(to)) <= distance) {
+        attach.accept(street);
+      }
+    }
+  }
+
+  /**
+   * Returns the point at the given relative position within a block, interpolated between its
+   * corner junctions.
+   */
+  private Coordinate withinBlock(int i, int j, double u, double v) {
+    Coordinate bottomLeft = junctions[index(i, j)];
+    Coordinate bottomRight = junctions[index(i + 1, j)];
+    Coordinate topLeft = junctions[index(i, j + 1)];
+    Coordinate topRight = junctions[index(i + 1, j + 1)];
+    return new Coordinate(
+        (1 - u) * (1 - v) * bottomLeft.x + u * (1 - v) * bottomRight.x + (1 - u) * v * topLeft.x
+            + u * v * topRight.x,
+        (1 - u) * (1 - v) * bottomLeft.y + u * (1 - v) * bottomRight.y + (1 - u) * v * topLeft.y
+            + u * v * topRight.y);
+  }
+
+  private Polygon blockPolygon(int i, int j, double inset) {
+    Coordinate first = withinBlock(i, j, inset, inset);
+    return GEOMETRY_FACTORY.createPolygon(new Coordinate[] {first,
+        withinBlock(i, j, 1 - inset, inset), withinBlock(i, j, 1 - inset, 1 - inset),
+        withinBlock(i, j, inset, 1 - inset), new Coordinate(first)});
+  }
+
+  private void addJunctions() {
+    for (int node = 0; node < junctions.length; node++) {
+      boolean gateway = false;
+      for (Street street : incidentStreets.get(node)) {
+        int opposite = street.from == node ? street.to : street.from;
+        gateway |= districts[opposite] != districts[node];
+      }
+      MasonGeometry masonGeometry =
+          new MasonGeometry(GEOMETRY_FACTORY.createPoint(junctions[node]));
+      masonGeometry.addAttribute("nodeID", node);
+      masonGeometry.addAttribute("Bc_multi", centralities[node]);
+      masonGeometry.addAttribute("district", districts[node]);
+      masonGeometry.addAttribute("gateway", gateway ? 1 : 0);
+      PedSimCity.junctions.addGeometry(masonGeometry);
+    }
+  }
+
+  private void addStreets() {
+    for (Street street : streets) {
+      LineString geometry = GEOMETRY_FACTORY
+          .createLineString(new Coordinate[] {junctions[street.from], junctions[street.to]});
+      MasonGeometry masonGeometry = new MasonGeometry(geometry);
+      masonGeometry.addAttribute("edgeID", street.edgeID);
+      masonGeometry.addAttribute("u", street.from);
+      masonGeometry.addAttribute("v", street.to);
+      masonGeometry.addAttribute("highway", highway(street));
+      masonGeometry.addAttribute("length", geometry.getLength());
+      masonGeometry.addAttribute("p_barr", street.positiveBarriers.toString());
+      masonGeometry.addAttribute("n_barr", street.negativeBarriers.toString());
+      masonGeometry.addAttribute("a_rivers", street.rivers.toString());
+      masonGeometry.addAttribute("w_parks", street.parks.toString());
+      PedSimCity.roads.addGeometry(masonGeometry);
+    }
+  }
+
+  private Coordinate centroid(Street street) {
+    Coordinate from = junctions[street.from];
+    Coordinate to = junctions[street.to];
+    return new Coordinate((from.x + to.x) / 2.0, (from.y + to.y) / 2.0);
+  }
+
+  /**
+   * Adds the dual graph: a node at the centroid of each street, and a link between the centroids
+   * of each pair of streets meeting at a junction, with the deflection angle between them.
+   */
+  private void addDualGraph() {
+
+    for (Street street : streets) {
+      MasonGeometry masonGeometry =
+          new MasonGeometry(GEOMETRY_FACTORY.createPoint(centroid(street)));
+      masonGeometry.addAttribute("edgeID", street.edgeID);
+      PedSimCity.centroids.addGeometry(masonGeometry);
+    }
+
+    for (int node = 0; node < junctions.length; node++) {
+      List<Street> incident = incidentStreets.get(node);
+      for (int first = 0; first < incident.size(); first++) {
+        for (int second = first + 1; second < incident.size(); second++) {
+          Street firstStreet = incident.get(first);
+          Street secondStreet = incident.get(second);
+          MasonGeometry masonGeometry = new MasonGeometry(GEOMETRY_FACTORY.createLineString(
+              new Coordinate[] {centroid(firstStreet), centroid(secondStreet)}));
+          masonGeometry.addAttribute("u", firstStreet.edgeID);
+          masonGeometry.addAttribute("v", secondStreet.edgeID);
+          masonGeometry.addAttribute("deg", deflection(node, firstStreet, secondStreet));
+          PedSimCity.intersectionsDual.addGeometry(masonGeometry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the deflection angle, in degrees, of a walker moving from one street to the other at
+   * the given junction: 0 when going straight, 180 when turning back.
+   */
+  private double deflection(int node, Street firstStreet, Street secondStreet) {
+    Coordinate junction = junctions[node];
+    Coordinate first = junctions[firstStreet.from == node ? firstStreet.to : firstStreet.from];
+    Coordinate second = junctions[secondStreet.from == node ? secondStreet.to : secondStreet.from];
+    double firstX = first.x - junction.x;
+    double firstY = first.y - junction.y;
+    double secondX = second.x - junction.x;
+    double secondY = second.y - junction.y;
+    double cosine = (firstX * secondX + firstY * secondY)
+        / (Math.hypot(firstX, firstY) * Math.hypot(secondX, secondY));
+    return 180.0 - Math.toDegrees(Math.acos(Math.max(-1.0, Math.min(1.0, cosine))));
+  }
+
+  /**
+   * Adds the buildings, laid out on a regular pattern within the blocks that are not parks. Uses
+   * are mostly residential at the border and mixed at the centre. A share
+   * {@code Pars.syntheticLandmarkShare} of the buildings are global landmarks, with sight lines to
+   * the junctions around them.
+   */
+  private void addBuildings() {
+
+    int perBlock = Math.max(0, Pars.syntheticBuildingsPerBlock);
+    int cells = (int) Math.ceil(Math.sqrt(perBlock));
+    double threshold = RouteChoicePars.globalLandmarkThresholdCommunity;
+    Coordinate centre = new Coordinate(blocksX * blockSize / 2.0, blocksY * blockSize / 2.0);
+    double radius = Math.hypot(centre.x, centre.y);
+    int buildingID = 1;
+    for (int i = 0; i < blocksX; i++) {
+      for (int j = 0; j < blocksY; j++) {
+        if (parkBlocks[i * blocksY + j]) {
+          continue;
+        }
+        for (int building = 0; building < perBlock; building++) {
+          double u = BUILDING_MARGIN + (1 - 2 * BUILDING_MARGIN) * (building % cells + 0.5) / cells;
+          double v = BUILDING_MARGIN + (1 - 2 * BUILDING_MARGIN) * (building / cells + 0.5) / cells;
+          Coordinate location = withinBlock(i, j, u, v);
+          double half = (1 - 2 * BUILDING_MARGIN) * blockSize / cells
+              * (0.2 + 0.15 * random.nextDouble());
+          Polygon footprint = GEOMETRY_FACTORY.createPolygon(new Coordinate[] {
+              new Coordinate(location.x - half, location.y - half),
+              new Coordinate(location.x + half, location.y - half),
+              new Coordinate(location.x + half, location.y + half),
+              new Coordinate(location.x - half, location.y + half),
+              new Coordinate(location.x - half, location.y - half)});
+
+          double centrality = 1.0 - location.distance(centre) / radius;
+          double draw = random.nextDouble();
+          String dma = draw < 0.1 + 0.5 * centrality ? "work"
+              : draw < 0.2 + 0.5 * centrality ? "visit" : "live";
+          boolean landmark = random.nextDouble() < Pars.syntheticLandmarkShare;
+          double score = random.nextDouble();
+          double globalScore = landmark ? threshold + (1.0 - threshold) * score : threshold * score;
+
+          MasonGeometry masonGeometry = new MasonGeometry(footprint);
+          masonGeometry.addAttribute("buildingID", buildingID);
+          masonGeometry.addAttribute("land_use", LAND_USES.get(dma));
+          masonGeometry.addAttribute("DMA", dma);
+          masonGeometry.addAttribute("gScore_sc", globalScore);
+          masonGeometry.addAttribute("lScore_sc", Math.pow(random.nextDouble(), 2.0));
+          PedSimCity.buildings.addGeometry(masonGeometry);
+          if (landmark) {
+            addSightLines(location, buildingID);
+          }
+          buildingID++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds sight lines from a landmark to a random sample of the junctions within
+   * {@code SIGHT_LINES_RADIUS}.
+   */
+  private void addSightLines(Coordinate location, int buildingID) {
+
+    int reach = (int) Math.ceil(SIGHT_LINES_RADIUS / blockSize) + 1;
+    int centreI = (int) Math.round(location.x / blockSize);
+    int centreJ = (int) Math.round(location.y / blockSize);
+    List<Integer> visible = new ArrayList<>();
+    for (int i = Math.max(0, centreI - reach); i <= Math.min(blocksX, centreI + reach); i++) {
+      for (int j = Math.max(0, centreJ - reach); j <= Math.min(blocksY, centreJ + reach); j++) {
+        if (junctions[index(i, j)].distance(location) <= SIGHT_LINES_RADIUS) {
+          visible.add(index(i, j));
+        }
+      }
+    }
+    int lines = Math.min(SIGHT_LINES_PER_LANDMARK, visible.size());
+    for (int line = 0; line < lines; line++) {
+      Collections.swap(visible, line, line + random.nextInt(visible.size() - line));
+      int node = visible.get(line);
+      MasonGeometry masonGeometry = new MasonGeometry(GEOMETRY_FACTORY
+          .createLineString(new Coordinate[] {new Coordinate(location), junctions[node]}));
+      masonGeometry.addAttribute("buildingID", buildingID);
+      masonGeometry.addAttribute("nodeID", node);
+      PedSimCity.sightLines.addGeometry(masonGeometry);
+    }
+  }
+
+  /**
+   * Generates the synthetic city described by the arguments ({@code --syntheticBlocksX=400} and
+   * the other {@code Pars.synthetic*} parameters), prepares it and compiles it into a city bundle
+   * in {@code Pars.bundleDirectory}, which later runs with the same parameters and
+   * {@code --syntheticCity --useCityBundle} load instead of generating the city again.
+   *
+   * @param args Command-line arguments.
+   * @throws Exception If the city cannot be prepared.
+   */
+  public static void main(String[] args) throws Exception {
+    ParameterManager.initFromArgs(args);
+    Pars.syntheticCity = true;
+    Pars.useCityBundle = true;
+    PedSimCity.prepareCity();
+  }
+}
@@ -0,0 +1,145 @@
+package pedsim.engine;
+
+import java.util.logging.Logger;
+import pedsim.parameters.Pars;
+import pedsim.utilities.LoggerUtil;
+
+/**
+ * The TripTrace class records compact traces of trip planning in a fixed-size ring buffer per
+ * thread, so that the planning calls that take unusually long can be explained: destination
+ * widening, dual node re-sampling, path searches, backtracking and fallbacks are marked as they
+ * happen, with two integer values each. A trace is delimited by:
+ *
+ * <pre>
+ * TripTrace.begin(agentID);
+ * try {
+ *   ...
+ *   TripTrace.mark(Mark.BACKTRACKING, completeSequence.size(), 0);
+ * } finally {
+ *   TripTrace.end();
+ * }
+ * </pre>
+ *
+ * Traces nest: a planning call traced within a trip is part of the trip's trace. When the outermost
+ * trace takes longer than {@code Pars.tripTraceThresholdMs}, its marks are logged; only the last
+ * {@code Pars.tripTraceCapacity} marks are kept. Recording a mark costs a clock read and a few
+ * array writes, without allocation; a capacity of 0 disables the traces.
+ */
+public class TripTrace {
+
+  /**
+   * The marks of a trace, with the meaning of their two values.
+   */
+  public enum Mark {
+    // origin and destination node IDs
+    TRIP, PLANNING,
+    // iteration, upper distance limit in metres
+    DESTINATION_WIDENING,
+    // iteration, 0
+    DUAL_NODE_RESAMPLING,
+    // nodes settled, path edges
+    ROAD_DISTANCE_SEARCH, ANGULAR_CHANGE_SEARCH, GLOBAL_LANDMARKS_SEARCH,
+    // edges in the sequence so far, centroids to avoid
+    BACKTRACKING, DUAL_BACKTRACKING,
+    // region-based navigation not doable: 1 if barriers are used instead, 0 otherwise
+    REGIONS_FALLBACK,
+    // salience percentile x 100, 1 for regional landmarks, 0 otherwise
+    SALIENT_NODES_WIDENING, LANDMARKS_FALLBACK
+  }
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  private static final Mark[] MARKS = Mark.values();
+
+  private static final ThreadLocal<Buffer> buffers =
+      ThreadLocal.withInitial(() -> new Buffer(Math.max(0, Pars.tripTraceCapacity)));
+
+  private TripTrace() {}
+
+  /**
+   * The ring buffer of a thread, holding the marks of the current trace.
+   */
+  private static class Buffer {
+    final long[] nanos;
+    final byte[] marks;
+    final int[] firstValues;
+    final int[] secondValues;
+    int depth;
+    int agentID;
+    long startNanos;
+    // marks recorded in the current trace, including those overwritten
+    long recorded;
+
+    Buffer(int capacity) {
+      nanos = new long[capacity];
+      marks = new byte[capacity];
+      firstValues = new int[capacity];
+      secondValues = new int[capacity];
+    }
+  }
+
+  /**
+   * Begins a trace on the calling thread, or nests in the trace already begun.
+   *
+   * @param agentID The agent planning.
+   */
+  public static void begin(int agentID) {
+    Buffer buffer = buffers.get();
+    if (buffer.nanos.length == 0 || buffer.depth++ > 0) {
+      return;
+    }
+    buffer.agentID = agentID;
+    buffer.recorded = 0L;
+    buffer.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Records a mark in the current trace, if any.
+   *
+   * @param mark The mark.
+   * @param firstValue The first value of the mark.
+   * @param secondValue The second value of the mark.
+   */
+  public static void mark(Mark mark, int firstValue, int secondValue) {
+    Buffer buffer = buffers.get();
+    if (buffer.depth == 0 || buffer.nanos.length == 0) {
+      return;
+    }
+    int slot = (int) (buffer.recorded++ % buffer.nanos.length);
+    buffer.nanos[slot] = System.nanoTime();
+    buffer.marks[slot] = (byte) mark.ordinal();
+    buffer.firstValues[slot] = firstValue;
+    buffer.secondValues[slot] = secondValue;
+  }
+
+  /**
+   * Ends the current trace and, if it is the outermost one and took longer than the threshold,
+   * logs its marks.
+   */
+  public static void end() {
+    Buffer buffer = buffers.get();
+    if (buffer.depth == 0 || --buffer.depth > 0) {
+      return;
+    }
+    long elapsed = System.nanoTime() - buffer.startNanos;
+    if (elapsed > Pars.tripTraceThresholdMs * 1_000_000L) {
+      logger.warning(dump(buffer, elapsed));
+    }
+  }
+
+  private static String dump(Buffer buffer, long elapsed) {
+
+    int capacity = buffer.nanos.length;
+    long dropped = Math.max(0L, buffer.recorded - capacity);
+    StringBuilder dump = new StringBuilder(String.format(
+        "Slow trip planning | agent %d, %.1f ms on %s, %d marks (%d dropped):", buffer.agentID,
+        elapsed / 1e6, Thread.currentThread().getName(), buffer.recorded, dropped));
+    for (long i = dropped; i < buffer.recorded; i++) {
+      int slot = (int) (i % capacity);
+      dump.append(String.format("%n  +%.3f ms %s %d %d",
+          (buffer.nanos[slot] - buffer.startNanos) / 1e6,
+          MARKS[buffer.marks[slot]].toString().toLowerCase(), buffer.firstValues[slot],
+          buffer.secondValues[slot]));
+    }
+    return dump.toString();
+  }
+}
@@ -0,0 +1,503 @@
+package pedsim.engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import pedsim.parameters.Pars;
+import pedsim.utilities.LoggerUtil;
+import sim.util.geo.CSVUtils;
+
+/**
+ * The WorkQueue class distributes jobs, or the points of a batch, over several processes (on one
+ * or more machines) through a directory they all share. No other service is needed: tasks are
+ * claimed by atomically creating lock files.
+ *
+ * The coordinator ({@code --queue=<dir>}) splits the jobs ({@code Pars.jobsPerTask} per task) of
+ * the run, or of each point of {@code --batch}, into task files, waits until they are all done and
+ * writes {@code index.csv}. Workers ({@code --queue=<dir> --worker}) prepare the city once and run
+ * tasks until all are done. They must be started with the same city and base parameters as the
+ * coordinator, which can also start them itself on the local machine (see
+ * {@link #runLocally(Path, Path, int, String[], String, List, Path)}). The directory contains:
+ *
+ * <pre>
+ * tasks/task_N.task        the parameters and job numbers of the task, and the snapshots from
+ *                          which the jobs are resumed, for branches
+ * claims/task_N.A.lock     the claim of the task's A-th attempt, touched as heartbeat
+ * results/task_N.A/        the output of the task's A-th attempt
+ * done/task_N.done         the outcome of the task and the folder of the attempt that marked it
+ *                          done, written by the worker that ran it
+ * </pre>
+ *
+ * A claim whose lock file has not been touched for {@code Pars.heartbeatTimeoutSeconds}, as
+ * observed by the worker looking at it, belongs to a worker that died: the task is reclaimed by
+ * creating the lock of the next attempt. Only the worker holding the latest attempt marks the task
+ * done. As staleness is measured on the observer's clock, the machines' clocks need not agree.
+ * Each attempt writes to its own folder, so that a worker wrongly taken for dead does not mix its
+ * output with that of the attempt that reclaimed the task.
+ */
+public class WorkQueue {
+
+  private static final Logger logger = LoggerUtil.getLogger();
+  private static final String TASK = ".task";
+  private static final String LOCK = ".lock";
+  private static final String DONE = ".done";
+  private static final String POINT = "point";
+  private static final String JOBS = "jobs";
+  private static final String SNAPSHOTS = "snapshots";
+
+  private final Path tasksDirectory;
+  private final Path claimsDirectory;
+  private final Path resultsDirectory;
+  private final Path doneDirectory;
+  private final String workerID;
+
+  // lock files observed by this process: last modified time and when it was first seen
+  private final Map<Path, FileTime> observedHeartbeats = new HashMap<>();
+  private final Map<Path, Long> observedSince = new HashMap<>();
+
+  private WorkQueue(Path directory) throws IOException {
+    this.tasksDirectory = directory.resolve("tasks");
+    this.claimsDirectory = directory.resolve("claims");
+    this.resultsDirectory = directory.resolve("results");
+    this.doneDirectory = directory.resolve("done");
+    for (Path path : List.of(tasksDirectory, claimsDirectory, resultsDirectory, doneDirectory)) {
+      Files.createDirectories(path);
+    }
+    this.workerID = InetAddress.getLocalHost().getHostName() + "-"
+        + ManagementFactory.getRuntimeMXBean().getPid();
+  }
+
+  /**
+   * Enqueues the tasks of the run (or of {@code Pars.batch}), waits until they have all been done
+   * by the workers and writes the index of their outcomes. If the directory already holds tasks,
+   * they are not enqueued again, so that a coordinator can be restarted.
+   *
+   * @param directory The shared queue directory.
+   * @throws Exception If the queue cannot be written or the batch manifest is invalid.
+   */
+  static void coordinate(Path directory) throws Exception {
+
+    List<Map<String, String>> points = new ArrayList<>();
+    if (Pars.batch != null) {
+      points = BatchRunner.fromManifest(Paths.get(Pars.batch)).generatePoints();
+    } else {
+      points.add(new LinkedHashMap<>());
+    }
+    WorkQueue queue = new WorkQueue(directory);
+    List<Path> tasks =
+        queue.prepareTasks(directory, Pars.batch != null ? "point" : null, points, null);
+    queue.awaitTasks(directory, tasks, () -> true);
+    queue.writeIndex(directory.resolve("index.csv"), tasks);
+    logger.info("Queue " + directory + " | all tasks done.");
+  }
+
+  /**
+   * Coordinates the tasks of the given points as {@link #coordinate(Path)}, with the given number
+   * of workers started on this machine. Each worker is a new JVM launched with this process's JVM
+   * options and command-line arguments, and with its share of the stepping, planning and policy
+   * threads. The workers' output is written to {@code workers/worker_N.log} in the queue
+   * directory. Tasks already in the directory are only reused, e.g. after an interrupted run, if
+   * they are those of the given points.
+   *
+   * @param directory The queue directory.
+   * @param index The index file of the tasks' outcomes.
+   * @param nrWorkers The number of workers.
+   * @param args The command-line arguments of this process.
+   * @param label The label of the points, e.g. "point" for {@code point_N}.
+   * @param points The points, as maps from parameter (Class.field) to value.
+   * @param snapshots The directory of the snapshots from which the jobs of each point are resumed
+   *        (see {@link BranchRunner}), or null to start new jobs.
+   * @throws Exception If the queue cannot be written, holds the tasks of other points, the workers
+   *         cannot be started or they exit with tasks left.
+   */
+  static void runLocally(Path directory, Path index, int nrWorkers, String[] args, String label,
+      List<Map<String, String>> points, Path snapshots) throws Exception {
+
+    WorkQueue queue = new WorkQueue(directory);
+    List<Path> tasks = queue.prepareTasks(directory, label, points, snapshots);
+    List<List<String>> contents = getTaskContents(label, points, snapshots);
+    boolean sameTasks = tasks.size() == contents.size();
+    for (int taskID = 0; sameTasks && taskID < tasks.size(); taskID++) {
+      sameTasks = Files.readAllLines(tasks.get(taskID)).equals(contents.get(taskID));
+    }
+    if (!sameTasks) {
+      throw new IllegalStateException("The queue " + directory
+          + " holds the tasks of a different run: remove it to run these points");
+    }
+    List<Process> workers = startWorkers(directory, Math.min(nrWorkers, tasks.size()), args);
+    try {
+      queue.awaitTasks(directory, tasks,
+          () -> workers.stream().anyMatch(Process::isAlive));
+      for (Process worker : workers) {
+        worker.waitFor();
+      }
+    } finally {
+      workers.forEach(Process::destroy);
+    }
+    queue.writeIndex(index, tasks);
+    logger.info("Queue " + directory + " | all tasks done.");
+  }
+
+  private List<Path> prepareTasks(Path directory, String label, List<Map<String, String>> points,
+      Path snapshots) throws Exception {
+    List<Path> tasks = listTasks();
+    if (tasks.isEmpty()) {
+      enqueue(label, points, snapshots);
+      tasks = listTasks();
+    } else {
+      logger.info("Queue " + directory + " | " + tasks.size() + " tasks already enqueued.");
+    }
+    return tasks;
+  }
+
+  /**
+   * Waits until all the tasks are done, as long as the workers are running.
+   *
+   * @param directory The queue directory.
+   * @param tasks The task files.
+   * @param workersRunning Whether some worker can still run the tasks left.
+   * @throws Exception If the done files cannot be listed or the workers have exited with tasks
+   *         left.
+   */
+  private void awaitTasks(Path directory, List<Path> tasks, BooleanSupplier workersRunning)
+      throws Exception {
+
+    long done = 0;
+    while (true) {
+      // checked before counting, so that the tasks done by a worker just exited are counted
+      boolean running = workersRunning.getAsBoolean();
+      long nowDone;
+      try (Stream<Path> files = Files.list(doneDirectory)) {
+        nowDone = files.filter(file -> file.toString().endsWith(DONE)).count();
+      }
+      if (nowDone != done) {
+        done = nowDone;
+        logger.info("Queue " + directory + " | " + done + "/" + tasks.size() + " tasks done.");
+      }
+      if (done >= tasks.size()) {
+        return;
+      }
+      if (!running) {
+        throw new IllegalStateException("The workers of " + directory + " exited with "
+            + (tasks.size() - done) + " tasks left");
+      }
+      Thread.sleep(TimeUnit.SECONDS.toMillis(Pars.heartbeatSeconds));
+    }
+  }
+
+  private static List<Process> startWorkers(Path directory, int nrWorkers, String[] args)
+      throws IOException {
+
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(PedSimCity.class.getName());
+    command.addAll(List.of(args));
+    command.add("--queue=" + directory.toAbsolutePath());
+    command.add("--worker");
+    // the workers share the processors: each gets its share of the threads of the pools
+    command.add("--steppingThreads=" + Math.max(1, Pars.steppingThreads / nrWorkers));
+    command.add("--planningThreads=" + Math.max(1, Pars.planningThreads / nrWorkers));
+    command.add("--policyThreads=" + Math.max(1, Pars.policyThreads / nrWorkers));
+
+    Path logs = directory.resolve("workers");
+    Files.createDirectories(logs);
+    List<Process> workers = new ArrayList<>();
+    for (int worker = 0; worker < nrWorkers; worker++) {
+      workers.add(new ProcessBuilder(command).redirectErrorStream(true)
+          .redirectOutput(logs.resolve("worker_" + worker + ".log").toFile()).start());
+    }
+    logger.info("Queue " + directory + " | " + nrWorkers + " local workers started.");
+    return workers;
+  }
+
+  private void enqueue(String label, List<Map<String, String>> points, Path snapshots)
+      throws IOException {
+
+    List<List<String>> contents = getTaskContents(label, points, snapshots);
+    for (int taskID = 0; taskID < contents.size(); taskID++) {
+      Path task = tasksDirectory.resolve(String.format("task_%05d", taskID) + TASK);
+      Path temporaryFile = task.resolveSibling(task.getFileName() + ".tmp");
+      Files.write(temporaryFile, contents.get(taskID));
+      Files.move(temporaryFile, task, StandardCopyOption.ATOMIC_MOVE);
+    }
+    logger.info("Queue | " + contents.size() + " tasks enqueued.");
+  }
+
+  /**
+   * Returns the lines of the task files of the given points, in task order.
+   */
+  private static List<List<String>> getTaskContents(String label,
+      List<Map<String, String>> points, Path snapshots) {
+
+    List<List<String>> contents = new ArrayList<>();
+    int jobsPerTask = Math.max(1, Pars.jobsPerTask);
+    for (int pointID = 0; pointID < points.size(); pointID++) {
+      for (int firstJob = 0; firstJob < Pars.jobs; firstJob += jobsPerTask) {
+        List<String> lines = new ArrayList<>();
+        lines.add(POINT + "=" + (label != null ? label + "_" + pointID : ""));
+        lines.add(JOBS + "=" + Stream.iterate(firstJob, job -> job + 1)
+            .limit(Math.min(jobsPerTask, Pars.jobs - firstJob)).map(String::valueOf)
+            .collect(Collectors.joining(",")));
+        if (snapshots != null) {
+          lines.add(SNAPSHOTS + "=" + snapshots.toAbsolutePath());
+        }
+        points.get(pointID).forEach((key, value) -> lines.add(key + "=" + value));
+        contents.add(lines);
+      }
+    }
+    return contents;
+  }
+
+  /**
+   * Prepares the city and runs the tasks of the queue, one at a time, until all of them are done.
+   * The jobs of a task run concurrently (see {@code Pars.maxConcurrentJobs}).
+   *
+   * @param directory The shared queue directory.
+   * @throws Exception If the city cannot be prepared or the queue cannot be accessed.
+   */
+  static void runWorker(Path directory) throws Exception {
+
+    WorkQueue queue = new WorkQueue(directory);
+    PedSimCity.prepareCity();
+    BatchRunner parameters = new BatchRunner();
+    logger.info("Worker " + queue.workerID + " | polling " + directory);
+
+    while (true) {
+      List<Path> tasks = queue.listTasks();
+      List<Path> pending = new ArrayList<>();
+      for (Path task : tasks) {
+        if (!Files.exists(queue.doneFile(task))) {
+          pending.add(task);
+        }
+      }
+      if (!tasks.isEmpty() && pending.isEmpty()) {
+        break;
+      }
+      Path claimed = null;
+      int attempt = -1;
+      for (Path task : pending) {
+        attempt = queue.tryClaim(task);
+        if (attempt >= 0) {
+          claimed = task;
+          break;
+        }
+      }
+      if (claimed == null) {
+        // nothing enqueued yet, or the remaining tasks are running elsewhere: wait, in
+        // case their workers die
+        Thread.sleep(TimeUnit.SECONDS.toMillis(Pars.heartbeatSeconds));
+        continue;
+      }
+      queue.runTask(claimed, attempt, parameters);
+    }
+    logger.info("Worker " + queue.workerID + " | no tasks left.");
+  }
+
+  /**
+   * Tries to claim a task: by creating the lock of its first attempt, or of the next attempt when
+   * the latest one is stale.
+   *
+   * @param task The task file.
+   * @return The attempt claimed, or -1 if the task is held by another worker.
+   * @throws IOException If the claims cannot be accessed.
+   */
+  private int tryClaim(Path task) throws IOException {
+
+    int latest = latestAttempt(task);
+    if (latest >= 0 && !isStale(lockFile(task, latest))) {
+      return -1;
+    }
+    Path lock = lockFile(task, latest + 1);
+    try {
+      Files.write(lock, List.of(workerID), StandardOpenOption.CREATE_NEW);
+    } catch (FileAlreadyExistsException e) {
+      return -1;
+    }
+    if (latest >= 0) {
+      logger.warning("Worker " + workerID + " | reclaimed " + taskName(task)
+          + " after a stale heartbeat");
+    }
+    return latest + 1;
+  }
+
+  private int latestAttempt(Path task) throws IOException {
+    String prefix = taskName(task) + ".";
+    try (Stream<Path> locks = Files.list(claimsDirectory)) {
+      return locks.map(lock -> lock.getFileName().toString())
+          .filter(name -> name.startsWith(prefix) && name.endsWith(LOCK))
+          .mapToInt(name -> Integer
+              .parseInt(name.substring(prefix.length(), name.length() - LOCK.length())))
+          .max().orElse(-1);
+    }
+  }
+
+  /**
+   * Checks whether the lock has not been touched for {@code Pars.heartbeatTimeoutSeconds} since
+   * this process first saw its current modification time.
+   */
+  private boolean isStale(Path lock) throws IOException {
+    FileTime modified;
+    try {
+      modified = Files.getLastModifiedTime(lock);
+    } catch (NoSuchFileException e) {
+      return true;
+    }
+    long now = System.nanoTime();
+    if (!modified.equals(observedHeartbeats.get(lock))) {
+      observedHeartbeats.put(lock, modified);
+      observedSince.put(lock, now);
+      return false;
+    }
+    return now - observedSince.get(lock) > TimeUnit.SECONDS.toNanos(Pars.heartbeatTimeoutSeconds);
+  }
+
+  private void runTask(Path task, int attempt, BatchRunner parameters) throws Exception {
+
+    Map<String, String> point = new LinkedHashMap<>();
+    List<Integer> jobs = new ArrayList<>();
+    String pointLabel = "";
+    Path snapshots = null;
+    for (String line : Files.readAllLines(task)) {
+      String[] parts = line.split("=", 2);
+      if (parts[0].equals(POINT)) {
+        pointLabel = parts[1];
+      } else if (parts[0].equals(SNAPSHOTS)) {
+        snapshots = Paths.get(parts[1]);
+      } else if (parts[0].equals(JOBS)) {
+        for (String job : parts[1].split(",")) {
+          jobs.add(Integer.parseInt(job.trim()));
+        }
+      } else {
+        point.put(parts[0], parts[1]);
+      }
+    }
+
+    Path lock = lockFile(task, attempt);
+    ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    heartbeat.scheduleAtFixedRate(() -> {
+      try {
+        Files.setLastModifiedTime(lock, FileTime.fromMillis(System.currentTimeMillis()));
+      } catch (IOException e) {
+        logger.warning("Worker " + workerID + " | heartbeat failed: " + e.getMessage());
+      }
+    }, Pars.heartbeatSeconds, Pars.heartbeatSeconds, TimeUnit.SECONDS);
+
+    logger.info("Worker " + workerID + " | running " + taskName(task) + " " + point + " jobs "
+        + jobs);
+    String status = "done";
+    String message = "";
+    long start = System.nanoTime();
+    Path output = resultsDirectory.resolve(taskName(task) + "." + attempt);
+    try {
+      parameters.applyPoint(point);
+      Pars.outputDirectory = output.toString();
+      if (snapshots != null) {
+        BranchRunner.resumeJobs(jobs, snapshots);
+      } else {
+        PedSimCity.runJobs(jobs);
+      }
+    } catch (Exception e) {
+      status = "failed";
+      message = e.getClass().getSimpleName() + ": " + e.getMessage();
+      logger.severe("Worker " + workerID + " | " + taskName(task) + " failed | " + message);
+    } finally {
+      heartbeat.shutdownNow();
+      Pars.outputDirectory = null;
+    }
+
+    if (latestAttempt(task) != attempt) {
+      logger.warning("Worker " + workerID + " | " + taskName(task)
+          + " was reclaimed by another worker, outcome discarded");
+      return;
+    }
+    Path done = doneFile(task);
+    Path temporaryFile = done.resolveSibling(done.getFileName() + "." + workerID + ".tmp");
+    Files.write(temporaryFile, List.of("point=" + pointLabel, "status=" + status,
+        "seconds=" + String.format("%.1f", (System.nanoTime() - start) / 1e9),
+        "worker=" + workerID, "attempt=" + attempt,
+        "output=" + doneDirectory.getParent().relativize(output), "message=" + message));
+    try {
+      Files.move(temporaryFile, done, StandardCopyOption.ATOMIC_MOVE);
+    } catch (FileAlreadyExistsException e) {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  /**
+   * Writes the index of the tasks: their point, jobs, parameters and outcome, with the output folder
+   * of the attempt that marked them done.
+   */
+  private void writeIndex(Path index, List<Path> tasks) throws IOException {
+
+    List<Map<String, String>> rows = new ArrayList<>();
+    List<String> headers = new ArrayList<>(List.of("task"));
+    for (Path task : tasks) {
+      Map<String, String> row = new LinkedHashMap<>();
+      row.put("task", taskName(task));
+      for (Path file : List.of(task, doneFile(task))) {
+        for (String line : Files.readAllLines(file)) {
+          String[] parts = line.split("=", 2);
+          row.put(parts[0], parts.length > 1 ? parts[1] : "");
+        }
+      }
+      row.keySet().stream().filter(key -> !headers.contains(key)).forEach(headers::add);
+      rows.add(row);
+    }
+
+    try (BufferedWriter writer = Files.newBufferedWriter(index)) {
+      CSVUtils.writeLine(writer, headers);
+      for (Map<String, String> row : rows) {
+        CSVUtils.writeLine(writer,
+            headers.stream().map(key -> row.getOrDefault(key, "")).collect(Collectors.toList()));
+      }
+    }
+  }
+
+  private List<Path> listTasks() throws IOException {
+    try (Stream<Path> files = Files.list(tasksDirectory)) {
+      return files.filter(file -> file.toString().endsWith(TASK)).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static String taskName(Path task) {
+    String fileName = task.getFileName().toString();
+    return fileName.substring(0, fileName.length() - TASK.length());
+  }
+
+  private Path lockFile(Path task, int attempt) {
+    return claimsDirectory.resolve(taskName(task) + "." + attempt + LOCK);
+  }
+
+  private Path doneFile(Path task) {
+    return doneDirectory.resolve(taskName(task) + DONE);
+  }
+}
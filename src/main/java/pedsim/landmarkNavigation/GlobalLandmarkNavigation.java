@@ -9,6 +9,8 @@ import java.util.stream.Collectors;
 
 import pedsim.agents.Agent;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.TripTrace;
+import pedsim.engine.TripTrace.Mark;
 import pedsim.parameters.RouteChoicePars;
 import sim.graph.GraphUtils;
 import sim.graph.NodeGraph;
@@ -94,7 +96,9 @@ public class GlobalLandmarkNavigation extends LandmarkNavigation {
     // landmarks
     while (salientNodes.isEmpty()) {
       percentile -= 0.05;
+      TripTrace.mark(Mark.SALIENT_NODES_WIDENING, (int) Math.round(percentile * 100), 0);
       if (percentile < 0.50) {
+        TripTrace.mark(Mark.LANDMARKS_FALLBACK, 0, 0);
         sequence.add(0, originNode);
         sequence.add(destinationNode);
         break;
@@ -9,6 +9,8 @@ import java.util.stream.Collectors;
 import pedsim.agents.Agent;
 import pedsim.communityCognitiveMap.Region;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.TripTrace;
+import pedsim.engine.TripTrace.Mark;
 import pedsim.parameters.RouteChoicePars;
 import sim.graph.GraphUtils;
 import sim.graph.NodeGraph;
@@ -129,8 +131,11 @@ public class RegionLandmarkNavigation extends LandmarkNavigation {
 
     while (salientNodes.isEmpty()) {
       percentile -= 0.05;
-      if (percentile < 0.50)
+      TripTrace.mark(Mark.SALIENT_NODES_WIDENING, (int) Math.round(percentile * 100), 1);
+      if (percentile < 0.50) {
+        TripTrace.mark(Mark.LANDMARKS_FALLBACK, 1, 0);
         break;
+      }
 
       salientNodes = new HashMap<>(region.primalGraph.getSubGraphSalientNodes(percentile));
     }
@@ -211,14 +211,20 @@ public class ParameterManager {
 	// CLI arg parsing
 	// ------------------------------------------------------------
 
-	/** Parse CLI args like --key=value into a param map. */
+	/**
+	 * Parse CLI args like --key=value or --key value into a param map. A --key not
+	 * followed by a value is a flag set to true.
+	 */
 	public static Map<String, String> parseArgs(String[] args) {
 		Map<String, String> params = new HashMap<>();
-		for (String arg : args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
 			if (arg.startsWith("--")) {
 				String[] parts = arg.substring(2).split("=", 2);
 				if (parts.length == 2)
 					params.put(parts[0], parts[1]);
+				else if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+					params.put(parts[0], args[++i]);
 				else
 					params.put(parts[0], "true");
 			}
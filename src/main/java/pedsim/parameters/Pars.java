@@ -16,11 +16,116 @@ public class Pars {
 	public static String cityName = "Muenster";
 	public static int population = 1500000;
 	public static double percentagePopulationAgent = 0.001;
+	// share of the agents that are learners, spread evenly over the agent IDs
+	public static double learnerShare = 0.5;
 	public static double metersPerDayPerPerson = 4000; // 4k
 	public static double metersPerDay;
 	public static int numAgents;
 
 	public static int jobs = 1;
+	// base seed of the run; the seed of each job is derived from it and the job number
+	public static int seed = 1;
+	// jobs executed at the same time, sharing the city model
+	public static int maxConcurrentJobs = Runtime.getRuntime().availableProcessors();
+	// step agents in two phases: decisions in parallel, shared updates in agentID order
+	public static boolean parallelStepping = false;
+	// threads of the stepping pool, shared by the concurrent jobs (see ExecutionPolicy)
+	public static int steppingThreads = Runtime.getRuntime().availableProcessors();
+	// step agents only at their next event (release, end of stay, walking) and let the
+	// clock skip night periods in which no agent is active
+	public static boolean eventDrivenScheduling = false;
+	// with event-driven scheduling, wake walking agents only at edge transitions
+	public static boolean analyticMovement = false;
+	// plan routes asynchronously on a bounded pool of planning threads, shared by the
+	// concurrent jobs; agents wait for their route at the following step, so that
+	// trips start one step after being planned and runs stay reproducible
+	public static boolean asyncPlanning = false;
+	public static int planningThreads = Runtime.getRuntime().availableProcessors();
+	public static int planningQueueCapacity = 1000;
+	// data-parallel loops (see ExecutionPolicy): loops shorter than parallelCutoff
+	// run sequentially; the pools are shared by all jobs
+	public static boolean parallelExecution = true;
+	public static int parallelCutoff = 256;
+	public static int policyThreads = Runtime.getRuntime().availableProcessors();
+	// threads of the I/O pool, on which the exports of all jobs are written
+	public static int ioThreads = 2;
+	// time the phases of the simulation loop (see PhaseTimings)
+	public static boolean phaseTimings = false;
+	// log the estimated memory retained per subsystem and agent at each day boundary
+	public static boolean memoryAccounting = false;
+	// marks kept per thread in the trip planning traces (see TripTrace), 0 to disable;
+	// traces of trips planned in longer than the threshold are logged
+	public static int tripTraceCapacity = 512;
+	public static long tripTraceThresholdMs = 1000;
+	// record the inputs and routes of every route planning of each job in this
+	// directory (see PlanningRecorder), to be replayed with PlanningReplay
+	public static String recordPlanning = null;
+	// write a checkpoint of each job at every day boundary; --resume=<file> resumes
+	// the checkpointed job instead of starting new ones
+	public static boolean writeCheckpoints = false;
+	public static String checkpointDirectory = "checkpoints";
+	public static String resume = null;
+	// write the day-boundary exports on the shared I/O pool, with at most
+	// exportQueueCapacity exports waiting
+	public static boolean asyncExport = false;
+	public static int exportQueueCapacity = 4;
+	// aggregate the daily volumes of the jobs into a single summary file (mean,
+	// sd and 95% CI per edge and scenario); perJobVolumes=false skips the
+	// per-job volume files
+	public static boolean ensembleStatistics = false;
+	public static boolean perJobVolumes = true;
+	// adaptive ensembles: run at least minJobs and at most jobs jobs, and stop
+	// launching new ones once, for convergedEdgesShare of the walked edges, the 95%
+	// CI half-width of the run volumes is within targetRelativeCI of the mean
+	public static boolean adaptiveJobs = false;
+	public static int minJobs = 3;
+	public static double targetRelativeCI = 0.10;
+	public static double convergedEdgesShare = 0.95;
+	// load the city from a compiled bundle, compiled from the GeoPackage files when
+	// missing or outdated
+	public static boolean useCityBundle = false;
+	public static String bundleDirectory = "bundles";
+	// generate a synthetic city instead of reading the GeoPackage files of cityName
+	// (see SyntheticCity): a grid or organic street network of syntheticBlocksX x
+	// syntheticBlocksY blocks, divided into syntheticRegions regions
+	public static boolean syntheticCity = false;
+	public static String syntheticTopology = "grid";
+	public static int syntheticBlocksX = 40;
+	public static int syntheticBlocksY = 40;
+	public static double syntheticBlockSize = 100.0;
+	public static int syntheticRegions = 8;
+	public static int syntheticArterialSpacing = 10;
+	public static int syntheticRivers = 1;
+	public static int syntheticRailways = 1;
+	public static double syntheticParkShare = 0.03;
+	public static int syntheticBuildingsPerBlock = 4;
+	public static double syntheticLandmarkShare = 0.02;
+	public static int syntheticSeed = 1;
+	// run the parameter sweep described in the given manifest (see BatchRunner);
+	// each point of the sweep writes its output to the outputLabel subfolder
+	public static String batch = null;
+	public static String outputLabel = null;
+	// worker processes running the points of a batch (or the branches)
+	// concurrently; 1 to run the points one after the other in this process, which
+	// loads the city once, 0 to use as many as the processors allow given the jobs
+	// of each point. Each worker prepares and holds its own copy of the city, so
+	// that memory grows with the number of workers (see useCityBundle to shorten
+	// their preparation)
+	public static int batchProcesses = 1;
+	// root of the output files, the user's PedSimCityLearning/Output folder when null
+	public static String outputDirectory = null;
+	// distribute the jobs (or the points of a batch) through a work queue in the
+	// given shared directory: --queue=<dir> enqueues them and waits for the
+	// results, --queue=<dir> --worker runs them (see WorkQueue)
+	public static String queue = null;
+	public static boolean worker = false;
+	public static int jobsPerTask = 1;
+	public static int heartbeatSeconds = 30;
+	public static int heartbeatTimeoutSeconds = 180;
+	// run the jobs for burnInDays with the base parameters, then fork them into
+	// the branches described in the given manifest (see BranchRunner)
+	public static String branches = null;
+	public static int burnInDays = 7;
 	// Euclidean Distance between Origin and Destination
 	public static double homeWorkRadius = 600;
 
@@ -15,11 +15,27 @@ public class MemoryTrace {
 
     this.visibilitySpace = visibilitySpace;
     this.weight = weight;
-    this.lastUpdated = state.schedule.getSteps(); // or however you track steps
+    this.lastUpdated = (long) state.getCurrentSteps(); // or however you track steps
     this.route = route;
   }
 
   public void setWeight(double weight) {
     this.weight = weight;
   }
+
+  public double getWeight() {
+    return weight;
+  }
+
+  public long getLastUpdated() {
+    return lastUpdated;
+  }
+
+  public void setLastUpdated(long lastUpdated) {
+    this.lastUpdated = lastUpdated;
+  }
+
+  public Polygon getVisibilitySpace() {
+    return visibilitySpace;
+  }
 }
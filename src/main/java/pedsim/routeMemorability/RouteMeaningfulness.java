@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import pedsim.parameters.LearningPars;
+import pedsim.utilities.SplitMixRandom;
 import pedsim.utilities.StringEnum.RouteMeaningfulnessFactor;
 import sim.routing.Route;
 
@@ -19,9 +20,13 @@ import sim.routing.Route;
 public class RouteMeaningfulness {
 
   RouteComplexity routeComplexity = new RouteComplexity();
-  RouteNovelty routeNovelty = new RouteNovelty();
+  RouteNovelty routeNovelty;
   final double STD = 0.10;
 
+  public RouteMeaningfulness(SplitMixRandom random) {
+    routeNovelty = new RouteNovelty(random);
+  }
+
   public void computeMeaningfulnessFactors(Route lastRoute, List<Route> previousRoutes) {
 
     routeComplexity.computeRouteComplexity(lastRoute);
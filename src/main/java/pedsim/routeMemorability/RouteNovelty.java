@@ -5,9 +5,9 @@ import java.util.List;
 import java.util.Set;
 import org.locationtech.jts.geom.LineString;
 import pedsim.parameters.LearningPars;
+import pedsim.utilities.SplitMixRandom;
 import sim.graph.NodeGraph;
 import sim.routing.Route;
-import sim.util.geo.Utilities;
 
 public class RouteNovelty {
 
@@ -16,12 +16,17 @@ public class RouteNovelty {
   private RouteProperties lastRouteProperties;
   final double MEAN = 0.35;
   final double STD = 0.10;
+  private final SplitMixRandom random;
+
+  RouteNovelty(SplitMixRandom random) {
+    this.random = random;
+  }
 
   void computeNovelty(Route lastRoute, List<Route> previousRoutes) {
 
     lastRouteProperties = RouteProperties.getProperties(lastRoute);
     if (previousRoutes.size() < LearningPars.MIN_WALKED_ROUTES_SIZE) {
-      lastRouteProperties.novelty = Utilities.fromDistribution(MEAN, STD, null);
+      lastRouteProperties.novelty = random.fromDistribution(MEAN, STD, null);
       return;
     }
     lastLineString = lastRoute.getLineString();
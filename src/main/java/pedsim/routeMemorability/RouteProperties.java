@@ -17,7 +17,11 @@ import org.locationtech.jts.geom.util.GeometryCombiner;
 import org.locationtech.jts.operation.union.UnaryUnionOp;
 import pedsim.agents.Agent;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
+import pedsim.engine.ExecutionPolicy;
+import pedsim.engine.ExecutionPolicy.Pool;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.PhaseTimings;
+import pedsim.engine.PhaseTimings.Phase;
 import pedsim.parameters.RouteChoicePars;
 import sim.field.geo.VectorLayer;
 import sim.graph.EdgeGraph;
@@ -72,6 +76,7 @@ public class RouteProperties {
   }
 
   public void computeRouteProperties() {
+    long start = PhaseTimings.start();
     countTurnsIntersections();
     cumulativeLandmarkness();
 
@@ -93,6 +98,7 @@ public class RouteProperties {
     }
     findVisitedLocations();
     computeVisibilitySpace();
+    PhaseTimings.stop(Phase.ROUTE_PROPERTIES, start);
   }
 
   private void findVisitedLocations() {
@@ -128,20 +134,19 @@ public class RouteProperties {
 
   private void cumulativeLandmarkness() {
 
-    cumulativeGlobalLandmarkness =
-        route.nodesSequence.parallelStream().filter(node -> !node.visibleBuildings3d.isEmpty())
-            .mapToDouble(node -> node.visibleBuildings3d.parallelStream()
-                .mapToDouble(landmark -> landmark.attributes.get("globalLandmarkness").getDouble())
-                .max().orElse(0.0))
-            .sum();
-
-    cumulativeLocalLandmarkness =
-        route.nodesSequence.parallelStream().filter(node -> !node.visibleBuildings3d.isEmpty())
-            .mapToDouble(node -> node.adjacentBuildings.parallelStream()
+    // one parallel loop over the nodes at most, the buildings of each node are scanned
+    // sequentially
+    cumulativeGlobalLandmarkness = ExecutionPolicy.sum(Pool.LEARNING, route.nodesSequence,
+        node -> node.visibleBuildings3d.stream()
+            .mapToDouble(landmark -> landmark.attributes.get("globalLandmarkness").getDouble())
+            .max().orElse(0.0));
+
+    double localLandmarkThreshold = agent.getCognitiveMap().getLocalLandmarkThreshold();
+    cumulativeLocalLandmarkness = ExecutionPolicy.sum(Pool.LEARNING, route.nodesSequence,
+        node -> node.visibleBuildings3d.isEmpty() ? 0.0
+            : node.adjacentBuildings.stream()
                 .mapToDouble(landmark -> landmark.attributes.get("localLandmarkness").getDouble())
-                .filter(value -> value > agent.getCognitiveMap().getLocalLandmarkThreshold()).max()
-                .orElse(0.0))
-            .sum();
+                .filter(value -> value > localLandmarkThreshold).max().orElse(0.0));
   }
 
   private void computeVisibilitySpace() {
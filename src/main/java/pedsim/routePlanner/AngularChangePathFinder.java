@@ -7,6 +7,8 @@ import java.util.Set;
 import org.locationtech.jts.planargraph.DirectedEdge;
 import pedsim.agents.Agent;
 import pedsim.dijkstra.DijkstraAngularChange;
+import pedsim.engine.TripTrace;
+import pedsim.engine.TripTrace.Mark;
 import sim.graph.NodeGraph;
 import sim.routing.Route;
 import sim.routing.RoutingUtils;
@@ -34,7 +36,9 @@ public class AngularChangePathFinder extends PathFinder {
     NodeGraph dualOrigin =
         originNode.getDualNode(originNode, destinationNode, false, previousJunction);
     NodeGraph dualDestination = null;
+    int iteration = 0;
     while (dualDestination == null || dualDestination.equals(dualOrigin)) {
+      TripTrace.mark(Mark.DUAL_NODE_RESAMPLING, iteration++, 0);
       dualDestination =
           destinationNode.getDualNode(originNode, destinationNode, false, previousJunction);
     }
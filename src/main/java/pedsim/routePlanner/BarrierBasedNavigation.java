@@ -220,7 +220,7 @@ public class BarrierBasedNavigation {
       Coordinate[] intersections =
           viewField.intersection(barrierGeometry.geometry).getCoordinates();
 
-      double minDistance = Arrays.stream(intersections).parallel()
+      double minDistance = Arrays.stream(intersections)
           .mapToDouble(
               intersection -> GeometryUtilities.euclideanDistance(currentCoordinate, intersection))
           .min().orElse(Double.MAX_VALUE);
@@ -10,6 +10,8 @@ import pedsim.agents.Agent;
 import pedsim.communityCognitiveMap.CommunityCognitiveMap;
 import pedsim.dijkstra.DijkstraAngularChange;
 import pedsim.dijkstra.DijkstraRoadDistance;
+import pedsim.engine.TripTrace;
+import pedsim.engine.TripTrace.Mark;
 import sim.graph.EdgeGraph;
 import sim.graph.Graph;
 import sim.graph.NodeGraph;
@@ -53,6 +55,7 @@ public class PathFinder {
    */
   protected void backtracking(NodeGraph tmpDestination) {
 
+    TripTrace.mark(Mark.BACKTRACKING, completeSequence.size(), directedEdgesToAvoid.size());
     if (tmpOrigin.equals(originNode)) {
       // try skipping this tmpDestination
       moveOn = true;
@@ -101,6 +104,7 @@ public class PathFinder {
    * retries to compute the path towards the given tmpDestinationNode.
    */
   protected void dualBacktracking() {
+    TripTrace.mark(Mark.DUAL_BACKTRACKING, completeSequence.size(), centroidsToAvoid.size());
     // new tmpOrigin
     try {
       tmpOrigin = (NodeGraph) completeSequence.get(completeSequence.size() - 1).getFromNode();
@@ -0,0 +1,227 @@
+package pedsim.routePlanner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.locationtech.jts.planargraph.DirectedEdge;
+import pedsim.agents.Agent;
+import pedsim.cognitiveMap.CognitiveMap;
+import pedsim.utilities.LoggerUtil;
+import pedsim.utilities.StringEnum.RandomStream;
+import sim.graph.EdgeGraph;
+import sim.graph.NodeGraph;
+import sim.routing.Route;
+
+/**
+ * The PlanningRecorder class records the route planning workload of a job, so that the identical
+ * workload can be replayed against any planner implementation (see {@code PlanningReplay} among
+ * the benchmarks). Each invocation of {@link RoutePlanner#definePath()} is recorded with its
+ * inputs, captured once the heuristic has been defined: the agent's learner flag, route choice
+ * properties and heuristic weights, the origin and destination, the state of its routing random
+ * stream and the version of its cognitive map; and with its outputs: the planning time and the
+ * edges of the planned route.
+ *
+ * The agent's known network is recorded as a snapshot of its cognitive map before the first
+ * invocation planned on each version, and referenced by version afterwards. Records are written
+ * to a compressed file per job, {@code planning_<job>.bin.gz} in the recording directory; the
+ * records of concurrent planners are written one at a time.
+ */
+public class PlanningRecorder {
+
+  static final int MAGIC = 0x5053574C; // "PSWL"
+  static final int VERSION = 1;
+  static final byte SNAPSHOT = 1;
+  static final byte INVOCATION = 2;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final Logger logger = LoggerUtil.getLogger();
+
+  private final Path file;
+  private final int job;
+  private final DataOutputStream out;
+  // snapshots already written, as (agentID, version) keys
+  private final Set<Long> snapshots = ConcurrentHashMap.newKeySet();
+  private long invocations = 0L;
+  private volatile boolean failed = false;
+
+  /**
+   * The inputs of an invocation, captured before the route is planned, as planning advances the
+   * routing random stream.
+   */
+  static class Invocation {
+    final int agentID;
+    final int version;
+    // the cognitive map, when no snapshot of its version has been written yet
+    final byte[] snapshot;
+    final byte[] inputs;
+
+    Invocation(int agentID, int version, byte[] snapshot, byte[] inputs) {
+      this.agentID = agentID;
+      this.version = version;
+      this.snapshot = snapshot;
+      this.inputs = inputs;
+    }
+  }
+
+  private PlanningRecorder(Path file, int job) throws IOException {
+    this.file = file;
+    this.job = job;
+    this.out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(job);
+  }
+
+  /**
+   * Opens the recording of a job's planning workload.
+   *
+   * @param directory The recording directory, created if missing.
+   * @param job The job number.
+   * @return The recorder, or null if the recording file cannot be created.
+   */
+  public static PlanningRecorder open(String directory, int job) {
+    try {
+      Path directoryPath = Paths.get(directory);
+      Files.createDirectories(directoryPath);
+      PlanningRecorder recorder =
+          new PlanningRecorder(directoryPath.resolve("planning_" + job + ".bin.gz"), job);
+      logger.info("Job " + job + " | recording route planning to " + recorder.file);
+      return recorder;
+    } catch (IOException e) {
+      logger.severe("Job " + job + " | planning recording failed: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Opens a recorded workload for reading and checks its header.
+   *
+   * @param file The recording file.
+   * @return The input, positioned at the first record.
+   * @throws IOException if the file cannot be read or is not a planning workload.
+   */
+  static DataInputStream openWorkload(Path file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+    if (in.readInt() != MAGIC) {
+      in.close();
+      throw new IOException(file + " is not a PedSimCity planning workload");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      in.close();
+      throw new IOException("Unsupported planning workload version " + version + " in " + file);
+    }
+    in.readInt(); // job
+    return in;
+  }
+
+  /**
+   * Captures the inputs of an invocation. The cognitive map is captured too, unless a snapshot of
+   * its version has already been written; an agent's invocations are never planned concurrently.
+   *
+   * @param originNode The origin node.
+   * @param destinationNode The destination node.
+   * @param agent The agent, whose heuristic has been defined.
+   * @return The captured inputs, or null if the recording has failed.
+   */
+  Invocation capture(NodeGraph originNode, NodeGraph destinationNode, Agent agent) {
+    if (failed) {
+      return null;
+    }
+    try {
+      CognitiveMap cognitiveMap = agent.getCognitiveMap();
+      int version = cognitiveMap.getVersion();
+      byte[] snapshot = null;
+      if (!snapshots.contains(snapshotKey(agent.agentID, version))) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream snapshotOut = new DataOutputStream(bytes)) {
+          cognitiveMap.writeState(snapshotOut);
+        }
+        snapshot = bytes.toByteArray();
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      try (DataOutputStream inputsOut = new DataOutputStream(bytes)) {
+        inputsOut.writeBoolean(agent.isLearner());
+        inputsOut.writeInt(originNode.getID());
+        inputsOut.writeInt(destinationNode.getID());
+        agent.getProperties().writeState(inputsOut);
+        agent.getHeuristics().writeState(inputsOut);
+        agent.getRandom(RandomStream.ROUTING).writeState(inputsOut);
+      }
+      return new Invocation(agent.agentID, version, snapshot, bytes.toByteArray());
+    } catch (IOException e) {
+      fail(e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes an invocation with its outputs, preceded by the snapshot of the cognitive map when
+   * captured and not yet written.
+   *
+   * @param invocation The inputs captured before planning.
+   * @param route The planned route.
+   * @param planningNanos The planning time, in nanoseconds.
+   */
+  synchronized void record(Invocation invocation, Route route, long planningNanos) {
+    if (failed) {
+      return;
+    }
+    try {
+      if (invocation.snapshot != null
+          && snapshots.add(snapshotKey(invocation.agentID, invocation.version))) {
+        out.writeByte(SNAPSHOT);
+        out.writeInt(invocation.agentID);
+        out.writeInt(invocation.version);
+        out.write(invocation.snapshot);
+      }
+      out.writeByte(INVOCATION);
+      out.writeInt(invocation.agentID);
+      out.writeInt(invocation.version);
+      out.write(invocation.inputs);
+      out.writeLong(planningNanos);
+      out.writeInt(route.directedEdgesSequence.size());
+      for (DirectedEdge directedEdge : route.directedEdgesSequence) {
+        out.writeInt(((EdgeGraph) directedEdge.getEdge()).getID());
+      }
+      invocations++;
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Completes the recording.
+   */
+  public synchronized void close() {
+    try {
+      out.close();
+      logger.info("Job " + job + " | " + invocations + " route plannings recorded to " + file);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void fail(IOException e) {
+    if (!failed) {
+      failed = true;
+      logger.severe("Job " + job + " | planning recording failed: " + e.getMessage());
+    }
+  }
+
+  static long snapshotKey(int agentID, int version) {
+    return ((long) agentID << 32) | (version & 0xFFFFFFFFL);
+  }
+}
@@ -14,7 +14,11 @@ import org.javatuples.Pair;
 import pedsim.agents.Agent;
 import pedsim.communityCognitiveMap.Gateway;
 import pedsim.communityCognitiveMap.Region;
+import pedsim.engine.ExecutionPolicy;
+import pedsim.engine.ExecutionPolicy.Pool;
 import pedsim.engine.PedSimCity;
+import pedsim.engine.TripTrace;
+import pedsim.engine.TripTrace.Mark;
 import sim.graph.EdgeGraph;
 import sim.graph.GraphUtils;
 import sim.graph.NodeGraph;
@@ -92,6 +96,8 @@ public class RegionBasedNavigation {
     }
 
     if (noRegionSequence) {
+      TripTrace.mark(Mark.REGIONS_FALLBACK, agent.getProperties().barrierBasedNavigation ? 1 : 0,
+          0);
       agent.getProperties().regionBasedNavigation = false;
       if (agent.getProperties().barrierBasedNavigation) {
         BarrierBasedNavigation barrierBasedNavigation =
@@ -199,7 +205,7 @@ public class RegionBasedNavigation {
     double destinationAngle = Angles.angle(currentNode, destinationNode);
     double distanceTarget = GraphUtils.nodesDistance(currentNode, destinationNode);
 
-    knownGateways.parallelStream().forEach(gateway -> {
+    ExecutionPolicy.forEach(Pool.PLANNING, knownGateways, gateway -> {
       if (isGatewayValid(gateway, specificRegionID)) {
         evaluateGateway(gateway, destinationAngle, distanceTarget, currentNode);
       }
@@ -6,6 +6,10 @@ import java.util.List;
 
 import pedsim.agents.Agent;
 import pedsim.agents.AgentProperties;
+import pedsim.engine.PhaseTimings;
+import pedsim.engine.PhaseTimings.Phase;
+import pedsim.engine.TripTrace;
+import pedsim.engine.TripTrace.Mark;
 import pedsim.landmarkNavigation.GlobalLandmarkNavigation;
 import pedsim.landmarkNavigation.RegionLandmarkNavigation;
 import pedsim.parameters.RouteChoicePars;
@@ -35,20 +39,59 @@ public class RoutePlanner {
    * @param agent The agent for which the route is being planned.
    */
   public RoutePlanner(NodeGraph originNode, NodeGraph destinationNode, Agent agent) {
+    this(originNode, destinationNode, agent, true);
+  }
+
+  /**
+   * Constructs a `RoutePlanner` instance, optionally keeping the heuristic currently set on the
+   * agent, as when a recorded planning workload is replayed (see {@link PlanningRecorder}).
+   *
+   * @param originNode The starting node of the route.
+   * @param destinationNode The destination node of the route.
+   * @param agent The agent for which the route is being planned.
+   * @param defineHeuristic Whether the agent's heuristic is defined for this route.
+   */
+  RoutePlanner(NodeGraph originNode, NodeGraph destinationNode, Agent agent,
+      boolean defineHeuristic) {
     this.originNode = originNode;
     this.destinationNode = destinationNode;
     this.agent = agent;
     this.properties = agent.getProperties();
     this.nodesSequence = new ArrayList<>();
-    agent.getHeuristics().defineHeuristic(originNode, destinationNode);
+    if (defineHeuristic) {
+      agent.getHeuristics().defineHeuristic(originNode, destinationNode);
+    }
   }
 
   /**
-   * Defines the path for the agent based on route choice properties and strategies.
+   * Defines the path for the agent based on route choice properties and strategies. The planning
+   * time is recorded under the heuristic that drove the route (see {@link PhaseTimings}), and the
+   * planning is traced (see {@link TripTrace}). When the job records its planning workload, the
+   * inputs and outputs of the planning are recorded (see {@link PlanningRecorder}).
    *
    * @return A `Route` object representing the calculated route.
    */
   public Route definePath() {
+    PlanningRecorder recorder = agent.getState().planningRecorder;
+    PlanningRecorder.Invocation invocation =
+        recorder != null ? recorder.capture(originNode, destinationNode, agent) : null;
+    long start = PhaseTimings.start();
+    long planningStart = invocation != null ? System.nanoTime() : 0L;
+    TripTrace.begin(agent.agentID);
+    try {
+      TripTrace.mark(Mark.PLANNING, originNode.getID(), destinationNode.getID());
+      Route plannedRoute = planPath();
+      PhaseTimings.stop(getPlanningPhase(), start);
+      if (invocation != null) {
+        recorder.record(invocation, plannedRoute, System.nanoTime() - planningStart);
+      }
+      return plannedRoute;
+    } finally {
+      TripTrace.end();
+    }
+  }
+
+  private Route planPath() {
 
     // === Use only minimization-based navigation
     if (properties.shouldOnlyUseMinimization()) {
@@ -113,6 +156,29 @@ public class RoutePlanner {
     return route;
   }
 
+  /**
+   * Returns the phase under which the planning is timed, following the order in which the
+   * strategies are applied in {@link #planPath()}.
+   */
+  private Phase getPlanningPhase() {
+    if (properties.shouldOnlyUseMinimization()) {
+      return properties.minimisingDistance ? Phase.PLAN_ROAD_DISTANCE : Phase.PLAN_ANGULAR_CHANGE;
+    }
+    if (properties.regionBasedNavigation) {
+      return Phase.PLAN_REGIONS;
+    }
+    if (properties.barrierBasedNavigation) {
+      return Phase.PLAN_BARRIERS;
+    }
+    if (properties.usingLocalLandmarks) {
+      return Phase.PLAN_LOCAL_LANDMARKS;
+    }
+    if (properties.usingDistantLandmarks && !properties.shouldUseLocalHeuristic()) {
+      return Phase.PLAN_GLOBAL_LANDMARKS;
+    }
+    return properties.localHeuristicDistance ? Phase.PLAN_ROAD_DISTANCE : Phase.PLAN_ANGULAR_CHANGE;
+  }
+
   /**
    * Verifies if region-based navigation should be enabled for route planning based on distance
    * thresholds. If not, it disables region-based navigation in agent properties.
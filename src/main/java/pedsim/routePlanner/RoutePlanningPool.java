@@ -0,0 +1,124 @@
+package pedsim.routePlanner;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import pedsim.agents.Agent;
+import pedsim.engine.ExecutionPolicy;
+import sim.graph.NodeGraph;
+import sim.routing.Route;
+
+/**
+ * The RoutePlanningPool class plans the routes of a job's agents asynchronously on the bounded
+ * route planning executor of the {@link ExecutionPolicy}, shared by all jobs, so that expensive
+ * plans do not stall the simulation step. The agent takes its route at the following step, waiting
+ * for it if needed, so that the results do not depend on the planning latency. When the queue is
+ * full, the route is planned by the submitting thread. The pool collects the job's queue-depth and
+ * planning-latency metrics.
+ */
+public class RoutePlanningPool {
+
+  private final ThreadPoolExecutor executor;
+  // requests of this job not completed yet, cancelled when the job finishes
+  private final Set<Future<Route>> pending = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+  /**
+   * Constructs a RoutePlanningPool on the shared route planning executor.
+   */
+  public RoutePlanningPool() {
+    executor = ExecutionPolicy.getRoutePlanningExecutor();
+  }
+
+  /**
+   * Submits the planning of a route between the origin and the destination node for the given
+   * agent.
+   *
+   * @param originNode The origin node.
+   * @param destinationNode The destination node.
+   * @param agent The agent for which the route is planned.
+   * @return A future holding the planned route.
+   */
+  public Future<Route> submit(NodeGraph originNode, NodeGraph destinationNode, Agent agent) {
+
+    final long submittedAt = System.nanoTime();
+    submitted.incrementAndGet();
+    FutureTask<Route> future = new FutureTask<>(() -> {
+      try {
+        return new RoutePlanner(originNode, destinationNode, agent).definePath();
+      } finally {
+        recordLatency(System.nanoTime() - submittedAt);
+      }
+    });
+    pending.add(future);
+    executor.execute(() -> {
+      try {
+        future.run();
+      } finally {
+        pending.remove(future);
+      }
+    });
+    maxQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+    return future;
+  }
+
+  /**
+   * Records the latency of a planning request, from its submission to its completion.
+   *
+   * @param latencyNanos The latency in nanoseconds.
+   */
+  private void recordLatency(long latencyNanos) {
+    completed.incrementAndGet();
+    totalLatencyNanos.addAndGet(latencyNanos);
+    maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+  }
+
+  /**
+   * Returns the number of planning requests currently waiting in the queue, shared by all jobs.
+   *
+   * @return The current queue depth.
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Returns a summary of the planning metrics collected since the previous call, and starts a new
+   * interval: requests submitted and completed, maximum queue depth and latencies all refer to the
+   * same interval. The current queue depth is sampled at the time of the call.
+   *
+   * @return A string describing the planning metrics.
+   */
+  public String collectMetrics() {
+    long nrSubmitted = submitted.getAndSet(0);
+    long nrCompleted = completed.getAndSet(0);
+    long latencyNanos = totalLatencyNanos.getAndSet(0);
+    double avgLatency = nrCompleted == 0 ? 0.0 : latencyNanos / 1e6 / nrCompleted;
+    String metrics = String.format(
+        "Route planning (since last report) | submitted: %d | completed: %d | "
+            + "queue depth: %d (max %d) | latency avg: %.2f ms, max: %.2f ms",
+        nrSubmitted, nrCompleted, getQueueDepth(), maxQueueDepth.getAndSet(0), avgLatency,
+        maxLatencyNanos.getAndSet(0) / 1e6);
+    return metrics;
+  }
+
+  /**
+   * Cancels the requests of this job still waiting to be planned. The shared planning threads keep
+   * running for the other jobs.
+   */
+  public void shutdown() {
+    for (Future<Route> future : pending) {
+      future.cancel(false);
+    }
+    pending.clear();
+  }
+}
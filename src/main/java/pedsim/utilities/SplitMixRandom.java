@@ -0,0 +1,163 @@
+package pedsim.utilities;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+import pedsim.utilities.StringEnum.RandomStream;
+
+/**
+ * A random number stream based on the SplitMix64 generator (the algorithm of
+ * {@link java.util.SplittableRandom}), exposed as a {@link Random} so that it can replace the
+ * generators used across the model. Unlike {@link Random}, it is not synchronised: each stream is
+ * meant to be used by a single agent or subsystem at a time, and Gaussian sampling does not lock.
+ *
+ * Streams are derived from the job seed, the agent ID and the {@link RandomStream} they serve, so
+ * that a job is reproducible from its seed whatever the order in which agents are created or
+ * stepped.
+ */
+public class SplitMixRandom extends Random {
+
+  private static final long serialVersionUID = 1L;
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private long seed;
+  private double nextGaussian;
+  private boolean haveNextGaussian;
+
+  /**
+   * Creates a stream starting from the given seed.
+   *
+   * @param seed The seed.
+   */
+  public SplitMixRandom(long seed) {
+    super(seed);
+  }
+
+  /**
+   * Derives the stream serving the given purpose of an agent (or of the job, with agentID -1).
+   *
+   * @param jobSeed The seed of the job.
+   * @param agentID The agent ID, or -1 for job-level streams.
+   * @param stream The purpose of the stream.
+   * @return The stream.
+   */
+  public static SplitMixRandom forStream(long jobSeed, int agentID, RandomStream stream) {
+    long key = mix64(jobSeed + GOLDEN_GAMMA * (agentID + 1L));
+    return new SplitMixRandom(mix64(key ^ (GOLDEN_GAMMA * (stream.ordinal() + 1L))));
+  }
+
+  /**
+   * Derives the seed of a job from the base seed of the run, so that each job of an ensemble, and
+   * the number of jobs an adaptive ensemble needs, can be reproduced from the base seed.
+   *
+   * @param baseSeed The base seed of the run.
+   * @param job The job number.
+   * @return The seed of the job.
+   */
+  public static long jobSeed(long baseSeed, int job) {
+    return mix64(mix64(baseSeed) + GOLDEN_GAMMA * (job + 1L));
+  }
+
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    this.seed = seed;
+    this.haveNextGaussian = false;
+  }
+
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> (64 - bits));
+  }
+
+  @Override
+  public long nextLong() {
+    seed += GOLDEN_GAMMA;
+    return mix64(seed);
+  }
+
+  @Override
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  /**
+   * Returns a normally distributed value (mean 0.0, standard deviation 1.0), by the polar method.
+   * The second value of each pair is kept for the next call.
+   */
+  @Override
+  public double nextGaussian() {
+    if (haveNextGaussian) {
+      haveNextGaussian = false;
+      return nextGaussian;
+    }
+    double v1;
+    double v2;
+    double s;
+    do {
+      v1 = 2 * nextDouble() - 1;
+      v2 = 2 * nextDouble() - 1;
+      s = v1 * v1 + v2 * v2;
+    } while (s >= 1 || s == 0);
+    double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+    nextGaussian = v2 * multiplier;
+    haveNextGaussian = true;
+    return v1 * multiplier;
+  }
+
+  /**
+   * Draws a value from a normal distribution, as {@code Utilities.fromDistribution} does: with
+   * direction "left" values above the mean are capped at the mean, with "right" values below it
+   * are raised to it, and without direction non-positive values are replaced by the mean.
+   *
+   * @param mean The mean of the distribution.
+   * @param sd The standard deviation of the distribution.
+   * @param direction "left", "right" or null.
+   * @return The value drawn.
+   */
+  public double fromDistribution(double mean, double sd, String direction) {
+    double result = nextGaussian() * sd + mean;
+    if (direction != null) {
+      if (direction.equals("left") && result > mean) {
+        result = mean;
+      }
+      if (direction.equals("right") && result < mean) {
+        result = mean;
+      }
+    } else if (result <= 0.00) {
+      result = mean;
+    }
+    return result;
+  }
+
+  /**
+   * Writes the state of the stream to a checkpoint.
+   *
+   * @param out The checkpoint output.
+   * @throws IOException if writing fails.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    out.writeLong(seed);
+    out.writeBoolean(haveNextGaussian);
+    out.writeDouble(nextGaussian);
+  }
+
+  /**
+   * Restores the state of the stream from a checkpoint written with
+   * {@link #writeState(DataOutput)}.
+   *
+   * @param in The checkpoint input.
+   * @throws IOException if reading fails.
+   */
+  public void readState(DataInput in) throws IOException {
+    seed = in.readLong();
+    haveNextGaussian = in.readBoolean();
+    nextGaussian = in.readDouble();
+  }
+}
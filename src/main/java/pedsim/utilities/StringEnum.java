@@ -8,7 +8,7 @@ public class StringEnum {
   }
 
   public enum AgentStatus {
-    WALKING, WAITING, GOING_HOME, AT_DESTINATION,
+    WALKING, WAITING, GOING_HOME, AT_DESTINATION, PLANNING,
   }
 
   public enum LandmarkNavigationMode {
@@ -35,6 +35,10 @@ public class StringEnum {
     PARK, WATER, ROAD, RAILWAY, SECONDARY_ROAD
   }
 
+  public enum RandomStream {
+    AGENT, MOVEMENT, ROUTING, HEURISTICS, PROPERTIES, ELEMENTS, COGNITIVE_MAP, LEARNING, RELEASE, DAILY_DISTANCE, ACTIVITY_NODES, DESTINATION
+  }
+
   public enum RoadType {
     PRIMARY, SECONDARY, TERTIARY, NEIGHBOURHOOD, UNKNOWN
   }